@@ -0,0 +1,95 @@
+package backend.commands;
+
+import backend.models.BulkEditResult;
+import backend.models.Picture;
+import backend.models.PictureManager;
+import backend.models.Tag;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * A command class used to add tags to many pictures at once, such as all the pictures of one
+ * shoot. The files are renamed in parallel by the PictureManager. Has a severity level of FINE.
+ */
+public class AddTagsToPicturesCommand implements Command {
+
+  /**
+   * The manager keeping track of the pictures
+   */
+  private PictureManager manager;
+
+  /**
+   * The pictures to add the tags to
+   */
+  private List<Picture> pictures;
+
+  /**
+   * The tags to add to the pictures
+   */
+  private List<Tag> tagsToAdd;
+
+  /**
+   * The result of the last time this command was executed, or null if it was not executed yet
+   */
+  private BulkEditResult result;
+
+  /**
+   * Creates an instance of AddTagsToPicturesCommand.
+   *
+   * @param manager The manager keeping track of the pictures
+   * @param pictures The pictures to add the tags to
+   * @param tags The tags to add to the pictures
+   */
+  public AddTagsToPicturesCommand(PictureManager manager, List<Picture> pictures, List<Tag> tags) {
+    this.manager = manager;
+    this.pictures = pictures;
+    this.tagsToAdd = tags;
+  }
+
+  /**
+   * Undo the command by deleting the tags from the pictures they were added to. Tags a picture
+   * already had before the command was executed are kept.
+   */
+  @Override
+  public void undo() {
+    if (this.result == null) {
+      return;
+    }
+
+    Map<Picture, List<Tag>> changes = new IdentityHashMap<>();
+    for (Picture picture : this.result.getEdited()) {
+      changes.put(picture, this.result.getChangedTags(picture));
+    }
+    this.manager.deleteTagsFromPictures(changes);
+  }
+
+  /**
+   * Execute the command by adding the tags to the pictures. Pictures whose file cannot be renamed
+   * are left as they were, see getResult().
+   */
+  @Override
+  public void execute() {
+    this.result = this.manager.addTagsToPictures(this.pictures, this.tagsToAdd);
+  }
+
+  /**
+   * Returns the result of the last time this command was executed.
+   *
+   * @return The result, or null if the command was not executed yet.
+   */
+  public BulkEditResult getResult() {
+    return this.result;
+  }
+
+  /**
+   * @return LogRecord a logRecord for this command with a severity level of FINE.
+   */
+  @Override
+  public LogRecord getLogRecord() {
+    return new LogRecord(Level.FINE,
+        "added " + tagsToAdd + " Tags To " + pictures.size() + " Pictures");
+  }
+}
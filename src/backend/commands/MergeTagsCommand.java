@@ -0,0 +1,96 @@
+package backend.commands;
+
+import backend.models.PictureManager;
+import backend.models.Tag;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * A command used to merge tags into another tag. The labels of the merged tags become aliases of
+ * the other tag, so no file is renamed.
+ *
+ * Severity Level: Fine
+ */
+public class MergeTagsCommand implements Command {
+
+  /**
+   * The manager keeping track of the tags
+   */
+  private PictureManager manager;
+
+  /**
+   * The tags to merge
+   */
+  private List<Tag> tagsToMerge;
+
+  /**
+   * The tag they are merged into
+   */
+  private Tag into;
+
+  /**
+   * The aliases of the manager before the command was executed, or null if it was not executed yet
+   */
+  private Map<String, String> oldAliases;
+
+  /**
+   * Creates a MergeTagsCommand merging tags into another tag.
+   *
+   * @param manager The manager keeping track of the tags
+   * @param tags The tags to merge
+   * @param into The tag they are merged into
+   */
+  public MergeTagsCommand(PictureManager manager, List<Tag> tags, Tag into) {
+    this.manager = manager;
+    this.tagsToMerge = tags;
+    this.into = into;
+  }
+
+  /**
+   * Undo the command by putting back the aliases the manager had before.
+   */
+  @Override
+  public void undo() {
+    if (this.oldAliases == null) {
+      return;
+    }
+
+    // Remove the changed aliases before adding the old ones, which may point to a merged tag
+    Map<String, String> aliases = this.manager.getAliases();
+    for (Map.Entry<String, String> alias : aliases.entrySet()) {
+      if (!alias.getValue().equals(this.oldAliases.get(alias.getKey()))) {
+        this.manager.removeAlias(alias.getKey());
+      }
+    }
+    for (Map.Entry<String, String> oldAlias : this.oldAliases.entrySet()) {
+      if (!oldAlias.getValue().equals(aliases.get(oldAlias.getKey()))) {
+        this.manager.addAlias(oldAlias.getKey(), new Tag(oldAlias.getValue()));
+      }
+    }
+  }
+
+  /**
+   * Execute the command by making the labels of the tags aliases of the tag they are merged into.
+   * The tag they are merged into is skipped if it is one of them.
+   */
+  @Override
+  public void execute() {
+    this.oldAliases = this.manager.getAliases();
+    Tag sharedTag = this.manager.resolveTag(this.into);
+    for (Tag tag : this.tagsToMerge) {
+      if (this.manager.resolveTag(tag) != sharedTag) {
+        this.manager.mergeTags(tag, sharedTag);
+      }
+    }
+  }
+
+  /**
+   * @return LogRecord a logRecord for this command with a severity level of FINE.
+   */
+  @Override
+  public LogRecord getLogRecord() {
+    return new LogRecord(Level.FINE, "Merged " + tagsToMerge + " into @" + into.getLabel());
+  }
+}
@@ -1,16 +1,25 @@
 package backend.commands;
 
+import backend.models.BulkEditListener;
+import backend.models.BulkEditResult;
+import backend.models.PictureManager;
 import backend.models.Tag;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 
 /**
- * Command for renaming a Tag
+ * Command for renaming a Tag. The files of all the pictures with the tag are renamed in parallel by
+ * the PictureManager.
  *
  * Severity Level: INFO
  */
 public class RenameTagCommand implements Command {
 
+  /**
+   * The manager keeping track of the pictures
+   */
+  private PictureManager manager;
+
   /**
    * the Tag to be renmaed
    */
@@ -26,23 +35,69 @@ public class RenameTagCommand implements Command {
    */
   private String oldTagName;
 
+  /**
+   * The listener told about the progress of the renames, or null
+   */
+  private BulkEditListener listener;
+
+  /**
+   * The result of the last time this command was executed, or null if it was not executed yet
+   */
+  private BulkEditResult result;
+
   /**
    * Construtor that takes in the tag to be renamed and a new name for this tag
+   *
+   * @param manager The manager keeping track of the pictures
+   * @param tagToBeRenamed The tag to rename
+   * @param newName The new name of the tag
    */
-  public RenameTagCommand(Tag tagToBeRenamed, String newName) {
+  public RenameTagCommand(PictureManager manager, Tag tagToBeRenamed, String newName) {
+    this.manager = manager;
     this.thisTag = tagToBeRenamed;
     this.newTagName = newName;
   }
 
+  /**
+   * Sets the listener told about the progress of the renames when this command is executed or
+   * undone.
+   *
+   * @param listener A listener, or null
+   */
+  public void setListener(BulkEditListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Undo the command by giving the tag its old name back. Does nothing if the command failed.
+   */
   @Override
   public void undo() {
-    thisTag.setLabel(oldTagName);
+    if (this.result == null || !this.result.getFailed().isEmpty()) {
+      return;
+    }
+    this.manager.renameTag(this.thisTag, this.oldTagName, this.listener);
   }
 
+  /**
+   * Execute the command by renaming the tag. If the file of a picture cannot be renamed, the tag
+   * keeps its old name, see getResult().
+   *
+   * @throws IllegalArgumentException Thrown when another tag already has the new name.
+   */
   @Override
   public void execute() {
     this.oldTagName = thisTag.getLabel();
-    this.thisTag.setLabel(newTagName);
+    this.result = this.manager.renameTag(this.thisTag, this.newTagName, this.listener);
+  }
+
+  /**
+   * Returns the result of the last time this command was executed.
+   *
+   * @return The result, or null if the command was not executed yet.
+   */
+  public BulkEditResult getResult() {
+    return this.result;
   }
 
   /**
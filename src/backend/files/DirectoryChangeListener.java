@@ -0,0 +1,25 @@
+package backend.files;
+
+import java.util.Collection;
+
+/**
+ * A listener that is told about the image files created and deleted under a watched directory.
+ */
+public interface DirectoryChangeListener {
+
+  /**
+   * Called with a batch of changes. A file that was renamed shows up as its old path being deleted
+   * and its new path being created. A directory that was deleted is reported as a deleted path as
+   * well, in which case every image under it is gone.
+   *
+   * @param created the absolute paths of the images that were created
+   * @param deleted the absolute paths of the images and directories that were deleted
+   */
+  void filesChanged(Collection<String> created, Collection<String> deleted);
+
+  /**
+   * Called when the operating system reported more changes than it could keep track of, so the
+   * watched directory has to be read again to find out what changed.
+   */
+  void changesLost();
+}
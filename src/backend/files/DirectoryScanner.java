@@ -0,0 +1,302 @@
+package backend.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * A directory scanner that searches a directory tree for images in parallel. Every subdirectory is
+ * scanned by its own fork/join task, so idle workers steal the subdirectories queued up by busy
+ * workers and deep or wide trees are spread over all of the workers.
+ */
+public class DirectoryScanner {
+
+  /**
+   * The pool of workers that scan the directories.
+   */
+  private final ForkJoinPool pool;
+
+  /**
+   * The snapshot of the directories scanned before, or null to always list every directory.
+   */
+  private volatile ScanSnapshot snapshot;
+
+  /**
+   * Creates a scanner that uses one worker per available processor.
+   */
+  public DirectoryScanner() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a scanner with the given number of workers.
+   *
+   * @param parallelism the number of workers used to scan directories, must be at least 1
+   */
+  public DirectoryScanner(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+    }
+    this.pool = new ForkJoinPool(parallelism);
+  }
+
+  /**
+   * Returns the number of workers used by this scanner.
+   *
+   * @return the number of workers used by this scanner
+   */
+  public int getParallelism() {
+    return this.pool.getParallelism();
+  }
+
+  /**
+   * Sets the snapshot used by this scanner. Directories that have not changed since they were
+   * recorded in the snapshot are not listed again, and directories that are listed are recorded in
+   * it.
+   *
+   * @param snapshot the snapshot, or null to always list every directory
+   */
+  public void setSnapshot(ScanSnapshot snapshot) {
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * Returns the snapshot used by this scanner.
+   *
+   * @return the snapshot used by this scanner, or null if there is none
+   */
+  public ScanSnapshot getSnapshot() {
+    return this.snapshot;
+  }
+
+  /**
+   * Returns a list of all image files under a directory (recursively). Subdirectories that cannot
+   * be read are skipped.
+   *
+   * @param directory the directory being searched under
+   * @return the list of files
+   * @throws IOException when the directory does not exist or cannot be read
+   */
+  public List<File> scan(String directory) throws IOException {
+    return this.scan(directory, true);
+  }
+
+  /**
+   * Returns a list of all image files in a directory, and in its subdirectories if recursive.
+   * Subdirectories that cannot be read are skipped.
+   *
+   * @param directory the directory being searched under
+   * @param recursive true to search the subdirectories as well
+   * @return the list of files
+   * @throws IOException when the directory does not exist or cannot be read
+   */
+  public List<File> scan(String directory, boolean recursive) throws IOException {
+    try {
+      return this.pool.invoke(new ScanTask(checkDirectory(directory), true, recursive, null, null,
+          this.snapshot));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Starts searching a directory for images in the background. Instead of being collected into one
+   * list, the images of each directory are handed to the sink as soon as that directory has been
+   * read. The sink is called from the workers of this scanner, so it must be thread safe.
+   *
+   * @param directory the directory being searched under
+   * @param recursive true to search the subdirectories as well
+   * @param sink receives the images of each directory that contains images
+   * @param isCancelled returns true when the search should stop early
+   * @return the running search, which completes once every directory has been handed to the sink
+   * @throws IOException when the directory does not exist
+   */
+  public ForkJoinTask<List<File>> scanAsync(String directory, boolean recursive,
+      Consumer<List<File>> sink, BooleanSupplier isCancelled) throws IOException {
+    return this.pool.submit(new ScanTask(checkDirectory(directory), true, recursive, sink,
+        isCancelled, this.snapshot));
+  }
+
+  /**
+   * Returns the path of a directory, making sure that the directory exists.
+   *
+   * @param directory the directory
+   * @return the path of the directory
+   * @throws IOException when the directory does not exist or is not a directory
+   */
+  private static Path checkDirectory(String directory) throws IOException {
+    Path root = Paths.get(directory);
+    if (!Files.exists(root)) {
+      throw new NoSuchFileException(directory);
+    } else if (!Files.isDirectory(root)) {
+      throw new NotDirectoryException(directory);
+    }
+    return root;
+  }
+
+  /**
+   * Stops the workers of this scanner. The scanner cannot be used afterwards.
+   */
+  public void shutdown() {
+    this.pool.shutdown();
+  }
+
+  /**
+   * A task that lists the images directly in one directory and forks a new task for each of its
+   * subdirectories. If the task has a sink, the images are handed to the sink instead of being
+   * returned.
+   */
+  private static class ScanTask extends RecursiveTask<List<File>> {
+
+    /**
+     * The version of the serialized form. Tasks are never serialized, but RecursiveTask is
+     * Serializable.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The directory scanned by this task.
+     */
+    private final Path directory;
+
+    /**
+     * True if this task scans the root of the search, whose errors are reported to the caller.
+     */
+    private final boolean isRoot;
+
+    /**
+     * True if the subdirectories are scanned as well.
+     */
+    private final boolean recursive;
+
+    /**
+     * Receives the images found by this task, or null to return them instead.
+     */
+    private final Consumer<List<File>> sink;
+
+    /**
+     * Returns true when the search should stop early, or null if it cannot be cancelled.
+     */
+    private final BooleanSupplier isCancelled;
+
+    /**
+     * The snapshot of the directories scanned before, or null.
+     */
+    private final ScanSnapshot snapshot;
+
+    /**
+     * Creates a task that scans a directory.
+     *
+     * @param directory the directory to scan
+     * @param isRoot true if the directory is the root of the search
+     * @param recursive true to scan the subdirectories as well
+     * @param sink receives the images found, or null to return them instead
+     * @param isCancelled returns true when the search should stop early, or null
+     * @param snapshot the snapshot of the directories scanned before, or null
+     */
+    ScanTask(Path directory, boolean isRoot, boolean recursive, Consumer<List<File>> sink,
+        BooleanSupplier isCancelled, ScanSnapshot snapshot) {
+      this.directory = directory;
+      this.isRoot = isRoot;
+      this.recursive = recursive;
+      this.sink = sink;
+      this.isCancelled = isCancelled;
+      this.snapshot = snapshot;
+    }
+
+    @Override
+    protected List<File> compute() {
+      List<File> files = new ArrayList<>();
+      List<ScanTask> subtasks = new ArrayList<>();
+
+      if (this.isCancelled != null && this.isCancelled.getAsBoolean()) {
+        return files;
+      }
+
+      ScanSnapshot.Listing listing;
+      try {
+        listing = this.list();
+      } catch (IOException e) {
+        if (this.isRoot) {
+          throw new UncheckedIOException(e);
+        }
+        return files; // a subdirectory we cannot read, skip it
+      }
+
+      for (String image : listing.images) {
+        files.add(this.directory.resolve(image).toFile());
+      }
+      if (this.recursive) {
+        for (String subdirectory : listing.subdirectories) {
+          ScanTask subtask = new ScanTask(this.directory.resolve(subdirectory), false, true,
+              this.sink, this.isCancelled, this.snapshot);
+          subtask.fork(); // let an idle worker steal it
+          subtasks.add(subtask);
+        }
+      }
+
+      if (this.sink != null && !files.isEmpty()) {
+        this.sink.accept(files);
+        files = new ArrayList<>();
+      }
+
+      for (ScanTask subtask : subtasks) {
+        files.addAll(subtask.join());
+      }
+      return files;
+    }
+
+    /**
+     * Returns the images and subdirectories of the directory, from the snapshot if the directory
+     * has not changed since it was recorded there.
+     *
+     * @return the listing of the directory
+     * @throws IOException when the directory cannot be read
+     */
+    private ScanSnapshot.Listing list() throws IOException {
+      long modified = 0;
+      if (this.snapshot != null) {
+        modified = Files.getLastModifiedTime(this.directory).toMillis();
+        ScanSnapshot.Listing listing = this.snapshot.getListing(this.directory, modified);
+        if (listing != null) {
+          return listing;
+        }
+      }
+
+      List<String> images = new ArrayList<>();
+      List<String> subdirectories = new ArrayList<>();
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.directory)) {
+        for (Path entry : entries) {
+          String name = entry.getFileName().toString();
+          // do not follow links, the same as Files.find
+          if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+            subdirectories.add(name);
+          } else if (Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)
+              && FileManager.fileIsImage(name)) {
+            images.add(name);
+          }
+        }
+      }
+
+      if (this.snapshot != null) {
+        this.snapshot.putListing(this.directory, modified, images, subdirectories);
+      }
+      return new ScanSnapshot.Listing(modified, 0, images.toArray(new String[0]),
+          subdirectories.toArray(new String[0]));
+    }
+  }
+}
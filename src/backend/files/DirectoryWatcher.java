@@ -0,0 +1,213 @@
+package backend.files;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a directory (and optionally all of its subdirectories) for image files being created or
+ * deleted. The changes are collected until the directory has been quiet for a moment, so copying
+ * thousands of files into the directory is reported to the listener as one batch.
+ */
+public class DirectoryWatcher {
+
+  /**
+   * How long the directory has to be quiet before a batch of changes is reported.
+   */
+  private static final long QUIET_MILLIS = 300;
+
+  /**
+   * The longest a change waits before it is reported, even if the directory never goes quiet.
+   */
+  private static final long MAX_DELAY_MILLIS = 2000;
+
+  /**
+   * The watch service of the operating system.
+   */
+  private final WatchService watchService;
+
+  /**
+   * True if the subdirectories are watched as well.
+   */
+  private final boolean recursive;
+
+  /**
+   * The listener told about the changes.
+   */
+  private final DirectoryChangeListener listener;
+
+  /**
+   * The thread waiting for changes.
+   */
+  private final Thread thread;
+
+  /**
+   * Starts watching a directory.
+   *
+   * @param directory the directory to watch
+   * @param recursive true to watch all of the subdirectories as well
+   * @param listener the listener told about the changes, from the thread of this watcher
+   * @throws IOException when the directory cannot be watched
+   */
+  public DirectoryWatcher(String directory, boolean recursive, DirectoryChangeListener listener)
+      throws IOException {
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.recursive = recursive;
+    this.listener = listener;
+
+    try {
+      this.register(Paths.get(directory), null);
+    } catch (IOException e) {
+      this.watchService.close();
+      throw e;
+    }
+
+    this.thread = new Thread(this::run, "DirectoryWatcher " + directory);
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * Stops watching the directory.
+   */
+  public void close() {
+    try {
+      this.watchService.close();
+    } catch (IOException e) {
+      // nothing to do, we are not watching anymore
+    }
+    this.thread.interrupt();
+  }
+
+  /**
+   * Registers a directory with the watch service, along with its subdirectories if this watcher is
+   * recursive.
+   *
+   * @param directory the directory
+   * @param created if not null, the images in the directories are added to it, for directories
+   * that were created after the watching started
+   * @throws IOException when the directory cannot be watched
+   */
+  private void register(Path directory, Set<String> created) throws IOException {
+    if (!this.recursive) {
+      directory.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_DELETE);
+      return;
+    }
+
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+          throws IOException {
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (created != null && attrs.isRegularFile()
+            && FileManager.fileIsImage(file.getFileName().toString())) {
+          created.add(file.toAbsolutePath().toString());
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException e) {
+        return FileVisitResult.CONTINUE; // skip what we cannot read
+      }
+    });
+  }
+
+  /**
+   * Waits for changes and reports them in batches until this watcher is closed.
+   */
+  private void run() {
+    try {
+      while (true) {
+        WatchKey key = this.watchService.take();
+
+        Set<String> created = new LinkedHashSet<>();
+        Set<String> deleted = new LinkedHashSet<>();
+        boolean lost = false;
+
+        // keep collecting until the directory goes quiet
+        long deadline = System.currentTimeMillis() + MAX_DELAY_MILLIS;
+        while (key != null) {
+          lost |= this.collectEvents(key, created, deleted);
+
+          long wait = Math.min(QUIET_MILLIS, deadline - System.currentTimeMillis());
+          key = wait > 0 ? this.watchService.poll(wait, TimeUnit.MILLISECONDS) : null;
+        }
+
+        if (lost) {
+          this.listener.changesLost();
+        } else if (!created.isEmpty() || !deleted.isEmpty()) {
+          this.listener.filesChanged(created, deleted);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // the watcher was closed
+    }
+  }
+
+  /**
+   * Adds the events of a watch key to the changes. A file that is created and then deleted within
+   * the same batch cancels out, and so does a file that is deleted and then created again.
+   *
+   * @param key the watch key
+   * @param created the paths of the images created
+   * @param deleted the paths of the images and directories deleted
+   * @return true if the operating system lost some of the events
+   */
+  private boolean collectEvents(WatchKey key, Set<String> created, Set<String> deleted) {
+    Path directory = (Path) key.watchable();
+    boolean lost = false;
+
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        lost = true;
+        continue;
+      }
+
+      Path child = directory.resolve((Path) event.context());
+      String path = child.toAbsolutePath().toString();
+
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+        if (this.recursive && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+          try {
+            this.register(child, created);
+          } catch (IOException e) {
+            // the directory is already gone again
+          }
+        } else if (FileManager.fileIsImage(child.getFileName().toString())
+            && !deleted.remove(path)) {
+          created.add(path);
+        }
+      } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+        // we cannot tell what was deleted anymore, so directories are reported as well
+        if (!created.remove(path)) {
+          deleted.add(path);
+        }
+      }
+    }
+
+    key.reset();
+    return lost;
+  }
+}
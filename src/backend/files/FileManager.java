@@ -2,11 +2,23 @@ package backend.files;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 /**
  * A static class that contains static methods used to manipulate files in the operating system.
@@ -14,21 +26,30 @@ import java.util.stream.Collectors;
 public class FileManager {
 
   /**
-   * Returns a list of all image files under a directory (recursively up to depth).
-   *
-   * @param directory the directory being searched under
-   * @param depth the maximum number of directory levels to search
-   * @return the list of files
+   * The scanner used to search directories for images.
    */
-  private static List<File> getImageList(String directory, int depth) throws IOException {
-    List<File> files = Files.find(Paths.get(directory), depth,
-        // make sure it is a file
-        (filePath, fileAttr) -> fileAttr.isRegularFile()
-            && fileIsImage(filePath.getFileName().toString())) // make sure file is an image
-        .map(Path::toFile).collect(Collectors.toList()); // map each path to a file and it to a list
+  private static volatile DirectoryScanner scanner = new DirectoryScanner();
 
-    return files;
-  }
+  /**
+   * The suffix of the temporary name a file is given while a cycle of files is moved.
+   */
+  private static final String STAGING_SUFFIX = ".moving";
+
+  /**
+   * The largest number of moves remembered by relocateFile().
+   */
+  private static final int REMEMBERED_RELOCATIONS = 1024;
+
+  /**
+   * The last files moved by relocateFile(), by their new path, so the same move made again can be
+   * recognised.
+   */
+  private static final Map<String, Relocation> relocations = new HashMap<>();
+
+  /**
+   * The new paths in relocations, from the oldest move to the newest.
+   */
+  private static final ArrayDeque<String> relocationOrder = new ArrayDeque<>();
 
   /**
    * Returns a list of all files under a directory (recursively) that are images.
@@ -37,7 +58,59 @@ public class FileManager {
    * @return the list of files
    */
   public static List<File> getImageListRec(String directory) throws IOException {
-    return getImageList(directory, Integer.MAX_VALUE); // search with the maximum recursive depth
+    return scanner.scan(directory); // search all subdirectories in parallel
+  }
+
+  /**
+   * Starts searching a directory for images in the background, handing the images of each
+   * directory to the sink as soon as that directory has been read. The sink is called from other
+   * threads, so it must be thread safe.
+   *
+   * @param directory the directory being searched under
+   * @param recursive true to search the subdirectories as well
+   * @param sink receives the images of each directory that contains images
+   * @param isCancelled returns true when the search should stop early
+   * @return the running search, which is done once every directory has been handed to the sink
+   * @throws IOException when the directory does not exist
+   */
+  public static Future<List<File>> findImages(String directory, boolean recursive,
+      Consumer<List<File>> sink, BooleanSupplier isCancelled) throws IOException {
+    return scanner.scanAsync(directory, recursive, sink, isCancelled);
+  }
+
+  /**
+   * Sets the number of workers used to search directories recursively.
+   *
+   * @param parallelism the number of workers, must be at least 1
+   */
+  public static synchronized void setScanParallelism(int parallelism) {
+    if (parallelism != scanner.getParallelism()) {
+      DirectoryScanner oldScanner = scanner;
+      DirectoryScanner newScanner = new DirectoryScanner(parallelism);
+      newScanner.setSnapshot(oldScanner.getSnapshot());
+      scanner = newScanner;
+      oldScanner.shutdown();
+    }
+  }
+
+  /**
+   * Sets the snapshot of the directories scanned before. Directories that have not changed since
+   * they were recorded in the snapshot are not listed again when searching for images, and the
+   * directories that are listed are recorded in it.
+   *
+   * @param snapshot the snapshot, or null to always list every directory
+   */
+  public static synchronized void setScanSnapshot(ScanSnapshot snapshot) {
+    scanner.setSnapshot(snapshot);
+  }
+
+  /**
+   * Returns the snapshot of the directories scanned before.
+   *
+   * @return the snapshot, or null if there is none
+   */
+  public static ScanSnapshot getScanSnapshot() {
+    return scanner.getSnapshot();
   }
 
   /**
@@ -47,7 +120,7 @@ public class FileManager {
    * @return the list of files
    */
   public static List<File> getImageList(String directory) throws IOException {
-    return getImageList(directory, 1); // search with depth 1, so no recursion
+    return scanner.scan(directory, false); // no recursion
   }
 
   /**
@@ -56,8 +129,8 @@ public class FileManager {
    * @param fileName The name of the file, including its file extension.
    * @return true if the file is an image, false otherwise
    */
-  private static boolean fileIsImage(String fileName) {
-    return fileName.matches(".*\\.(png|jpe?g)");
+  static boolean fileIsImage(String fileName) {
+    return FileNameTokenizer.tokenize(fileName).isImage();
   }
 
   /**
@@ -84,13 +157,14 @@ public class FileManager {
   }
 
   /**
-   * Returns the file extension of the file with the given path.
+   * Returns the file extension of the file with the given path, which is what follows the last dot
+   * of its name.
    *
    * @param path the path of the file
-   * @return the file extension of the file with the given path
+   * @return the file extension of the file with the given path, with its dot
    */
   private static String getFileExtension(String path) {
-    return path.split("\\.")[1];
+    return FileNameTokenizer.tokenize(new File(path).getName()).getExtension();
   }
 
   /**
@@ -105,7 +179,7 @@ public class FileManager {
 
     if (file.isFile()) {
 
-      File newFileDest = new File(file.getParent(), newName + "." + getFileExtension(path));
+      File newFileDest = new File(file.getParent(), newName + getFileExtension(path));
 
       return file.renameTo(newFileDest);
     }
@@ -128,4 +202,313 @@ public class FileManager {
     }
     return false;
   }
+
+  /**
+   * Moves and renames a file in one step. It will do so if the file exists in the OS and nothing
+   * exists at the new path. If the file is already gone, it only counts as moved if this class
+   * moved it to the new path itself, and the file there still has the size and the modification
+   * time the file had before that move. This happens when the same change is relocated twice, such
+   * as by two managers of one picture.
+   *
+   * @param path the path of the file
+   * @param newPath the new path of the file, including its new name
+   * @return true if the file was moved or had already been moved by this class, false otherwise
+   * (this includes if the path did not change)
+   */
+  public static boolean relocateFile(String path, String newPath) {
+    File file = new File(path);
+    File newFile = new File(newPath);
+    if (file.isFile() && !newFile.exists()) {
+      Relocation relocation = new Relocation(path, file.length(), file.lastModified());
+      if (!file.renameTo(newFile)) {
+        return false;
+      }
+      rememberRelocation(newFile.getPath(), relocation);
+      return true;
+    }
+    return !file.exists() && wasRelocated(path, newFile);
+  }
+
+  /**
+   * Remembers a file moved by relocateFile(), forgetting the oldest move once too many are
+   * remembered.
+   *
+   * @param newPath the new path of the file
+   * @param relocation the file before it was moved
+   */
+  private static void rememberRelocation(String newPath, Relocation relocation) {
+    synchronized (relocations) {
+      if (relocations.put(newPath, relocation) == null) {
+        relocationOrder.add(newPath);
+        if (relocationOrder.size() > REMEMBERED_RELOCATIONS) {
+          relocations.remove(relocationOrder.remove());
+        }
+      }
+    }
+  }
+
+  /**
+   * Determines whether relocateFile() moved a file to a new path, and the file there is still the
+   * one it moved.
+   *
+   * @param path the path of the file before the move
+   * @param newFile the file at the new path
+   * @return true if the file at the new path was moved there from the path by relocateFile()
+   */
+  private static boolean wasRelocated(String path, File newFile) {
+    Relocation relocation;
+    synchronized (relocations) {
+      relocation = relocations.get(newFile.getPath());
+    }
+    return relocation != null && relocation.path.equals(path) && newFile.isFile()
+        && newFile.length() == relocation.length
+        && newFile.lastModified() == relocation.lastModified;
+  }
+
+  /**
+   * Moves and renames many files at once, as in relocateFile(), using a bounded number of threads.
+   * A file that cannot be moved does not stop the other files from being moved.
+   *
+   * @param moves the new path of each file, by the current path of the file
+   * @param parallelism the largest number of files moved at the same time, must be at least 1
+   * @return the current paths of the files that could not be moved
+   */
+  public static Set<String> relocateFiles(Map<String, String> moves, int parallelism) {
+    return relocateFiles(moves, parallelism, null);
+  }
+
+  /**
+   * Moves and renames many files at once, as in relocateFile(), using a bounded number of threads.
+   * The files are grouped by the directory they are in, and the files of one group are moved one
+   * after the other, so the threads mostly work in different directories instead of all waiting on
+   * the same one. A directory with many files is split into a group per thread. A file that cannot
+   * be moved does not stop the other files from being moved.
+   *
+   * A file moving to where another of the files is waits for that file to move first: such files
+   * form a chain that is moved from its end, and a file is not moved if the file in its way could
+   * not be. A cycle of files, such as a swap, is moved through a temporary name, and is moved back
+   * as it was if one of its files cannot be moved.
+   *
+   * @param moves the new path of each file, by the current path of the file
+   * @param parallelism the largest number of files moved at the same time, must be at least 1
+   * @param progress called with the number of files done so far after each file, from the thread
+   * that moved it, or null
+   * @return the current paths of the files that could not be moved
+   */
+  public static Set<String> relocateFiles(Map<String, String> moves, int parallelism,
+      IntConsumer progress) {
+    Set<String> failed = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    if (moves.isEmpty()) {
+      return failed;
+    }
+
+    // The file moving to each path that another file moves away from
+    Map<String, String> movingInto = new HashMap<>();
+    for (Map.Entry<String, String> move : moves.entrySet()) {
+      if (moves.containsKey(move.getValue()) && !move.getKey().equals(move.getValue())) {
+        movingInto.putIfAbsent(move.getValue(), move.getKey());
+      }
+    }
+
+    // Each chain starts with a file whose new path is not in the way of another file
+    List<List<String>> chains = new ArrayList<>();
+    Set<String> cycles = new HashSet<>();
+    Set<String> chained = new HashSet<>();
+    for (String path : moves.keySet()) {
+      if (!path.equals(movingInto.get(moves.get(path)))) {
+        chains.add(chain(path, movingInto, chained));
+      }
+    }
+    // the files left are in cycles
+    for (String path : moves.keySet()) {
+      if (!chained.contains(path)) {
+        chains.add(chain(path, movingInto, chained));
+        cycles.add(path);
+      }
+    }
+
+    AtomicInteger done = new AtomicInteger();
+    relocateGrouped(chains, moves.size(), parallelism, chain -> {
+      for (String path : relocateChain(chain, cycles.contains(chain.get(0)), moves)) {
+        failed.add(path);
+      }
+      for (int i = 0; i < chain.size(); i++) {
+        int doneCount = done.incrementAndGet();
+        if (progress != null) {
+          progress.accept(doneCount);
+        }
+      }
+    });
+    return failed;
+  }
+
+  /**
+   * Returns a chain of files, each moving to where the file before it is.
+   *
+   * @param first the current path of the first file of the chain
+   * @param movingInto the file moving to each path that another file moves away from
+   * @param chained the files in the chains so far, to which the files of this chain are added
+   * @return the current paths of the files of the chain, in the order they can be moved
+   */
+  private static List<String> chain(String first, Map<String, String> movingInto,
+      Set<String> chained) {
+    List<String> chain = new ArrayList<>();
+    for (String path = first; path != null && chained.add(path); path = movingInto.get(path)) {
+      chain.add(path);
+    }
+    return chain;
+  }
+
+  /**
+   * Moves the files of a chain one after the other. Once a file cannot be moved, the files after
+   * it are not moved either, since their new paths are still taken. A cycle starts by moving its
+   * first file to a temporary name, and its files are moved back if one of them cannot be moved,
+   * so no file is left under its temporary name.
+   *
+   * @param chain the current paths of the files, in the order they can be moved
+   * @param isCycle true if the first file moves to where the last file is
+   * @param moves the new path of each file, by the current path of the file
+   * @return the current paths of the files of the chain that could not be moved
+   */
+  private static List<String> relocateChain(List<String> chain, boolean isCycle,
+      Map<String, String> moves) {
+    String first = chain.get(0);
+    String stagingPath = isCycle ? stagingPath(first) : null;
+    boolean isBlocked = isCycle && !relocateFile(first, stagingPath);
+
+    int movedCount = 0;
+    for (int i = isCycle ? 1 : 0; i < chain.size() && !isBlocked; i++) {
+      String path = chain.get(i);
+      isBlocked = !relocateFile(path, moves.get(path));
+      if (!isBlocked) {
+        movedCount = i + 1;
+      }
+    }
+
+    if (isCycle && (isBlocked || !relocateFile(stagingPath, moves.get(first)))) {
+      for (int i = movedCount - 1; i >= 1; i--) {
+        relocateFile(moves.get(chain.get(i)), chain.get(i));
+      }
+      if (new File(stagingPath).isFile()) {
+        relocateFile(stagingPath, first);
+      }
+      return chain;
+    }
+    return isCycle ? Collections.emptyList() : chain.subList(movedCount, chain.size());
+  }
+
+  /**
+   * Returns a path next to a file that no file has, to move the file to for a moment.
+   *
+   * @param path the path of the file
+   * @return the temporary path
+   */
+  private static String stagingPath(String path) {
+    String stagingPath = path + STAGING_SUFFIX;
+    for (int i = 1; new File(stagingPath).exists(); i++) {
+      stagingPath = path + STAGING_SUFFIX + i;
+    }
+    return stagingPath;
+  }
+
+  /**
+   * Moves chains of files using a bounded number of threads, grouping the chains by the directory
+   * of their first file as described in relocateFiles(), and waits until they are all moved.
+   *
+   * @param chains the current paths of the files of each chain
+   * @param fileCount the number of files in all the chains
+   * @param parallelism the largest number of chains moved at the same time, must be at least 1
+   * @param relocateChain moves the files of a chain
+   */
+  private static void relocateGrouped(List<List<String>> chains, int fileCount, int parallelism,
+      Consumer<List<String>> relocateChain) {
+    // Group the chains by the directory of their first file
+    Map<String, List<List<String>>> chainsByDirectory = new HashMap<>();
+    for (List<String> chain : chains) {
+      String directory = new File(chain.get(0)).getParent();
+      List<List<String>> group = chainsByDirectory.get(directory);
+      if (group == null) {
+        group = new ArrayList<>();
+        chainsByDirectory.put(directory, group);
+      }
+      group.add(chain);
+    }
+
+    // No group has many more files than a thread's share of all the files
+    int groupSize = (fileCount + parallelism - 1) / parallelism;
+    List<List<List<String>>> groups = new ArrayList<>();
+    for (List<List<String>> directoryChains : chainsByDirectory.values()) {
+      List<List<String>> group = new ArrayList<>();
+      int groupFileCount = 0;
+      for (List<String> chain : directoryChains) {
+        group.add(chain);
+        groupFileCount += chain.size();
+        if (groupFileCount >= groupSize) {
+          groups.add(group);
+          group = new ArrayList<>();
+          groupFileCount = 0;
+        }
+      }
+      if (!group.isEmpty()) {
+        groups.add(group);
+      }
+    }
+
+    ExecutorService workers = Executors.newFixedThreadPool(Math.min(parallelism, groups.size()));
+    for (List<List<String>> group : groups) {
+      workers.execute(() -> {
+        for (List<String> chain : group) {
+          relocateChain.accept(chain);
+        }
+      });
+    }
+
+    // wait for every file, so the result is complete even if we are interrupted
+    workers.shutdown();
+    boolean interrupted = false;
+    while (!workers.isTerminated()) {
+      try {
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * A file moved by relocateFile(), as it was before the move.
+   */
+  private static class Relocation {
+
+    /**
+     * The path of the file before the move
+     */
+    private final String path;
+
+    /**
+     * The size of the file, in bytes
+     */
+    private final long length;
+
+    /**
+     * The modification time of the file
+     */
+    private final long lastModified;
+
+    /**
+     * Records a file before it is moved.
+     *
+     * @param path the path of the file
+     * @param length the size of the file, in bytes
+     * @param lastModified the modification time of the file
+     */
+    Relocation(String path, long length, long lastModified) {
+      this.path = path;
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+  }
 }
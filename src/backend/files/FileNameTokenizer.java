@@ -0,0 +1,260 @@
+package backend.files;
+
+/**
+ * Splits the name of a picture file, such as "chick @Chicken @Cute.jpg", into its tagless name, its
+ * tags and its file extension, in one pass over the name. The file extension is what follows the
+ * last dot, so "my.chick @Cute.jpg" has the tagless name "my.chick". The tokenizer also checks
+ * that the name is a valid name for a picture: words separated by single spaces, followed by tags
+ * made of word characters, whose levels may be separated by TAG_LEVEL_SEPARATOR. Only the tagless
+ * name may hold dots.
+ *
+ * The tokenizer keeps positions in the name instead of splitting it, so no string is created until
+ * a part of the name is asked for. Each thread reuses one tokenizer, see tokenize().
+ */
+public class FileNameTokenizer {
+
+  /**
+   * The character separating the levels of a tag, such as "place-canada".
+   */
+  public static final char TAG_LEVEL_SEPARATOR = '-';
+
+  /**
+   * Before the first word, only whitespace has been read.
+   */
+  private static final int START = 0;
+
+  /**
+   * In a word of the tagless name.
+   */
+  private static final int NAME_WORD = 1;
+
+  /**
+   * After a space following a word of the tagless name.
+   */
+  private static final int NAME_SPACE = 2;
+
+  /**
+   * Right after the '@' of a tag.
+   */
+  private static final int TAG_AT = 3;
+
+  /**
+   * In a level of a tag.
+   */
+  private static final int TAG_WORD = 4;
+
+  /**
+   * Right after the separator between two levels of a tag.
+   */
+  private static final int TAG_SEPARATOR = 5;
+
+  /**
+   * After a space following a tag.
+   */
+  private static final int TAG_SPACE = 6;
+
+  /**
+   * After more than one space at the end of the name, where only whitespace may follow.
+   */
+  private static final int TRAILING_SPACE = 7;
+
+  /**
+   * The name is not valid.
+   */
+  private static final int INVALID = 8;
+
+  /**
+   * The tokenizer of each thread.
+   */
+  private static final ThreadLocal<FileNameTokenizer> tokenizers =
+      ThreadLocal.withInitial(FileNameTokenizer::new);
+
+  /**
+   * The file name being tokenized.
+   */
+  private String fileName;
+
+  /**
+   * The position of the last dot, or the length of the name if it has none.
+   */
+  private int lastDot;
+
+  /**
+   * The position of each '@' before the last dot.
+   */
+  private int[] tagStarts = new int[8];
+
+  /**
+   * The number of '@' before the last dot.
+   */
+  private int tagCount;
+
+  /**
+   * True if the name is a valid name for a picture.
+   */
+  private boolean valid;
+
+  /**
+   * Returns the tokenizer of the current thread, set to a file name. The tokenizer is reused by the
+   * next call on the same thread, so the parts of the name should be read before then.
+   *
+   * @param fileName The name of a file, without its directory
+   * @return The tokenizer of the current thread.
+   */
+  public static FileNameTokenizer tokenize(String fileName) {
+    FileNameTokenizer tokenizer = tokenizers.get();
+    tokenizer.reset(fileName);
+    return tokenizer;
+  }
+
+  /**
+   * Tokenizes a file name, replacing the name tokenized before.
+   *
+   * @param fileName The name of a file, without its directory
+   */
+  public void reset(String fileName) {
+    this.fileName = fileName;
+    this.lastDot = fileName.length();
+    this.tagCount = 0;
+
+    int state = START;
+    int stateAtLastDot = INVALID;
+    int tagsAtLastDot = 0;
+    for (int i = 0; i < fileName.length(); i++) {
+      char c = fileName.charAt(i);
+      if (c == '.') {
+        // Everything before the last dot is the name, so remember how far it got
+        this.lastDot = i;
+        stateAtLastDot = state;
+        tagsAtLastDot = this.tagCount;
+      } else if (c == '@') {
+        if (this.tagCount == this.tagStarts.length) {
+          int[] tagStarts = new int[this.tagCount * 2];
+          System.arraycopy(this.tagStarts, 0, tagStarts, 0, this.tagCount);
+          this.tagStarts = tagStarts;
+        }
+        this.tagStarts[this.tagCount++] = i;
+      }
+      state = next(state, c);
+    }
+
+    if (this.lastDot == fileName.length()) {
+      stateAtLastDot = state;
+    } else {
+      this.tagCount = tagsAtLastDot;
+    }
+    this.valid = stateAtLastDot != START && stateAtLastDot != TAG_AT
+        && stateAtLastDot != TAG_SEPARATOR && stateAtLastDot != INVALID;
+  }
+
+  /**
+   * Returns the state of the validation after reading a character.
+   *
+   * @param state The state before the character
+   * @param c The character
+   * @return The state after the character.
+   */
+  private static int next(int state, char c) {
+    boolean word = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+        || c == '_';
+    boolean space = c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    switch (state) {
+      case START:
+        return space ? START : word ? NAME_WORD : INVALID;
+      case NAME_WORD:
+        return word || c == '.' ? NAME_WORD : space ? NAME_SPACE : INVALID;
+      case NAME_SPACE:
+        return word ? NAME_WORD : c == '@' ? TAG_AT : space ? TRAILING_SPACE : INVALID;
+      case TAG_AT:
+      case TAG_SEPARATOR:
+        return word ? TAG_WORD : INVALID;
+      case TAG_WORD:
+        if (word) {
+          return TAG_WORD;
+        }
+        return c == TAG_LEVEL_SEPARATOR ? TAG_SEPARATOR : space ? TAG_SPACE : INVALID;
+      case TAG_SPACE:
+        return c == '@' ? TAG_AT : space ? TRAILING_SPACE : INVALID;
+      case TRAILING_SPACE:
+        return space ? TRAILING_SPACE : INVALID;
+      default:
+        return INVALID;
+    }
+  }
+
+  /**
+   * Determines whether the name is a valid name for a picture, ignoring the file extension.
+   *
+   * @return True if the name is valid; else false.
+   */
+  public boolean isValid() {
+    return this.valid;
+  }
+
+  /**
+   * Determines whether the file extension is one of the image extensions: png, jpg and jpeg.
+   *
+   * @return True if the file is an image; else false.
+   */
+  public boolean isImage() {
+    int length = this.fileName.length() - this.lastDot - 1;
+    return length == 3 && (this.fileName.startsWith("png", this.lastDot + 1)
+        || this.fileName.startsWith("jpg", this.lastDot + 1))
+        || length == 4 && this.fileName.startsWith("jpeg", this.lastDot + 1);
+  }
+
+  /**
+   * Returns the file extension, with its dot, such as ".jpg".
+   *
+   * @return The file extension, or "" if the name has no dot.
+   */
+  public String getExtension() {
+    return this.trimmed(this.lastDot, this.fileName.length());
+  }
+
+  /**
+   * Returns the tagless name, which is the name up to the first tag, without the spaces around it.
+   *
+   * @return The tagless name.
+   */
+  public String getTaglessName() {
+    return this.trimmed(0, this.tagCount == 0 ? this.lastDot : this.tagStarts[0]);
+  }
+
+  /**
+   * Returns the number of tags in the name, including the empty ones.
+   *
+   * @return The number of tags in the name.
+   */
+  public int getTagCount() {
+    return this.tagCount;
+  }
+
+  /**
+   * Returns the label of a tag in the name, without the '@' and the spaces around it.
+   *
+   * @param index The index of the tag, from 0 to getTagCount() - 1
+   * @return The label of the tag, which may be "" if the name has an '@' with nothing after it.
+   */
+  public String getTag(int index) {
+    int end = index + 1 < this.tagCount ? this.tagStarts[index + 1] : this.lastDot;
+    return this.trimmed(this.tagStarts[index] + 1, end);
+  }
+
+  /**
+   * Returns a part of the name, without the whitespace at both ends, as String.trim() does.
+   *
+   * @param start The position of the first character of the part
+   * @param end The position after the last character of the part
+   * @return The trimmed part of the name.
+   */
+  private String trimmed(int start, int end) {
+    while (start < end && this.fileName.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && this.fileName.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    return this.fileName.substring(start, end);
+  }
+}
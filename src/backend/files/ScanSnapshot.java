@@ -0,0 +1,189 @@
+package backend.files;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A snapshot of the directories that were scanned, recording the modification time of each
+ * directory along with the images and subdirectories in it. A directory whose modification time
+ * has not moved since it was listed has the same entries, so the scanner can use the snapshot
+ * instead of listing the directory again.
+ */
+public class ScanSnapshot implements Serializable {
+
+  /**
+   * The version of the serialized form, which is the one snapshots were saved with before it was
+   * declared, so they can still be read.
+   */
+  private static final long serialVersionUID = -9208378922991247166L;
+
+  /**
+   * Listings whose modification time is this close to the time they were taken are not trusted,
+   * since the directory may have changed again within the precision of the file system's clock.
+   */
+  private static final long CLOCK_PRECISION_MILLIS = 2000;
+
+  /**
+   * The listing of each directory, by the absolute path of the directory.
+   */
+  private ConcurrentHashMap<String, Listing> listings = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the names of the images and subdirectories in a directory, if the directory has not
+   * changed since it was last listed.
+   *
+   * @param directory the directory
+   * @param modified the current modification time of the directory, in milliseconds
+   * @return the listing of the directory, or null if it has to be listed again
+   */
+  Listing getListing(Path directory, long modified) {
+    Listing listing = this.listings.get(directory.toAbsolutePath().toString());
+    if (listing != null && listing.modified == modified
+        && listing.listedAt - modified > CLOCK_PRECISION_MILLIS) {
+      return listing;
+    }
+    return null;
+  }
+
+  /**
+   * Records the listing of a directory. Subdirectories that were in the previous listing but not in
+   * this one are forgotten, along with everything under them.
+   *
+   * @param directory the directory
+   * @param modified the modification time of the directory before it was listed, in milliseconds
+   * @param images the names of the images in the directory
+   * @param subdirectories the names of the subdirectories in the directory
+   */
+  void putListing(Path directory, long modified, List<String> images,
+      List<String> subdirectories) {
+    String path = directory.toAbsolutePath().toString();
+    Listing listing = new Listing(modified, System.currentTimeMillis(),
+        images.toArray(new String[0]), subdirectories.toArray(new String[0]));
+    Listing oldListing = this.listings.put(path, listing);
+
+    if (oldListing != null) {
+      Set<String> curSubdirectories = new HashSet<>(subdirectories);
+      for (String subdirectory : oldListing.subdirectories) {
+        if (!curSubdirectories.contains(subdirectory)) {
+          this.forget(path + File.separator + subdirectory);
+        }
+      }
+    }
+  }
+
+  /**
+   * Forgets the listing of a directory and of everything under it.
+   *
+   * @param path the absolute path of the directory
+   */
+  private void forget(String path) {
+    String prefix = path + File.separator;
+    Iterator<String> paths = this.listings.keySet().iterator();
+    while (paths.hasNext()) {
+      String curPath = paths.next();
+      if (curPath.equals(path) || curPath.startsWith(prefix)) {
+        paths.remove();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of directories in this snapshot.
+   *
+   * @return the number of directories in this snapshot
+   */
+  public int size() {
+    return this.listings.size();
+  }
+
+  /**
+   * Save this snapshot to the given file name
+   *
+   * @param fileName the name of the file to save to
+   * @throws IOException When it is not a valid file name
+   */
+  public void save(String fileName) throws IOException {
+    ObjectOutput output =
+        new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+    output.writeObject(this);
+    output.close();
+  }
+
+  /**
+   * Load a snapshot from the given file name. If the file does not exist or cannot be read, an
+   * empty snapshot is returned, so every directory will be listed again.
+   *
+   * @param fileName the file name
+   * @return the snapshot
+   */
+  public static ScanSnapshot loadFromFile(String fileName) {
+    try (ObjectInput input =
+        new ObjectInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+      return (ScanSnapshot) input.readObject();
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      return new ScanSnapshot();
+    }
+  }
+
+  /**
+   * The entries of a directory at the time it was listed.
+   */
+  static class Listing implements Serializable {
+
+    /**
+     * The version of the serialized form, which is the one listings were saved with before it was
+     * declared, so they can still be read.
+     */
+    private static final long serialVersionUID = 8201364450234687431L;
+
+    /**
+     * The modification time of the directory, in milliseconds.
+     */
+    final long modified;
+
+    /**
+     * The time the directory was listed, in milliseconds.
+     */
+    final long listedAt;
+
+    /**
+     * The names of the images in the directory.
+     */
+    final String[] images;
+
+    /**
+     * The names of the subdirectories in the directory.
+     */
+    final String[] subdirectories;
+
+    /**
+     * Creates the listing of a directory.
+     *
+     * @param modified the modification time of the directory
+     * @param listedAt the time the directory was listed
+     * @param images the names of the images in the directory
+     * @param subdirectories the names of the subdirectories in the directory
+     */
+    Listing(long modified, long listedAt, String[] images, String[] subdirectories) {
+      this.modified = modified;
+      this.listedAt = listedAt;
+      this.images = images;
+      this.subdirectories = subdirectories;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package backend.models;
+
+/**
+ * Renames the files of the pictures that have a tag whose label is an alias, in the background and
+ * at a limited rate, see PictureManager.normalizeAliases(). The files are renamed in small batches
+ * with a pause after each batch, so the manager is only held for a moment at a time. It stops once
+ * there is nothing left to rename.
+ */
+public class AliasNormalizer {
+
+  /**
+   * The manager whose pictures are renamed.
+   */
+  private final PictureManager manager;
+
+  /**
+   * The largest number of pictures renamed in one batch.
+   */
+  private final int batchSize;
+
+  /**
+   * How long to wait after each batch, in milliseconds.
+   */
+  private final long pauseMillis;
+
+  /**
+   * The thread renaming the files.
+   */
+  private final Thread thread;
+
+  /**
+   * The number of pictures renamed so far.
+   */
+  private volatile int renamedCount;
+
+  /**
+   * Starts renaming the files of the pictures of a manager that have a tag whose label is an alias.
+   *
+   * @param manager the manager whose pictures are renamed
+   * @param batchSize the largest number of pictures renamed in one batch, must be at least 1
+   * @param pauseMillis how long to wait after each batch, in milliseconds
+   */
+  public AliasNormalizer(PictureManager manager, int batchSize, long pauseMillis) {
+    this.manager = manager;
+    this.batchSize = batchSize;
+    this.pauseMillis = pauseMillis;
+
+    this.thread = new Thread(this::run, "AliasNormalizer " + manager.getCurrDir());
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * Stops renaming files. The batch being renamed, if any, is finished first.
+   */
+  public void close() {
+    this.thread.interrupt();
+  }
+
+  /**
+   * Determines whether files are still being renamed.
+   *
+   * @return True if files are still being renamed; else false.
+   */
+  public boolean isRunning() {
+    return this.thread.isAlive();
+  }
+
+  /**
+   * Returns the number of pictures renamed so far.
+   *
+   * @return The number of pictures renamed so far.
+   */
+  public int getRenamedCount() {
+    return this.renamedCount;
+  }
+
+  /**
+   * Renames the files in batches until there are none left or this normalizer is closed.
+   */
+  private void run() {
+    while (!Thread.currentThread().isInterrupted()) {
+      int renamed = this.manager.normalizeAliases(this.batchSize).getEdited().size();
+      if (renamed == 0) {
+        return; // the pictures left, if any, could not be renamed
+      }
+      this.renamedCount += renamed;
+
+      try {
+        Thread.sleep(this.pauseMillis);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+}
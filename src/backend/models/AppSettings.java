@@ -1,26 +1,47 @@
 package backend.models;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInput;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A class used for Configuration writing/reading.
  *
- * it contains information of All Pictures
+ * it contains information of All Pictures. It is saved as a catalog, and once saved, later saves
+ * only append the pictures and tags that changed to the journal of the catalog, see
+ * CatalogJournal. It listens to its pictures to know which ones changed.
+ *
+ * App settings opened from a catalog with openFromFile() only read the pictures of a directory
+ * when loadDirectory() asks for it, so only the pictures of the directories being viewed are in
+ * memory.
+ *
+ * A save is captured in memory while this is locked, and written to the file afterwards, see
+ * prepareSave(), so the pictures can keep changing while it is written.
  */
-public class AppSettings implements Serializable {
+public class AppSettings implements Serializable, PictureListener {
+
+  /**
+   * The version of the serialized form, which is the one app settings were saved with before there
+   * were catalogs, so they can still be read.
+   */
+  private static final long serialVersionUID = 8049542097716212028L;
 
   /**
    * List of all the pictures
@@ -32,60 +53,249 @@ public class AppSettings implements Serializable {
    */
   private List<Tag> availableTags = new ArrayList<>();
 
+  /**
+   * The label of the tag each alias stands for, by the label of the alias
+   */
+  private HashMap<String, String> tagAliases = new HashMap<>();
+
   /**
    * defualt file name is set to "Config"
    */
   private static final String defualtFileName = "Config";
 
   /**
-   * Adds all Pictures and tags to the PictureManager
+   * Added to the name of a file the app settings could not be loaded from when it is set aside
+   */
+  private static final String UNREADABLE_SUFFIX = ".unreadable";
+
+  /**
+   * The size the journal can grow to before it is folded into the catalog, in bytes
+   */
+  private static final long COMPACTION_THRESHOLD = 1 << 20;
+
+  /**
+   * The name of the catalog this instance was last saved to or loaded from, or null if it has not
+   * been saved as a catalog yet
+   */
+  private transient String savedFileName;
+
+  /**
+   * The generation of the journal of the catalog, see CatalogJournal
+   */
+  private transient long generation;
+
+  /**
+   * A snapshot of each picture that changed since the last save from when it was saved, or null
+   * for the pictures that were never saved
+   */
+  private transient IdentityHashMap<Picture, PictureSnapshot> changedPictures =
+      new IdentityHashMap<>();
+
+  /**
+   * The labels of the available tags when this instance was last saved
+   */
+  private transient List<String> savedTagLabels = new ArrayList<>();
+
+  /**
+   * The tag aliases when this instance was last saved
+   */
+  private transient Map<String, String> savedTagAliases = new HashMap<>();
+
+  /**
+   * The catalog the pictures not loaded yet are read from, or null if they are all loaded
+   */
+  private transient CatalogFile catalog;
+
+  /**
+   * The directories whose pictures are not loaded yet
+   */
+  private transient Set<String> unloadedDirectories = new HashSet<>();
+
+  /**
+   * The saves in the journals of the catalog, which are replayed on each directory as it is loaded
+   */
+  private transient List<CatalogJournal.Save> journalSaves = new ArrayList<>();
+
+  /**
+   * The thread folding the journal into the catalog, or null if there has not been one
+   */
+  private transient Thread compaction;
+
+  /**
+   * Held from the time a save is prepared until it is written, so saves are written in the order
+   * they were prepared and the journal is not compacted in between
+   */
+  private transient ReentrantLock saveLock = new ReentrantLock();
+
+  /**
+   * Called when a picture changed or was added since the last save, or null
+   */
+  private transient Runnable changeListener;
+
+  /**
+   * Creates empty app settings.
+   */
+  public AppSettings() {
+  }
+
+  /**
+   * Creates app settings from a catalog and its journals, without loading any picture yet. The
+   * tags are the latest ones saved.
    *
-   * @param manager a PictureManager
+   * @param catalog The catalog
+   * @param journals The journals of the catalog, oldest first
    */
-  public void addPicToManager(PictureManager manager) {
-    for (Picture picture : historicalPictures) {
-      for (Picture picture1 : manager.getPictures()) {
-        if (picture1.equals(picture)) {
-          manager.untrackPicture(picture1);
-          manager.addPicture(picture);
+  AppSettings(CatalogFile catalog, List<CatalogJournal> journals) {
+    this.catalog = catalog;
+    this.availableTags = catalog.getAvailableTags();
+    this.tagAliases = catalog.getAliases();
+    this.generation = catalog.getGeneration();
+    this.unloadedDirectories.addAll(catalog.getDirectories());
+    for (CatalogJournal journal : journals) {
+      this.generation = Math.max(this.generation, journal.getGeneration());
+      for (CatalogJournal.Save save : journal.getSaves()) {
+        this.journalSaves.add(save);
+        for (Picture picture : save.getPictures()) {
+          this.unloadedDirectories.add(picture.getDirectoryPath());
+        }
+        if (save.getAvailableTags() != null) {
+          this.availableTags = save.getAvailableTags();
+          this.tagAliases = save.getAliases();
         }
       }
     }
+    if (this.unloadedDirectories.isEmpty()) {
+      catalog.close(); // there are no pictures to read from it
+      this.catalog = null;
+    }
+  }
+
+  /**
+   * Adds all Pictures, tags and tag aliases to the PictureManager
+   *
+   * @param manager a PictureManager
+   */
+  public void addPicToManager(PictureManager manager) {
+    // The manager looks each picture up by its path, so this takes one pass over the pictures
+    manager.replacePictures(this.getHistoricalPicture());
 
     for (Tag tag : this.availableTags) {
       if (!manager.contains(tag)) {
         manager.addTagToCollection(tag);
       }
     }
+
+    if (this.tagAliases != null) { // settings saved before there were aliases have none
+      for (Map.Entry<String, String> alias : this.tagAliases.entrySet()) {
+        manager.addAlias(alias.getKey(), new Tag(alias.getValue()));
+      }
+    }
   }
 
   /**
-   * Adds all the pictures and tags in the given PictureManager to this class.
+   * Adds all the pictures, tags and tag aliases in the given PictureManager to this class.
    *
    * @param manager The picture manager to grab the tags and pictures from
    */
   public void addPicFromManager(PictureManager manager) {
-    for (Picture picture : manager.getPictures()) {
-      if (!this.historicalPictures.contains(picture)) {
-        this.historicalPictures.add(picture);
+    // The manager is read before locking this, since its pictures notify this while it is locked
+    List<Picture> pictures = manager.getPictures();
+    List<Tag> tags = manager.getAvailableTags();
+    HashMap<String, String> aliases = new HashMap<>(manager.getAliases());
+
+    boolean isChanged = false;
+    synchronized (this) {
+      HashSet<String> paths = new HashSet<>(this.historicalPictures.size() * 2);
+      for (Picture picture : this.historicalPictures) {
+        paths.add(picture.getAbsolutePath());
       }
+
+      for (Picture picture : pictures) {
+        if (paths.add(picture.getAbsolutePath())) {
+          this.historicalPictures.add(picture);
+          this.changedPictures.put(picture, null);
+          picture.addListener(this);
+          isChanged = true;
+        }
+      }
+      this.availableTags = tags;
+      this.tagAliases = aliases;
+    }
+    if (isChanged) {
+      this.notifyChanged();
     }
-    this.availableTags = manager.getAvailableTags();
   }
 
   /**
-   * Save configuration to given fileName
+   * Save configuration to given fileName, as a catalog. If this was last saved to or loaded from
+   * the same file, only what changed since then is appended to the journal of the catalog, and the
+   * journal is compacted in the background once it gets too long.
    *
    * @param fileName the name of the file to save to
    * @throws IOException When it is not a valid file name
    */
   public void save(String fileName) throws IOException {
-    OutputStream buffer = new BufferedOutputStream(new FileOutputStream(fileName));
-    ObjectOutput output = new ObjectOutputStream(buffer);
+    this.prepareSave(fileName).write();
+  }
+
+  /**
+   * Captures what save() would write to the given file in memory, without writing it yet, so the
+   * file can be written without holding up the changes made in the meantime. The changes made
+   * after this returns go to the next save. No other save can be prepared until the returned save
+   * is written, which must be done on the same thread.
+   *
+   * @param fileName the name of the file to save to
+   * @return the save, to be written with PendingSave.write()
+   * @throws IOException When the pictures that are not loaded yet cannot be read
+   */
+  public PendingSave prepareSave(String fileName) throws IOException {
+    this.saveLock.lock();
+    try {
+      synchronized (this) {
+        List<String> tagLabels = new ArrayList<>(this.availableTags.size());
+        for (Tag tag : this.availableTags) {
+          tagLabels.add(tag.getLabel());
+        }
+        Map<String, String> tagAliases = new HashMap<>(this.getTagAliases());
+
+        ByteBuffer bytes = null;
+        boolean isCatalog = !fileName.equals(this.savedFileName);
+        if (isCatalog) {
+          this.waitForCompaction();
+          this.loadAll();
+          bytes = CatalogFile.encode(this, this.generation);
+        } else {
+          boolean tagsChanged =
+              !tagLabels.equals(this.savedTagLabels) || !tagAliases.equals(this.savedTagAliases);
+          if (!this.changedPictures.isEmpty() || tagsChanged) {
+            bytes = CatalogJournal.encode(this.changedPictures,
+                tagsChanged ? this.availableTags : null, tagAliases);
+          }
+        }
 
-    // serialize the Map
-    output.writeObject(this);
-    output.close();
+        PendingSave save = new PendingSave(fileName, isCatalog, bytes);
+        this.changedPictures = new IdentityHashMap<>();
+        this.savedTagLabels = tagLabels;
+        this.savedTagAliases = tagAliases;
+        return save;
+      }
+    } catch (IOException | RuntimeException e) {
+      this.saveLock.unlock();
+      throw e;
+    }
+  }
+
+  /**
+   * Marks what a save that could not be written held as changed again, so it goes to the next
+   * save.
+   *
+   * @param save the save that could not be written
+   */
+  private synchronized void restore(PendingSave save) {
+    // The snapshots in the save are from before it, which is how the pictures were last saved
+    this.changedPictures.putAll(save.pictures);
+    this.savedTagLabels = save.savedTagLabels;
+    this.savedTagAliases = save.savedTagAliases;
   }
 
   /**
@@ -98,13 +308,59 @@ public class AppSettings implements Serializable {
   }
 
   /**
-   * Load the serialized AppSetting file from given fileName
+   * Captures a save to the default file name: Config, see prepareSave(String).
+   *
+   * @return the save, to be written with PendingSave.write()
+   * @throws IOException When the pictures that are not loaded yet cannot be read
+   */
+  public PendingSave prepareSave() throws IOException {
+    return prepareSave(defualtFileName);
+  }
+
+  /**
+   * Load the AppSetting file from given fileName, with all its pictures. The file is either a
+   * catalog or, if it was saved before there were catalogs, a serialized AppSetting.
    *
    * @param fileName the file name
-   * @return the deserialized AppSetting Object
+   * @return the loaded AppSetting Object
    */
   public static AppSettings loadFromFile(String fileName)
       throws IOException, ClassNotFoundException {
+    AppSettings settings = openFromFile(fileName);
+    settings.loadAll();
+    return settings;
+  }
+
+  /**
+   * Open the AppSetting file from given fileName. If the file is a catalog, its pictures are only
+   * read when loadDirectory() asks for them. If it was saved before there were catalogs, it is a
+   * serialized AppSetting, which is read all at once.
+   *
+   * @param fileName the file name
+   * @return the opened AppSetting Object
+   */
+  public static AppSettings openFromFile(String fileName)
+      throws IOException, ClassNotFoundException {
+    if (CatalogFile.isCatalog(fileName)) {
+      CatalogFile catalog = CatalogFile.open(fileName);
+      List<CatalogJournal> journals = new ArrayList<>();
+      for (String suffix : new String[] {CatalogJournal.OLD_SUFFIX, CatalogJournal.SUFFIX}) {
+        CatalogJournal journal = CatalogJournal.read(fileName + suffix, catalog.getGeneration());
+        if (journal != null) {
+          journals.add(journal);
+        }
+      }
+
+      AppSettings settings = new AppSettings(catalog, journals);
+      settings.savedFileName = fileName;
+      for (Tag tag : settings.availableTags) {
+        settings.savedTagLabels.add(tag.getLabel());
+      }
+      settings.savedTagAliases = new HashMap<>(settings.getTagAliases());
+      return settings;
+    }
+
+    // An older file, which is read once and then saved as a catalog
     InputStream buffer = new BufferedInputStream(new FileInputStream(fileName));
     ObjectInput input = new ObjectInputStream(buffer);
 
@@ -116,14 +372,298 @@ public class AppSettings implements Serializable {
   }
 
   /**
-   * Load the Serialized AppSetting from the default file Name: Config
+   * Moves a file the app settings could not be loaded from out of the way, along with its journals,
+   * so that saving new app settings does not overwrite it. It is renamed with UNREADABLE_SUFFIX,
+   * followed by a number if there is already such a file.
+   *
+   * @param fileName the file name
+   * @return the name the file was moved to, or null if there is no such file
+   * @throws IOException When the file cannot be moved.
+   */
+  public static String setAside(String fileName) throws IOException {
+    if (!Files.exists(Paths.get(fileName))) {
+      return null;
+    }
+
+    String newName = fileName + UNREADABLE_SUFFIX;
+    for (int i = 1; Files.exists(Paths.get(newName)); i++) {
+      newName = fileName + UNREADABLE_SUFFIX + i;
+    }
+    for (String suffix : new String[] {CatalogJournal.OLD_SUFFIX, CatalogJournal.SUFFIX}) {
+      if (Files.exists(Paths.get(fileName + suffix))) {
+        Files.move(Paths.get(fileName + suffix), Paths.get(newName + suffix));
+      }
+    }
+    Files.move(Paths.get(fileName), Paths.get(newName));
+    return newName;
+  }
+
+  /**
+   * Moves the default file: Config out of the way, see setAside(String).
+   *
+   * @return the name the file was moved to, or null if there is no such file
+   * @throws IOException When the file cannot be moved.
+   */
+  public static String setAside() throws IOException {
+    return setAside(defualtFileName);
+  }
+
+  /**
+   * Loads the pictures of a directory, or of a directory and all the directories under it, unless
+   * they are already loaded.
+   *
+   * @param directory the directory
+   * @param isRecursive True to load the pictures of the directories under it too, otherwise false
+   * @throws IOException When the pictures cannot be read.
+   */
+  public synchronized void loadDirectory(String directory, boolean isRecursive)
+      throws IOException {
+    String path = new File(directory).getAbsolutePath();
+    String prefix = path.endsWith(File.separator) ? path : path + File.separator;
+    Set<String> directories = new HashSet<>();
+    for (String unloadedDirectory : this.unloadedDirectories) {
+      if (path.equals(unloadedDirectory)
+          || isRecursive && unloadedDirectory != null && unloadedDirectory.startsWith(prefix)) {
+        directories.add(unloadedDirectory);
+      }
+    }
+    this.load(directories);
+  }
+
+  /**
+   * Loads the pictures of all the directories that are not loaded yet.
+   *
+   * @throws IOException When the pictures cannot be read.
+   */
+  synchronized void loadAll() throws IOException {
+    this.load(new HashSet<>(this.unloadedDirectories));
+  }
+
+  /**
+   * Loads the pictures of some directories from the catalog, and replays the saves in the journals
+   * on them.
+   *
+   * @param directories directories that are not loaded yet
+   * @throws IOException When the pictures cannot be read.
+   */
+  private void load(Set<String> directories) throws IOException {
+    if (directories.isEmpty()) {
+      return;
+    }
+
+    int start = this.historicalPictures.size();
+    for (String directory : directories) {
+      this.historicalPictures.addAll(this.catalog.readPartition(directory));
+    }
+
+    // The position of each loaded picture by path
+    HashMap<String, Integer> indexes = new HashMap<>();
+    for (int i = start; i < this.historicalPictures.size(); i++) {
+      indexes.put(this.historicalPictures.get(i).getAbsolutePath(), i);
+    }
+    for (CatalogJournal.Save save : this.journalSaves) {
+      this.replay(save, directories, indexes);
+    }
+
+    List<Picture> loaded = this.historicalPictures.subList(start, this.historicalPictures.size());
+    loaded.removeIf(picture -> picture == null); // moved to a directory that is not loaded
+    for (Picture picture : loaded) {
+      picture.addListener(this);
+    }
+
+    this.unloadedDirectories.removeAll(directories);
+    if (this.unloadedDirectories.isEmpty()) {
+      this.catalog.close(); // so the file can be replaced by the next save
+      this.catalog = null;
+      this.journalSaves = new ArrayList<>();
+    }
+  }
+
+  /**
+   * Replays a save in a journal on the pictures of some directories being loaded. A picture that
+   * was saved in one of the directories is replaced with its state in the save, or removed if it
+   * moved to another directory, and a picture now in one of the directories is added. The saved
+   * paths all refer to the previous save, so two pictures can swap their paths.
    *
-   * @return the deserialized AppSetting Object
+   * @param save the save
+   * @param directories the directories being loaded
+   * @param indexes the position of each picture being loaded, by path
+   */
+  private void replay(CatalogJournal.Save save, Set<String> directories,
+      HashMap<String, Integer> indexes) {
+    List<Picture> pictures = save.getPictures();
+    Integer[] savedIndexes = new Integer[pictures.size()];
+    for (int i = 0; i < savedIndexes.length; i++) {
+      String savedPath = save.getSavedPaths().get(i);
+      if (savedPath != null && directories.contains(save.getSavedDirectories().get(i))) {
+        savedIndexes[i] = indexes.remove(savedPath);
+      }
+    }
+
+    for (int i = 0; i < savedIndexes.length; i++) {
+      Picture picture = pictures.get(i);
+      Integer index = savedIndexes[i];
+      if (directories.contains(picture.getDirectoryPath())) {
+        if (index == null) {
+          // A picture saved while it was being renamed may already be at its new path
+          index = indexes.get(picture.getAbsolutePath());
+        }
+        if (index == null) {
+          index = this.historicalPictures.size();
+          this.historicalPictures.add(picture);
+        } else {
+          this.historicalPictures.set(index, picture);
+        }
+        indexes.put(picture.getAbsolutePath(), index);
+      } else if (index != null) {
+        this.historicalPictures.set(index, null);
+      }
+    }
+  }
+
+  /**
+   * Starts folding the journal of the catalog this was last saved to into the catalog, in the
+   * background. Does nothing if it is already being compacted or there is no journal.
+   */
+  public void compact() {
+    // The journal is not rotated between the time a save is prepared and the time it is written
+    this.saveLock.lock();
+    try {
+      synchronized (this) {
+        this.startCompaction();
+      }
+    } finally {
+      this.saveLock.unlock();
+    }
+  }
+
+  /**
+   * Renames the journal of the catalog this was last saved to and starts folding it into the
+   * catalog, see compact().
+   */
+  private void startCompaction() {
+    if (this.savedFileName == null || this.compaction != null && this.compaction.isAlive()) {
+      return;
+    }
+
+    String fileName = this.savedFileName;
+    Path journal = Paths.get(fileName + CatalogJournal.SUFFIX);
+    Path oldJournal = Paths.get(fileName + CatalogJournal.OLD_SUFFIX);
+    try {
+      // An old journal left by a compaction that did not finish is folded first
+      if (!Files.exists(oldJournal)) {
+        if (!Files.exists(journal)) {
+          return;
+        }
+        Files.move(journal, oldJournal);
+        this.generation++;
+      }
+    } catch (IOException e) {
+      // the journal keeps growing until the next compaction
+      return;
+    }
+
+    if (this.catalog != null) {
+      this.catalog.detach(); // so the compaction can replace the file
+    }
+    long generation = this.generation;
+    this.compaction = new Thread(() -> CatalogJournal.compact(fileName, generation),
+        "Compaction " + fileName);
+    this.compaction.setDaemon(true);
+    this.compaction.start();
+  }
+
+  /**
+   * Waits until the journal compaction started by save() or compact(), if any, is done.
+   */
+  public void waitForCompaction() {
+    Thread compaction;
+    synchronized (this) {
+      compaction = this.compaction;
+    }
+    if (compaction != null) {
+      try {
+        compaction.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Remembers that a picture changed, so it is saved with the next save.
+   *
+   * @param picture The picture that changed
+   * @param oldState A snapshot of the picture from before the change
+   */
+  @Override
+  public void pictureChanged(Picture picture, PictureSnapshot oldState) {
+    synchronized (this) {
+      if (!this.changedPictures.containsKey(picture)) {
+        this.changedPictures.put(picture, oldState);
+      }
+    }
+    this.notifyChanged();
+  }
+
+  /**
+   * Sets the listener called when a picture changed or was added since the last save. It is
+   * called from the thread that changed the picture.
+   *
+   * @param listener the listener, or null
+   */
+  public void setChangeListener(Runnable listener) {
+    this.changeListener = listener;
+  }
+
+  /**
+   * Calls the change listener, if there is one
+   */
+  private void notifyChanged() {
+    Runnable listener = this.changeListener;
+    if (listener != null) {
+      listener.run();
+    }
+  }
+
+  /**
+   * Reads the serialized app settings, which were saved before there were catalogs.
+   *
+   * @param in The stream to read from
+   * @throws IOException When the app settings cannot be read
+   * @throws ClassNotFoundException When a class of the saved app settings cannot be found
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    this.changedPictures = new IdentityHashMap<>();
+    this.unloadedDirectories = new HashSet<>();
+    this.journalSaves = new ArrayList<>();
+    this.savedTagLabels = new ArrayList<>();
+    this.savedTagAliases = new HashMap<>();
+    this.saveLock = new ReentrantLock();
+    for (Picture picture : this.historicalPictures) {
+      picture.addListener(this);
+    }
+  }
+
+  /**
+   * Load the AppSetting from the default file Name: Config, with all its pictures
+   *
+   * @return the loaded AppSetting Object
    */
   public static AppSettings loadFromFile() throws IOException, ClassNotFoundException {
     return loadFromFile(defualtFileName);
   }
 
+  /**
+   * Open the AppSetting from the default file Name: Config, without loading its pictures yet
+   *
+   * @return the opened AppSetting Object
+   */
+  public static AppSettings openFromFile() throws IOException, ClassNotFoundException {
+    return openFromFile(defualtFileName);
+  }
+
   /**
    * Get a copy of the list of historical pictures stored in this instance
    *
@@ -141,4 +681,117 @@ public class AppSettings implements Serializable {
   public List<Tag> getAvailableTags() {
     return new ArrayList<>(this.availableTags);
   }
+
+  /**
+   * Returns the label of the tag each alias stands for, by the label of the alias.
+   *
+   * @return The tag aliases stored in this instance, which should not be changed.
+   */
+  Map<String, String> getTagAliases() {
+    if (this.tagAliases == null) { // settings saved before there were aliases have none
+      return new HashMap<>();
+    }
+    return this.tagAliases;
+  }
+
+  /**
+   * A save captured by prepareSave(), which is written to its file with write().
+   */
+  public class PendingSave {
+
+    /**
+     * The name of the file to save to
+     */
+    private final String fileName;
+
+    /**
+     * True if the save is a whole catalog, or false if it is appended to the journal
+     */
+    private final boolean isCatalog;
+
+    /**
+     * The catalog or the journal records to write, or null if nothing changed
+     */
+    private final ByteBuffer bytes;
+
+    /**
+     * The generation of the catalog when the save was prepared
+     */
+    private final long generation;
+
+    /**
+     * The pictures in the save, each with a snapshot of how it was saved before
+     */
+    private final IdentityHashMap<Picture, PictureSnapshot> pictures;
+
+    /**
+     * The labels of the available tags as they were saved before
+     */
+    private final List<String> savedTagLabels;
+
+    /**
+     * The tag aliases as they were saved before
+     */
+    private final Map<String, String> savedTagAliases;
+
+    /**
+     * Captures a save. The app settings must be locked.
+     *
+     * @param fileName the name of the file to save to
+     * @param isCatalog true if the save is a whole catalog, or false if it goes to the journal
+     * @param bytes the catalog or the journal records, or null if nothing changed
+     */
+    private PendingSave(String fileName, boolean isCatalog, ByteBuffer bytes) {
+      this.fileName = fileName;
+      this.isCatalog = isCatalog;
+      this.bytes = bytes;
+      this.generation = AppSettings.this.generation;
+      this.pictures = AppSettings.this.changedPictures;
+      this.savedTagLabels = AppSettings.this.savedTagLabels;
+      this.savedTagAliases = AppSettings.this.savedTagAliases;
+    }
+
+    /**
+     * Returns the number of bytes this save writes.
+     *
+     * @return the size of the catalog or of the journal records, or 0 if nothing changed
+     */
+    public long getSize() {
+      return this.bytes == null ? 0 : this.bytes.remaining();
+    }
+
+    /**
+     * Writes this save to its file, and lets the next save be prepared. If it cannot be written,
+     * what it holds goes to the next save instead.
+     *
+     * @return the number of bytes written
+     * @throws IOException When it is not a valid file name
+     */
+    public long write() throws IOException {
+      try {
+        if (this.bytes == null) {
+          return 0;
+        }
+        if (this.isCatalog) {
+          CatalogFile.write(this.bytes, this.fileName);
+          Files.deleteIfExists(Paths.get(this.fileName + CatalogJournal.SUFFIX));
+          Files.deleteIfExists(Paths.get(this.fileName + CatalogJournal.OLD_SUFFIX));
+          synchronized (AppSettings.this) {
+            AppSettings.this.savedFileName = this.fileName;
+          }
+        } else {
+          long size = CatalogJournal.append(this.fileName, this.generation, this.bytes);
+          if (size > COMPACTION_THRESHOLD) {
+            AppSettings.this.compact();
+          }
+        }
+        return this.getSize();
+      } catch (IOException | RuntimeException e) {
+        AppSettings.this.restore(this);
+        throw e;
+      } finally {
+        AppSettings.this.saveLock.unlock();
+      }
+    }
+  }
 }
@@ -0,0 +1,17 @@
+package backend.models;
+
+/**
+ * A listener that follows the progress of an edit of many pictures at once, such as renaming a tag
+ * that many pictures have.
+ */
+public interface BulkEditListener {
+
+  /**
+   * Called each time the file of a picture has been renamed, or could not be renamed. It may be
+   * called from several threads at once.
+   *
+   * @param renamedCount the number of files done so far
+   * @param totalCount the number of files that need to be renamed
+   */
+  void filesRenamed(int renamedCount, int totalCount);
+}
@@ -0,0 +1,119 @@
+package backend.models;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of editing many pictures at once with a PictureManager. Pictures whose file could
+ * not be renamed are put back the way they were and reported as failed, while the other pictures
+ * keep their changes.
+ */
+public class BulkEditResult {
+
+  /**
+   * The tags changed on each picture that was edited.
+   */
+  private Map<Picture, List<Tag>> changedTags = new IdentityHashMap<>();
+
+  /**
+   * The pictures that were edited, in order.
+   */
+  private List<Picture> edited = new ArrayList<>();
+
+  /**
+   * The pictures whose file could not be renamed.
+   */
+  private List<Picture> failed = new ArrayList<>();
+
+  /**
+   * How long the edit took, in milliseconds.
+   */
+  private long elapsedMillis;
+
+  /**
+   * Records a picture that was edited.
+   *
+   * @param picture The picture
+   * @param tags The tags that were added to or deleted from the picture
+   */
+  void addEdited(Picture picture, List<Tag> tags) {
+    this.edited.add(picture);
+    this.changedTags.put(picture, tags);
+  }
+
+  /**
+   * Records a picture whose file could not be renamed. It is no longer counted as edited.
+   *
+   * @param picture The picture
+   */
+  void addFailed(Picture picture) {
+    this.failed.add(picture);
+    this.changedTags.remove(picture);
+  }
+
+  /**
+   * Sets how long the edit took.
+   *
+   * @param elapsedMillis The time the edit took, in milliseconds
+   */
+  void setElapsedMillis(long elapsedMillis) {
+    this.elapsedMillis = elapsedMillis;
+  }
+
+  /**
+   * Returns a copy of the list of pictures that were edited.
+   *
+   * @return The pictures that were edited.
+   */
+  public List<Picture> getEdited() {
+    List<Picture> edited = new ArrayList<>();
+    for (Picture picture : this.edited) {
+      if (this.changedTags.containsKey(picture)) {
+        edited.add(picture);
+      }
+    }
+    return edited;
+  }
+
+  /**
+   * Returns the tags that were added to or deleted from a picture that was edited. Tags the picture
+   * already had (or did not have) are not included.
+   *
+   * @param picture A picture that was edited
+   * @return The tags changed on the picture, or an empty list if it was not edited.
+   */
+  public List<Tag> getChangedTags(Picture picture) {
+    List<Tag> tags = this.changedTags.get(picture);
+    return tags == null ? new ArrayList<>() : new ArrayList<>(tags);
+  }
+
+  /**
+   * Returns a copy of the list of pictures whose file could not be renamed. These pictures were not
+   * changed.
+   *
+   * @return The pictures whose file could not be renamed.
+   */
+  public List<Picture> getFailed() {
+    return new ArrayList<>(this.failed);
+  }
+
+  /**
+   * Returns how long the edit took, in milliseconds.
+   *
+   * @return How long the edit took, in milliseconds.
+   */
+  public long getElapsedMillis() {
+    return this.elapsedMillis;
+  }
+
+  /**
+   * Returns the number of pictures edited per second.
+   *
+   * @return The number of pictures edited per second.
+   */
+  public double getPicturesPerSecond() {
+    return this.changedTags.size() * 1000.0 / Math.max(this.elapsedMillis, 1);
+  }
+}
@@ -0,0 +1,1008 @@
+package backend.models;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads and writes the app settings in a compact binary catalog, instead of serializing the whole
+ * object graph. The directories and the labels of the tags are each stored once, in a string
+ * table, and the pictures refer to them by index. Numbers are written as variable-length integers,
+ * so small numbers take one byte.
+ *
+ * The catalog starts with MAGIC, a version number, its generation, see CatalogJournal, and the
+ * position of its index. Then come the table of directories, the table of labels, the available
+ * tags, the tag aliases and the pictures, grouped by directory into partitions. Each picture is
+ * its tagless name, its file extension, its tags, its historical tagless names and its historical
+ * tag states. The index gives the position of the partition of each directory, so the pictures of
+ * a directory are read without reading the others.
+ *
+ * A catalog is written through a buffered FileChannel into a new file that then replaces the old
+ * one, either directly or from memory, see encode(). It is opened by reading the file into memory,
+ * or by mapping it into memory when it is large, and its partitions are read when they are asked
+ * for. Catalogs of versions 1 and 2 had no partitions, so all their pictures are read when they are
+ * opened.
+ */
+class CatalogFile {
+
+  /**
+   * The first four bytes of a catalog, "PCAT".
+   */
+  static final int MAGIC = 0x50434154;
+
+  /**
+   * The version of the catalog format written by this class.
+   */
+  static final int VERSION = 3;
+
+  /**
+   * The position of the position of the index, after MAGIC, the version and the generation.
+   */
+  private static final int INDEX_POSITION_OFFSET = 16;
+
+  /**
+   * The size of the buffer the catalog is written through.
+   */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * The number of times replacing a catalog is tried before giving up.
+   */
+  private static final int REPLACE_ATTEMPTS = 5;
+
+  /**
+   * How long to wait before trying to replace a catalog again, doubled after each try, in
+   * milliseconds.
+   */
+  private static final long REPLACE_BACKOFF_MILLIS = 50;
+
+  /**
+   * The size from which a catalog is mapped into memory instead of read, in bytes.
+   */
+  private static final long MAP_THRESHOLD = 1 << 25;
+
+  /**
+   * Logs the mapped catalogs that cannot be unmapped.
+   */
+  private static final Logger logger = Logger.getLogger(CatalogFile.class.getName());
+
+  /**
+   * The catalog, read or mapped into memory, or a copy of it once it is detached from its file.
+   */
+  private ByteBuffer buffer;
+
+  /**
+   * The generation of the catalog.
+   */
+  private final long generation;
+
+  /**
+   * The table of labels.
+   */
+  private final String[] labels;
+
+  /**
+   * The tag of each label read so far, by index, so the pictures with the same tag share it.
+   */
+  private final Tag[] tags;
+
+  /**
+   * The available tags.
+   */
+  private final List<Tag> availableTags;
+
+  /**
+   * The label of the tag each alias stands for, by the label of the alias.
+   */
+  private final HashMap<String, String> aliases;
+
+  /**
+   * The position of the partition of each directory and its number of pictures, by directory, in
+   * the order they were written.
+   */
+  private final LinkedHashMap<String, long[]> partitions = new LinkedHashMap<>();
+
+  /**
+   * The pictures of each directory, by directory, for the catalogs without partitions, whose
+   * pictures are all read when they are opened.
+   */
+  private final HashMap<String, List<Picture>> readPictures = new HashMap<>();
+
+  /**
+   * Opens a catalog, reading its tags and its index.
+   *
+   * @param buffer The catalog
+   * @param fileName The name of the file of the catalog
+   * @throws IOException When the file is not a catalog of a known version.
+   */
+  private CatalogFile(ByteBuffer buffer, String fileName) throws IOException {
+    this.buffer = buffer;
+    Input input = new Input(buffer.duplicate());
+    if (input.readInt() != MAGIC) {
+      throw new IOException(fileName + " is not a catalog");
+    }
+    int version = input.readInt();
+    if (version < 1 || version > VERSION) {
+      throw new IOException(fileName + " has the unknown catalog version " + version);
+    }
+    this.generation = version >= 2 ? input.readLong() : 0;
+    long indexPosition = version >= 3 ? input.readLong() : 0;
+
+    String[] directories = input.readStringTable();
+    this.labels = input.readStringTable();
+    this.tags = new Tag[this.labels.length];
+
+    int tagCount = input.readVarInt();
+    this.availableTags = new ArrayList<>(tagCount);
+    for (int i = 0; i < tagCount; i++) {
+      this.availableTags.add(this.getTag(input.readVarInt()));
+    }
+
+    int aliasCount = input.readVarInt();
+    this.aliases = new HashMap<>();
+    for (int i = 0; i < aliasCount; i++) {
+      String alias = this.labels[input.readVarInt()];
+      this.aliases.put(alias, this.labels[input.readVarInt()]);
+    }
+
+    if (version >= 3) {
+      input = new Input(this.seek(indexPosition));
+      int partitionCount = input.readVarInt();
+      for (int i = 0; i < partitionCount; i++) {
+        String directory = directories[input.readVarInt()];
+        this.partitions.put(directory, new long[] {input.readLong(), input.readVarInt()});
+      }
+    } else {
+      // Older catalogs have the directory of each picture instead of partitions
+      int pictureCount = input.readVarInt();
+      for (int i = 0; i < pictureCount; i++) {
+        String directory = directories[input.readVarInt()];
+        List<Picture> pictures = this.readPictures.get(directory);
+        if (pictures == null) {
+          pictures = new ArrayList<>();
+          this.readPictures.put(directory, pictures);
+          this.partitions.put(directory, null);
+        }
+        pictures.add(this.readPicture(input, directory));
+      }
+    }
+  }
+
+  /**
+   * Opens a catalog by reading the file into memory, or by mapping it into memory if it is at least
+   * MAP_THRESHOLD bytes long. Its partitions are read by readPartition(). A catalog that was read
+   * does not hold on to its file, so the file can be replaced right away.
+   *
+   * @param fileName The name of the file
+   * @return The catalog.
+   * @throws IOException When the file cannot be read, or is not a catalog of a known version.
+   */
+  static CatalogFile open(String fileName) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size >= MAP_THRESHOLD) {
+        return new CatalogFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), fileName);
+      }
+
+      ByteBuffer buffer = ByteBuffer.allocate((int) size);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) == -1) {
+          break; // the file got shorter, so the catalog is not complete
+        }
+      }
+      buffer.flip();
+      return new CatalogFile(buffer, fileName);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new IOException(fileName + " is not a complete catalog", e);
+    }
+  }
+
+  /**
+   * Returns the generation of this catalog.
+   *
+   * @return The number of times the journal of this catalog has been compacted.
+   */
+  long getGeneration() {
+    return this.generation;
+  }
+
+  /**
+   * Returns the available tags in this catalog.
+   *
+   * @return The available tags.
+   */
+  List<Tag> getAvailableTags() {
+    return this.availableTags;
+  }
+
+  /**
+   * Returns the tag aliases in this catalog.
+   *
+   * @return The label of the tag each alias stands for, by the label of the alias.
+   */
+  HashMap<String, String> getAliases() {
+    return this.aliases;
+  }
+
+  /**
+   * Returns the directories with pictures in this catalog.
+   *
+   * @return The directories, in the order their partitions were written.
+   */
+  Set<String> getDirectories() {
+    return Collections.unmodifiableSet(this.partitions.keySet());
+  }
+
+  /**
+   * Reads the pictures of a directory. The pictures with the same tag share one Tag instance, also
+   * across directories.
+   *
+   * @param directory A directory
+   * @return The pictures of the directory, or an empty list if it has none.
+   * @throws IOException When the partition of the directory is not complete.
+   */
+  synchronized List<Picture> readPartition(String directory) throws IOException {
+    List<Picture> pictures = this.readPictures.remove(directory);
+    if (pictures != null) {
+      return pictures;
+    }
+    long[] partition = this.partitions.get(directory);
+    if (partition == null) {
+      return new ArrayList<>();
+    }
+
+    try {
+      Input input = new Input(this.seek(partition[0]));
+      pictures = new ArrayList<>((int) partition[1]);
+      for (long i = 0; i < partition[1]; i++) {
+        pictures.add(this.readPicture(input, directory));
+      }
+      return pictures;
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new IOException("The pictures of " + directory + " are not complete", e);
+    }
+  }
+
+  /**
+   * Copies this catalog out of its file and unmaps the file if it was mapped, so the file can be
+   * replaced while the partitions not read yet are still read from the catalog it was when it was
+   * opened.
+   */
+  synchronized void detach() {
+    if (this.buffer.isDirect()) {
+      ByteBuffer copy = ByteBuffer.allocate(this.buffer.capacity());
+      copy.put(this.buffer.duplicate());
+      unmap(this.buffer);
+      this.buffer = copy;
+    }
+  }
+
+  /**
+   * Releases this catalog once all its partitions have been read, unmapping its file if it was
+   * mapped so the file can be replaced. No partition can be read afterwards.
+   */
+  synchronized void close() {
+    if (this.buffer.isDirect()) {
+      unmap(this.buffer);
+    }
+    this.buffer = ByteBuffer.allocate(0);
+    this.partitions.clear();
+    this.readPictures.clear();
+  }
+
+  /**
+   * Unmaps a mapped buffer right away instead of when it is garbage collected, since Windows does
+   * not let a file be replaced while it is mapped. The buffer must not be read afterwards. When
+   * the Java runtime does not allow it, this is logged, and the file stays mapped until the buffer
+   * is collected. Only catalogs of at least MAP_THRESHOLD bytes are mapped.
+   *
+   * @param buffer A buffer mapped by open()
+   */
+  private static void unmap(ByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field unsafe = unsafeClass.getDeclaredField("theUnsafe");
+      unsafe.setAccessible(true);
+      unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafe.get(null), buffer);
+    } catch (NoSuchMethodException e) {
+      // Java 8, where the buffer cleans itself up through its cleaner
+      try {
+        Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+        cleanerMethod.setAccessible(true);
+        Object cleaner = cleanerMethod.invoke(buffer);
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      } catch (ReflectiveOperationException | RuntimeException e2) {
+        logger.log(Level.WARNING, "A catalog cannot be unmapped, so it stays mapped until it is "
+            + "garbage collected", e2);
+      }
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      logger.log(Level.WARNING, "A catalog cannot be unmapped, so it stays mapped until it is "
+          + "garbage collected", e);
+    }
+  }
+
+  /**
+   * Returns a view of this catalog starting at a position.
+   *
+   * @param position The position in the catalog
+   * @return A buffer reading this catalog from the position.
+   */
+  private ByteBuffer seek(long position) {
+    ByteBuffer buffer = this.buffer.duplicate();
+    buffer.position((int) position);
+    return buffer;
+  }
+
+  /**
+   * Reads a picture of a partition.
+   *
+   * @param input Where to read the picture from
+   * @param directory The directory of the partition
+   * @return The picture.
+   */
+  private Picture readPicture(Input input, String directory) {
+    String taglessName = input.readString();
+    String fileExt = input.readString();
+
+    int tagCount = input.readVarInt();
+    List<Tag> tags = new ArrayList<>(tagCount);
+    for (int i = 0; i < tagCount; i++) {
+      tags.add(this.getTag(input.readVarInt()));
+    }
+
+    int nameCount = input.readVarInt();
+    List<String> names = nameCount == 0 ? null : new ArrayList<>(nameCount);
+    for (int i = 0; i < nameCount; i++) {
+      names.add(input.readString());
+    }
+
+    int stateCount = input.readVarInt();
+    List<List<String>> states = new ArrayList<>(stateCount);
+    for (int i = 0; i < stateCount; i++) {
+      int stateSize = input.readVarInt();
+      List<String> state = new ArrayList<>(stateSize);
+      for (int j = 0; j < stateSize; j++) {
+        state.add(this.labels[input.readVarInt()]);
+      }
+      states.add(state);
+    }
+
+    return new Picture(directory, taglessName, fileExt, tags, names, states);
+  }
+
+  /**
+   * Returns the tag with a label of the table, creating it the first time.
+   *
+   * @param index The index of the label
+   * @return The tag with the label.
+   */
+  private Tag getTag(int index) {
+    if (this.tags[index] == null) {
+      this.tags[index] = new Tag(this.labels[index]);
+    }
+    return this.tags[index];
+  }
+
+  /**
+   * Determines whether a file is a catalog, by its first bytes. Files saved with Java
+   * serialization before there were catalogs are not.
+   *
+   * @param fileName The name of the file
+   * @return True if the file is a catalog; else false.
+   * @throws IOException When the file cannot be read.
+   */
+  static boolean isCatalog(String fileName) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(4);
+      while (header.hasRemaining() && channel.read(header) != -1) {
+        // keep reading until the header is full or the file ends
+      }
+      return !header.hasRemaining() && header.getInt(0) == MAGIC;
+    }
+  }
+
+  /**
+   * Writes app settings to a catalog, replacing the file once the catalog is complete so a failed
+   * save never leaves half a catalog behind.
+   *
+   * @param settings The app settings, with all their pictures read
+   * @param fileName The name of the file to write to
+   * @param generation The number of times the journal of the file has been compacted
+   * @throws IOException When the file cannot be written.
+   */
+  static void write(AppSettings settings, String fileName, long generation) throws IOException {
+    Path path = Paths.get(fileName).toAbsolutePath();
+    Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+    try (Output output = new Output(FileChannel.open(tempPath, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+      write(settings, generation, output);
+    }
+    replace(tempPath, path);
+  }
+
+  /**
+   * Writes app settings to a catalog in memory, so it can be written to a file later with
+   * write(ByteBuffer, String) while the app settings keep changing.
+   *
+   * @param settings The app settings, with all their pictures read
+   * @param generation The number of times the journal of the file has been compacted
+   * @return The catalog.
+   * @throws IOException When the catalog cannot be written.
+   */
+  static ByteBuffer encode(AppSettings settings, long generation) throws IOException {
+    Output output = new Output();
+    write(settings, generation, output);
+    return output.getBytes();
+  }
+
+  /**
+   * Writes a catalog from encode() to a file, replacing the file once the catalog is complete.
+   *
+   * @param catalog The catalog
+   * @param fileName The name of the file to write to
+   * @throws IOException When the file cannot be written.
+   */
+  static void write(ByteBuffer catalog, String fileName) throws IOException {
+    Path path = Paths.get(fileName).toAbsolutePath();
+    Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+    try (Output output = new Output(FileChannel.open(tempPath, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+      output.write(catalog.duplicate());
+    }
+    replace(tempPath, path);
+  }
+
+  /**
+   * Replaces a catalog with the new catalog written next to it.
+   *
+   * @param tempPath The new catalog
+   * @param path The catalog
+   * @throws IOException When the catalog cannot be replaced.
+   */
+  private static void replace(Path tempPath, Path path) throws IOException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        return;
+      } catch (AccessDeniedException e) {
+        // Windows refuses for a moment while another program, such as a virus scanner, reads it
+        if (attempt == REPLACE_ATTEMPTS) {
+          throw e;
+        }
+        try {
+          Thread.sleep(REPLACE_BACKOFF_MILLIS << (attempt - 1));
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes app settings to a catalog.
+   *
+   * @param settings The app settings
+   * @param generation The number of times the journal of the file has been compacted
+   * @param output Where to write the catalog
+   * @throws IOException When the catalog cannot be written.
+   */
+  private static void write(AppSettings settings, long generation, Output output)
+      throws IOException {
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    output.writeLong(generation);
+    output.writeLong(0); // the position of the index, once it is known
+
+    List<Tag> availableTags = settings.getAvailableTags();
+    Map<String, String> aliases = settings.getTagAliases();
+
+    // Group the pictures by directory and build the string tables
+    LinkedHashMap<String, List<Picture>> partitions = new LinkedHashMap<>();
+    StringTable directories = new StringTable();
+    StringTable labels = new StringTable();
+    for (Tag tag : availableTags) {
+      labels.add(tag.getLabel());
+    }
+    for (Map.Entry<String, String> alias : aliases.entrySet()) {
+      labels.add(alias.getKey());
+      labels.add(alias.getValue());
+    }
+    for (Picture picture : settings.getHistoricalPicture()) {
+      List<Picture> partition = partitions.get(picture.getDirectoryPath());
+      if (partition == null) {
+        partition = new ArrayList<>();
+        partitions.put(picture.getDirectoryPath(), partition);
+        directories.add(picture.getDirectoryPath());
+      }
+      partition.add(picture);
+      for (Tag tag : picture.getTags()) {
+        labels.add(tag.getLabel());
+      }
+      for (List<String> state : picture.getHistoricalTagStates()) {
+        for (String label : state) {
+          labels.add(label);
+        }
+      }
+    }
+
+    directories.write(output);
+    labels.write(output);
+
+    output.writeVarInt(availableTags.size());
+    for (Tag tag : availableTags) {
+      output.writeVarInt(labels.indexOf(tag.getLabel()));
+    }
+    output.writeVarInt(aliases.size());
+    for (Map.Entry<String, String> alias : aliases.entrySet()) {
+      output.writeVarInt(labels.indexOf(alias.getKey()));
+      output.writeVarInt(labels.indexOf(alias.getValue()));
+    }
+
+    long[] positions = new long[partitions.size()];
+    int partitionIndex = 0;
+    for (List<Picture> partition : partitions.values()) {
+      positions[partitionIndex++] = output.position();
+      for (Picture picture : partition) {
+        writePicture(picture, labels, output);
+      }
+    }
+
+    long indexPosition = output.position();
+    output.writeVarInt(partitions.size());
+    partitionIndex = 0;
+    for (Map.Entry<String, List<Picture>> partition : partitions.entrySet()) {
+      output.writeVarInt(directories.indexOf(partition.getKey()));
+      output.writeLong(positions[partitionIndex++]);
+      output.writeVarInt(partition.getValue().size());
+    }
+    output.writeLongAt(INDEX_POSITION_OFFSET, indexPosition);
+  }
+
+  /**
+   * Writes a picture of a partition.
+   *
+   * @param picture The picture
+   * @param labels The table of labels
+   * @param output Where to write the picture
+   * @throws IOException When the catalog cannot be written.
+   */
+  private static void writePicture(Picture picture, StringTable labels, Output output)
+      throws IOException {
+    output.writeString(picture.getTaglessName());
+    output.writeString(picture.getFileExtension());
+
+    List<Tag> tags = picture.getTags();
+    output.writeVarInt(tags.size());
+    for (Tag tag : tags) {
+      output.writeVarInt(labels.indexOf(tag.getLabel()));
+    }
+
+    // A picture that was never renamed has no historical names
+    List<String> names = picture.hasHistoricalTaglessNames()
+        ? picture.getHistoricalTaglessNames() : new ArrayList<String>();
+    output.writeVarInt(names.size());
+    for (String name : names) {
+      output.writeString(name);
+    }
+
+    List<List<String>> states = picture.getHistoricalTagStates();
+    output.writeVarInt(states.size());
+    for (List<String> state : states) {
+      output.writeVarInt(state.size());
+      for (String label : state) {
+        output.writeVarInt(labels.indexOf(label));
+      }
+    }
+  }
+
+  /**
+   * A table of distinct strings, each with the index it is written at.
+   */
+  private static class StringTable {
+
+    /**
+     * The index of each string.
+     */
+    private final HashMap<String, Integer> indexes = new HashMap<>();
+
+    /**
+     * The strings, in the order they were added.
+     */
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * Adds a string to this table, unless it is already in it.
+     *
+     * @param string A string
+     */
+    void add(String string) {
+      if (!this.indexes.containsKey(string)) {
+        this.indexes.put(string, this.strings.size());
+        this.strings.add(string);
+      }
+    }
+
+    /**
+     * Returns the index of a string in this table.
+     *
+     * @param string A string in this table
+     * @return The index of the string.
+     */
+    int indexOf(String string) {
+      return this.indexes.get(string);
+    }
+
+    /**
+     * Writes the number of strings and then each string.
+     *
+     * @param output Where to write this table
+     * @throws IOException When the table cannot be written.
+     */
+    void write(Output output) throws IOException {
+      output.writeVarInt(this.strings.size());
+      for (String string : this.strings) {
+        output.writeString(string);
+      }
+    }
+  }
+
+  /**
+   * Writes the values of a catalog to a file through a buffer, or to memory.
+   */
+  static class Output implements AutoCloseable {
+
+    /**
+     * The file being written, or null if the values are kept in memory.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The values not written to the file yet, or all the values if they are kept in memory.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Creates an output to a file.
+     *
+     * @param channel The file to write to
+     */
+    Output(FileChannel channel) {
+      this.channel = channel;
+      this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Creates an output that keeps the values in memory, see getBytes().
+     */
+    Output() {
+      this.channel = null;
+      this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the values written to an output that keeps them in memory.
+     *
+     * @return A buffer from the first value to the last one.
+     */
+    ByteBuffer getBytes() {
+      ByteBuffer bytes = this.buffer.duplicate();
+      bytes.flip();
+      return bytes;
+    }
+
+    /**
+     * Writes an int in four bytes.
+     *
+     * @param value The value
+     * @throws IOException When the file cannot be written.
+     */
+    void writeInt(int value) throws IOException {
+      this.ensureRemaining(4);
+      this.buffer.putInt(value);
+    }
+
+    /**
+     * Returns the position of the next value in the file.
+     *
+     * @return The number of bytes written so far.
+     * @throws IOException When the file cannot be read.
+     */
+    long position() throws IOException {
+      if (this.channel == null) {
+        return this.buffer.position();
+      }
+      return this.channel.position() + this.buffer.position();
+    }
+
+    /**
+     * Writes a long in eight bytes at a position before the next value, such as in the header.
+     *
+     * @param position The position in the file
+     * @param value The value
+     * @throws IOException When the file cannot be written.
+     */
+    void writeLongAt(long position, long value) throws IOException {
+      if (this.channel == null) {
+        this.buffer.putLong((int) position, value);
+        return;
+      }
+      this.flush();
+      ByteBuffer bytes = ByteBuffer.allocate(8);
+      bytes.putLong(0, value);
+      while (bytes.hasRemaining()) {
+        this.channel.write(bytes, position + bytes.position());
+      }
+    }
+
+    /**
+     * Writes a long in eight bytes.
+     *
+     * @param value The value
+     * @throws IOException When the file cannot be written.
+     */
+    void writeLong(long value) throws IOException {
+      this.ensureRemaining(8);
+      this.buffer.putLong(value);
+    }
+
+    /**
+     * Writes a byte.
+     *
+     * @param value The value
+     * @throws IOException When the file cannot be written.
+     */
+    void writeByte(int value) throws IOException {
+      this.ensureRemaining(1);
+      this.buffer.put((byte) value);
+    }
+
+    /**
+     * Writes a non-negative int in as few bytes as it needs, seven bits per byte.
+     *
+     * @param value The value
+     * @throws IOException When the file cannot be written.
+     */
+    void writeVarInt(int value) throws IOException {
+      this.ensureRemaining(5);
+      while ((value & ~0x7F) != 0) {
+        this.buffer.put((byte) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      this.buffer.put((byte) value);
+    }
+
+    /**
+     * Writes a string as its length in bytes plus one followed by its bytes in UTF-8, or as 0 if
+     * it is null.
+     *
+     * @param value The value, which may be null
+     * @throws IOException When the file cannot be written.
+     */
+    void writeString(String value) throws IOException {
+      if (value == null) {
+        this.writeVarInt(0);
+        return;
+      }
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      this.writeVarInt(bytes.length + 1);
+      int offset = 0;
+      while (offset < bytes.length) {
+        this.ensureRemaining(1);
+        int length = Math.min(this.buffer.remaining(), bytes.length - offset);
+        this.buffer.put(bytes, offset, length);
+        offset += length;
+      }
+    }
+
+    /**
+     * Writes values that were kept in memory, see getBytes().
+     *
+     * @param bytes The values
+     * @throws IOException When the file cannot be written.
+     */
+    void write(ByteBuffer bytes) throws IOException {
+      if (this.channel == null) {
+        this.ensureRemaining(bytes.remaining());
+        this.buffer.put(bytes);
+        return;
+      }
+      this.flush();
+      while (bytes.hasRemaining()) {
+        this.channel.write(bytes);
+      }
+    }
+
+    /**
+     * Writes the buffer to the file if it has less room than needed, or makes the buffer larger if
+     * the values are kept in memory.
+     *
+     * @param size The number of bytes needed
+     * @throws IOException When the file cannot be written.
+     */
+    private void ensureRemaining(int size) throws IOException {
+      if (this.buffer.remaining() >= size) {
+        return;
+      }
+      if (this.channel == null) {
+        ByteBuffer larger = ByteBuffer.allocate(
+            Math.max(this.buffer.capacity() * 2, this.buffer.position() + size));
+        this.buffer.flip();
+        larger.put(this.buffer);
+        this.buffer = larger;
+      } else {
+        this.flush();
+      }
+    }
+
+    /**
+     * Writes the buffer to the file.
+     *
+     * @throws IOException When the file cannot be written.
+     */
+    private void flush() throws IOException {
+      if (this.channel == null) {
+        return;
+      }
+      this.buffer.flip();
+      while (this.buffer.hasRemaining()) {
+        this.channel.write(this.buffer);
+      }
+      this.buffer.clear();
+    }
+
+    /**
+     * Writes what is left in the buffer, forces it to the disk and closes the file.
+     *
+     * @throws IOException When the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+      if (this.channel == null) {
+        return;
+      }
+      try {
+        this.flush();
+        this.channel.force(false);
+      } finally {
+        this.channel.close();
+      }
+    }
+  }
+
+  /**
+   * Reads the values of a catalog from a buffer.
+   */
+  static class Input {
+
+    /**
+     * The catalog.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The bytes of the last string read.
+     */
+    private byte[] bytes = new byte[64];
+
+    /**
+     * Creates an input from a buffer.
+     *
+     * @param buffer The catalog
+     */
+    Input(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /**
+     * Reads an int written in four bytes.
+     *
+     * @return The value.
+     */
+    int readInt() {
+      return this.buffer.getInt();
+    }
+
+    /**
+     * Reads a long written in eight bytes.
+     *
+     * @return The value.
+     */
+    long readLong() {
+      return this.buffer.getLong();
+    }
+
+    /**
+     * Reads a byte.
+     *
+     * @return The value.
+     */
+    int readByte() {
+      return this.buffer.get();
+    }
+
+    /**
+     * Determines whether everything has been read.
+     *
+     * @return True if there is nothing left to read; else false.
+     */
+    boolean isAtEnd() {
+      return !this.buffer.hasRemaining();
+    }
+
+    /**
+     * Returns how many bytes have been read.
+     *
+     * @return The position in the buffer.
+     */
+    int position() {
+      return this.buffer.position();
+    }
+
+    /**
+     * Reads an int written with Output.writeVarInt().
+     *
+     * @return The value.
+     */
+    int readVarInt() {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        byte b = this.buffer.get();
+        value |= (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+      throw new IndexOutOfBoundsException("A number is too long");
+    }
+
+    /**
+     * Reads a string written with Output.writeString().
+     *
+     * @return The value, which may be null.
+     */
+    String readString() {
+      int length = this.readVarInt() - 1;
+      if (length == -1) {
+        return null;
+      }
+      if (length > this.bytes.length) {
+        this.bytes = new byte[Math.max(length, this.bytes.length * 2)];
+      }
+      this.buffer.get(this.bytes, 0, length);
+      return new String(this.bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a table written with StringTable.write().
+     *
+     * @return The strings of the table, by index.
+     */
+    String[] readStringTable() {
+      String[] strings = new String[this.readVarInt()];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = this.readString();
+      }
+      return strings;
+    }
+  }
+}
@@ -0,0 +1,495 @@
+package backend.models;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The changes made to app settings since their catalog was written, see CatalogFile. Saving app
+ * settings appends the pictures that changed since the last save to the journal of the catalog,
+ * instead of writing the whole catalog again, and loading them replays the journal on top of the
+ * catalog.
+ *
+ * Each record holds the whole state of one picture along with the directory and the path it was
+ * saved under, or all the available tags and tag aliases, so the last record of a picture is all
+ * that matters. The directories let the records be replayed one partition of the catalog at a
+ * time, see AppSettings.loadDirectory(). The records of one save end with an END record, and are
+ * only replayed once it is read. Once
+ * the journal gets too long it is compacted: it is renamed with OLD_SUFFIX so the next changes go
+ * to a new journal, and the catalog and the old journal are folded into a new catalog in the
+ * background. Every journal starts with the generation of the catalog it applies to, and the new
+ * catalog is one generation newer, so a journal that was already folded into it is not replayed.
+ */
+class CatalogJournal {
+
+  /**
+   * The first four bytes of a journal, "PJRN".
+   */
+  static final int MAGIC = 0x504A524E;
+
+  /**
+   * The version of the journal format written by this class.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * Added to the name of a catalog to get the name of its journal.
+   */
+  static final String SUFFIX = ".journal";
+
+  /**
+   * Added to the name of a catalog to get the name of the journal being folded into it.
+   */
+  static final String OLD_SUFFIX = ".journal.old";
+
+  /**
+   * The size of the header of a journal: MAGIC, VERSION and the generation.
+   */
+  private static final int HEADER_SIZE = 16;
+
+  /**
+   * The type of a record holding a picture and the path it was saved under, written before the
+   * catalog had partitions.
+   */
+  private static final int PICTURE = 1;
+
+  /**
+   * The type of a record holding a picture and the directory and path it was saved under.
+   */
+  private static final int PICTURE_WITH_DIRECTORY = 4;
+
+  /**
+   * The type of a record holding the available tags and tag aliases.
+   */
+  private static final int TAGS = 2;
+
+  /**
+   * The type of the record ending the records of one save.
+   */
+  private static final int END = 3;
+
+  /**
+   * The generation of the catalog this journal applies to.
+   */
+  private final long generation;
+
+  /**
+   * The saves in this journal, in the order they were made.
+   */
+  private final List<Save> saves;
+
+  /**
+   * Creates a journal read from a file.
+   *
+   * @param generation The generation of the catalog the journal applies to
+   * @param saves The saves in the journal
+   */
+  private CatalogJournal(long generation, List<Save> saves) {
+    this.generation = generation;
+    this.saves = saves;
+  }
+
+  /**
+   * Returns the generation of the catalog this journal applies to.
+   *
+   * @return The generation of this journal.
+   */
+  long getGeneration() {
+    return this.generation;
+  }
+
+  /**
+   * Returns the saves in this journal.
+   *
+   * @return The saves, in the order they were made.
+   */
+  List<Save> getSaves() {
+    return this.saves;
+  }
+
+  /**
+   * Writes the records of one save in memory, so they can be appended to the journal later with
+   * append() while the pictures keep changing.
+   *
+   * @param pictures The pictures that changed, each with a snapshot of how it was last saved, or
+   * null if it was never saved
+   * @param tags The available tags, or null if they did not change
+   * @param aliases The label of the tag each alias stands for, by the label of the alias, ignored
+   * if tags is null
+   * @return The records, ending with an END record.
+   * @throws IOException When the records cannot be written.
+   */
+  static ByteBuffer encode(Map<Picture, PictureSnapshot> pictures, List<Tag> tags,
+      Map<String, String> aliases) throws IOException {
+    CatalogFile.Output output = new CatalogFile.Output();
+    for (Map.Entry<Picture, PictureSnapshot> picture : pictures.entrySet()) {
+      PictureSnapshot saved = picture.getValue();
+      output.writeByte(PICTURE_WITH_DIRECTORY);
+      if (saved == null) {
+        output.writeString(null);
+      } else {
+        output.writeString(saved.getAbsolutePath());
+        output.writeString(saved.getDirectoryPath());
+      }
+      writePicture(picture.getKey(), output);
+    }
+    if (tags != null) {
+      output.writeByte(TAGS);
+      output.writeVarInt(tags.size());
+      for (Tag tag : tags) {
+        output.writeString(tag.getLabel());
+      }
+      output.writeVarInt(aliases.size());
+      for (Map.Entry<String, String> alias : aliases.entrySet()) {
+        output.writeString(alias.getKey());
+        output.writeString(alias.getValue());
+      }
+    }
+    output.writeByte(END);
+    return output.getBytes();
+  }
+
+  /**
+   * Appends the records of one save from encode() to the journal of a catalog. A journal of
+   * another generation was already folded into the catalog, so it is started over.
+   *
+   * @param fileName The name of the catalog
+   * @param generation The generation of the catalog
+   * @param records The records
+   * @return The size of the journal, in bytes.
+   * @throws IOException When the journal cannot be written.
+   */
+  static long append(String fileName, long generation, ByteBuffer records) throws IOException {
+    FileChannel channel = FileChannel.open(Paths.get(fileName + SUFFIX),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    long start = channel.size();
+    try (CatalogFile.Output output = new CatalogFile.Output(channel)) {
+      if (readGeneration(channel) != generation) {
+        start = 0;
+        channel.truncate(0);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(generation);
+      }
+      channel.position(start);
+      output.write(records.duplicate());
+    } catch (IOException e) {
+      // Drop what was written of the records, so the next records follow the last whole one
+      try (FileChannel cleanup = FileChannel.open(Paths.get(fileName + SUFFIX),
+          StandardOpenOption.WRITE)) {
+        cleanup.truncate(start);
+      } catch (IOException e1) {
+        // replaying stops at the broken record, which drops it then
+      }
+      throw e;
+    }
+    return Files.size(Paths.get(fileName + SUFFIX));
+  }
+
+  /**
+   * Writes the state of a picture.
+   *
+   * @param picture The picture
+   * @param output Where to write the picture
+   * @throws IOException When the journal cannot be written.
+   */
+  private static void writePicture(Picture picture, CatalogFile.Output output)
+      throws IOException {
+    output.writeString(picture.getDirectoryPath());
+    output.writeString(picture.getTaglessName());
+    output.writeString(picture.getFileExtension());
+
+    List<Tag> tags = picture.getTags();
+    output.writeVarInt(tags.size());
+    for (Tag tag : tags) {
+      output.writeString(tag.getLabel());
+    }
+
+    List<String> names = picture.hasHistoricalTaglessNames()
+        ? picture.getHistoricalTaglessNames() : new ArrayList<String>();
+    output.writeVarInt(names.size());
+    for (String name : names) {
+      output.writeString(name);
+    }
+
+    List<List<String>> states = picture.getHistoricalTagStates();
+    output.writeVarInt(states.size());
+    for (List<String> state : states) {
+      output.writeVarInt(state.size());
+      for (String label : state) {
+        output.writeString(label);
+      }
+    }
+  }
+
+  /**
+   * Reads a journal, unless it is older than a catalog. If the app stopped in the middle of a
+   * save, the records of that save are dropped from the journal.
+   *
+   * @param journalFileName The name of the journal
+   * @param minGeneration The generation of the catalog
+   * @return The journal, or null if there is no journal for the catalog.
+   * @throws IOException When the journal cannot be read.
+   */
+  static CatalogJournal read(String journalFileName, long minGeneration) throws IOException {
+    Path path = Paths.get(journalFileName);
+    ByteBuffer buffer;
+    long generation;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      generation = readGeneration(channel);
+      if (generation < minGeneration) {
+        return null;
+      }
+      buffer = ByteBuffer.allocate((int) channel.size());
+      while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+        // keep reading until the buffer is full or the file ends
+      }
+      buffer.flip();
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+
+    CatalogFile.Input input = new CatalogFile.Input(buffer);
+    input.readInt();
+    input.readInt();
+    input.readLong(); // the header was read above
+    List<Save> saves = new ArrayList<>();
+    HashMap<String, Tag> tags = new HashMap<>();
+    Save save = new Save();
+    int end = input.position();
+    try {
+      while (!input.isAtEnd()) {
+        if (readRecord(input, save, tags)) {
+          saves.add(save);
+          save = new Save();
+          end = input.position();
+        }
+      }
+      if (end < input.position()) {
+        throw new BufferUnderflowException(); // the last save has no END record
+      }
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+        channel.truncate(end);
+      }
+    }
+    return new CatalogJournal(generation, saves);
+  }
+
+  /**
+   * Reads a record into the records of a save.
+   *
+   * @param input Where to read the record from
+   * @param save The records of the save read so far
+   * @param tags The tags read so far, by label, so the pictures with the same tag share it
+   * @return True if the record ends the save; else false.
+   */
+  private static boolean readRecord(CatalogFile.Input input, Save save,
+      HashMap<String, Tag> tags) {
+    int type = input.readByte();
+    if (type == PICTURE || type == PICTURE_WITH_DIRECTORY) {
+      String savedPath = input.readString();
+      String savedDirectory = null;
+      if (type == PICTURE_WITH_DIRECTORY && savedPath != null) {
+        savedDirectory = input.readString();
+      } else if (savedPath != null) {
+        savedDirectory = new File(savedPath).getParent();
+      }
+      String directory = input.readString();
+      String taglessName = input.readString();
+      String fileExt = input.readString();
+
+      int tagCount = input.readVarInt();
+      List<Tag> pictureTags = new ArrayList<>(tagCount);
+      for (int i = 0; i < tagCount; i++) {
+        pictureTags.add(getTag(tags, input.readString()));
+      }
+
+      int nameCount = input.readVarInt();
+      List<String> names = nameCount == 0 ? null : new ArrayList<>(nameCount);
+      for (int i = 0; i < nameCount; i++) {
+        names.add(input.readString());
+      }
+
+      int stateCount = input.readVarInt();
+      List<List<String>> states = new ArrayList<>(stateCount);
+      for (int i = 0; i < stateCount; i++) {
+        int stateSize = input.readVarInt();
+        List<String> state = new ArrayList<>(stateSize);
+        for (int j = 0; j < stateSize; j++) {
+          state.add(input.readString());
+        }
+        states.add(state);
+      }
+
+      save.savedDirectories.add(savedDirectory);
+      save.savedPaths.add(savedPath);
+      save.pictures.add(new Picture(directory, taglessName, fileExt, pictureTags, names, states));
+    } else if (type == TAGS) {
+      int tagCount = input.readVarInt();
+      List<Tag> availableTags = new ArrayList<>(tagCount);
+      for (int i = 0; i < tagCount; i++) {
+        availableTags.add(getTag(tags, input.readString()));
+      }
+
+      int aliasCount = input.readVarInt();
+      HashMap<String, String> aliases = new HashMap<>();
+      for (int i = 0; i < aliasCount; i++) {
+        String alias = input.readString();
+        aliases.put(alias, input.readString());
+      }
+
+      save.availableTags = availableTags;
+      save.aliases = aliases;
+    } else if (type != END) {
+      throw new IndexOutOfBoundsException("Unknown record type " + type);
+    }
+    return type == END;
+  }
+
+  /**
+   * Folds the old journal of a catalog into the catalog, and deletes the old journal. If it fails,
+   * the old journal is kept, so it is still replayed when the catalog is loaded.
+   *
+   * @param fileName The name of the catalog
+   * @param generation The generation of the new catalog
+   */
+  static void compact(String fileName, long generation) {
+    try {
+      CatalogFile catalog = CatalogFile.open(fileName);
+      List<CatalogJournal> journals = new ArrayList<>();
+      CatalogJournal oldJournal = read(fileName + OLD_SUFFIX, catalog.getGeneration());
+      if (oldJournal != null) {
+        journals.add(oldJournal);
+      }
+      AppSettings settings = new AppSettings(catalog, journals);
+      settings.loadAll(); // which closes the catalog, so the file can be replaced
+      CatalogFile.write(settings, fileName, generation);
+      Files.deleteIfExists(Paths.get(fileName + OLD_SUFFIX));
+    } catch (IOException e) {
+      // The next compaction folds the old journal
+    }
+  }
+
+  /**
+   * Reads the generation in the header of a journal.
+   *
+   * @param channel The journal
+   * @return The generation of the journal, or -1 if it has no valid header.
+   * @throws IOException When the journal cannot be read.
+   */
+  private static long readGeneration(FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    while (header.hasRemaining() && channel.read(header, header.position()) != -1) {
+      // keep reading until the header is full or the file ends
+    }
+    if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+      return -1;
+    }
+    return header.getLong(8);
+  }
+
+  /**
+   * Returns the tag with a label, creating it the first time.
+   *
+   * @param tags The tags created so far, by label
+   * @param label The label
+   * @return The tag with the label.
+   */
+  private static Tag getTag(HashMap<String, Tag> tags, String label) {
+    Tag tag = tags.get(label);
+    if (tag == null) {
+      tag = new Tag(label);
+      tags.put(label, tag);
+    }
+    return tag;
+  }
+
+  /**
+   * The records of one save read from a journal.
+   */
+  static class Save {
+
+    /**
+     * The directory each picture was saved in, or null if it was never saved.
+     */
+    private final List<String> savedDirectories = new ArrayList<>();
+
+    /**
+     * The path each picture was saved under, or null if it was never saved.
+     */
+    private final List<String> savedPaths = new ArrayList<>();
+
+    /**
+     * The pictures, in the same order.
+     */
+    private final List<Picture> pictures = new ArrayList<>();
+
+    /**
+     * The available tags, or null if they did not change.
+     */
+    private List<Tag> availableTags;
+
+    /**
+     * The label of the tag each alias stands for, by the label of the alias.
+     */
+    private HashMap<String, String> aliases;
+
+    /**
+     * Returns the directory each picture was saved in.
+     *
+     * @return The directories, with null for the pictures that were never saved.
+     */
+    List<String> getSavedDirectories() {
+      return this.savedDirectories;
+    }
+
+    /**
+     * Returns the path each picture was saved under.
+     *
+     * @return The paths, with null for the pictures that were never saved.
+     */
+    List<String> getSavedPaths() {
+      return this.savedPaths;
+    }
+
+    /**
+     * Returns the pictures that changed.
+     *
+     * @return The pictures, in the same order as their saved paths.
+     */
+    List<Picture> getPictures() {
+      return this.pictures;
+    }
+
+    /**
+     * Returns the available tags.
+     *
+     * @return The available tags, or null if they did not change.
+     */
+    List<Tag> getAvailableTags() {
+      return this.availableTags;
+    }
+
+    /**
+     * Returns the tag aliases.
+     *
+     * @return The label of the tag each alias stands for, by the label of the alias, or null if
+     * the tags did not change.
+     */
+    HashMap<String, String> getAliases() {
+      return this.aliases;
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package backend.models;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Delivers the changes of pictures to their listeners. A change is normally delivered right away,
+ * on the thread that made it. Between beginBatch() and endBatch() the changes made by a thread are
+ * held back instead, and each picture that changed is then delivered once to each of its listeners,
+ * in one call to PictureListener.picturesChanged().
+ */
+public class EventBus {
+
+  /**
+   * The bus used by all pictures and tags.
+   */
+  private static final EventBus defaultBus = new EventBus();
+
+  /**
+   * The batch started on each thread, if any.
+   */
+  private final ThreadLocal<Batch> batches = new ThreadLocal<>();
+
+  /**
+   * Returns the bus used by all pictures and tags.
+   *
+   * @return The bus used by all pictures and tags.
+   */
+  public static EventBus getDefault() {
+    return defaultBus;
+  }
+
+  /**
+   * Starts a batch on the current thread. Until the batch ends, the changes of pictures made on
+   * this thread are collected instead of being delivered one by one. Batches can be nested, only
+   * the outermost endBatch() delivers the changes.
+   */
+  public void beginBatch() {
+    Batch batch = this.batches.get();
+    if (batch == null) {
+      batch = new Batch();
+      this.batches.set(batch);
+    }
+    batch.depth++;
+  }
+
+  /**
+   * Ends a batch started with beginBatch() on the current thread. If this was the outermost batch,
+   * each picture that changed during the batch is delivered once to each of its listeners, with a
+   * snapshot of the picture from before its first change in the batch.
+   *
+   * @throws IllegalStateException Thrown when no batch has been started on this thread.
+   */
+  public void endBatch() {
+    Batch batch = this.batches.get();
+    if (batch == null) {
+      throw new IllegalStateException("There is no batch to end");
+    }
+
+    batch.depth--;
+    if (batch.depth > 0) {
+      return;
+    }
+    this.batches.remove(); // changes made while delivering are delivered right away
+
+    // Group the changes by listener
+    Map<PictureListener, Map<Picture, PictureSnapshot>> changesByListener =
+        new IdentityHashMap<>();
+    List<PictureListener> listeners = new ArrayList<>();
+    for (Picture picture : batch.pictures) {
+      PictureSnapshot oldState = batch.changes.get(picture);
+      for (PictureListener listener : picture.getListeners()) {
+        Map<Picture, PictureSnapshot> changes = changesByListener.get(listener);
+        if (changes == null) {
+          changes = new IdentityHashMap<>();
+          changesByListener.put(listener, changes);
+          listeners.add(listener);
+        }
+        changes.put(picture, oldState);
+      }
+    }
+
+    for (PictureListener listener : listeners) {
+      listener.picturesChanged(changesByListener.get(listener));
+    }
+  }
+
+  /**
+   * Delivers the change of a picture to its listeners, or holds it back until the batch of the
+   * current thread ends.
+   *
+   * @param picture The picture that changed
+   * @param oldState A snapshot of the picture from before the change
+   */
+  void publish(Picture picture, PictureSnapshot oldState) {
+    Batch batch = this.batches.get();
+    if (batch != null) {
+      if (!batch.changes.containsKey(picture)) {
+        batch.changes.put(picture, oldState);
+        batch.pictures.add(picture);
+      }
+      return;
+    }
+
+    for (PictureListener listener : picture.getListeners()) {
+      listener.pictureChanged(picture, oldState);
+    }
+  }
+
+  /**
+   * The changes held back by the batch of one thread.
+   */
+  private static class Batch {
+
+    /**
+     * The number of batches started on the thread that have not ended yet.
+     */
+    private int depth;
+
+    /**
+     * A snapshot of each picture that changed, from before its first change in the batch.
+     */
+    private final IdentityHashMap<Picture, PictureSnapshot> changes = new IdentityHashMap<>();
+
+    /**
+     * The pictures that changed, in the order they first changed.
+     */
+    private final List<Picture> pictures = new ArrayList<>();
+  }
+}
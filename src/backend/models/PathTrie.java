@@ -0,0 +1,152 @@
+package backend.models;
+
+import java.io.File;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+
+/**
+ * A trie of directory paths, split at the file separator. It interns the directory path of the
+ * pictures, so all the pictures in one directory share one String instead of each holding its own
+ * copy, and the paths of nested directories are found by walking down from their parents.
+ *
+ * The trie only holds its paths weakly. Once no picture holds the path of a directory anymore, such
+ * as after another directory is opened, the path is collected and its node is removed from the
+ * trie, along with the parents that no longer lead to any path.
+ */
+class PathTrie {
+
+  /**
+   * The node of the empty path, which every path starts from.
+   */
+  private final Node root = new Node(null, "");
+
+  /**
+   * The references to the paths that were collected, whose nodes are still to be removed.
+   */
+  private final ReferenceQueue<String> collected = new ReferenceQueue<>();
+
+  /**
+   * Returns the shared instance of a path, adding the path to this trie if it is not in it yet.
+   *
+   * @param path A directory path, or null
+   * @return A string equal to the path, which is the same instance for every equal path held
+   */
+  synchronized String intern(String path) {
+    if (path == null) {
+      return null;
+    }
+    this.removeCollected();
+
+    Node node = this.root;
+    int start = 0;
+    while (start <= path.length()) {
+      int end = path.indexOf(File.separatorChar, start);
+      if (end == -1) {
+        end = path.length();
+      }
+
+      String name = path.substring(start, end);
+      if (node.children == null) {
+        node.children = new HashMap<>(2);
+      }
+      Node child = node.children.get(name);
+      if (child == null) {
+        child = new Node(node, name);
+        node.children.put(name, child);
+      }
+      node = child;
+      start = end + 1;
+    }
+
+    String interned = node.path == null ? null : node.path.get();
+    if (interned == null) {
+      interned = path;
+      node.path = new PathReference(path, node, this.collected);
+    }
+    return interned;
+  }
+
+  /**
+   * Removes the nodes whose paths were collected, and the parents left without any path under
+   * them.
+   */
+  private void removeCollected() {
+    Reference<? extends String> reference;
+    while ((reference = this.collected.poll()) != null) {
+      Node node = ((PathReference) reference).node;
+      if (node.path != reference) {
+        continue; // the path was interned again since
+      }
+
+      node.path = null;
+      while (node.parent != null && node.path == null
+          && (node.children == null || node.children.isEmpty())) {
+        node.parent.children.remove(node.name);
+        node = node.parent;
+      }
+    }
+  }
+
+  /**
+   * A directory in the trie.
+   */
+  private static class Node {
+
+    /**
+     * The parent directory, or null for the root.
+     */
+    private final Node parent;
+
+    /**
+     * The name of this directory in its parent.
+     */
+    private final String name;
+
+    /**
+     * The path of this directory, or null if it has not been interned or was collected.
+     */
+    private PathReference path;
+
+    /**
+     * The subdirectories of this directory, by name, or null if there are none yet.
+     */
+    private HashMap<String, Node> children;
+
+    /**
+     * Creates the node of a directory.
+     *
+     * @param parent The parent directory, or null for the root
+     * @param name The name of the directory in its parent
+     */
+    Node(Node parent, String name) {
+      this.parent = parent;
+      this.name = name;
+    }
+  }
+
+  /**
+   * A weak reference to the path of a directory, which knows the node to remove once the path is
+   * collected.
+   */
+  private static class PathReference extends WeakReference<String> {
+
+    /**
+     * The node of the directory.
+     */
+    private final Node node;
+
+    /**
+     * Creates a reference to the path of a directory.
+     *
+     * @param path The path
+     * @param node The node of the directory
+     * @param queue The queue the reference is put in once the path is collected
+     */
+    PathReference(String path, Node node, ReferenceQueue<String> queue) {
+      super(path, queue);
+      this.node = node;
+    }
+  }
+}
@@ -1,20 +1,43 @@
 package backend.models;
 
+import backend.files.FileNameTokenizer;
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Observable;
-import java.util.Observer;
 
 /**
  * A class used to represent a picture. It is being represented by a list of tags, its directory
  * path to the picture in the OS, its name without the tags, and its file extension.
  *
- * This class can be observed for any state changes. Any state changes to this class will notify all
- * the observers, returning the old copy of the instance to the observers
+ * This class can be listened to for any state changes. Any state changes to this class will notify
+ * all the listeners through the EventBus, sending a snapshot of the old state of the instance to
+ * the listeners
  */
-public class Picture extends Observable implements Serializable, Observer, Cloneable {
+public class Picture implements Serializable, TagListener, Cloneable {
+
+  /**
+   * The version of the serialized form, which is the one pictures were saved with before there
+   * were catalogs, so those app settings can still be read.
+   */
+  private static final long serialVersionUID = 1446711778785575926L;
+
+  /**
+   * The fields of the serialized form. The historical tags are saved as a list of tag lists, the
+   * way they were before they were kept in a TagHistory.
+   */
+  private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("directoryPath", String.class),
+      new ObjectStreamField("taglessName", String.class),
+      new ObjectStreamField("fileExt", String.class),
+      new ObjectStreamField("tags", ArrayList.class),
+      new ObjectStreamField("historicalTags", ArrayList.class),
+      new ObjectStreamField("historicalTagLessNames", ArrayList.class)};
 
   /**
    * The directory path to the picture.
@@ -37,16 +60,60 @@ public class Picture extends Observable implements Serializable, Observer, Clone
   private ArrayList<Tag> tags;
 
   /**
-   * A list of all the tags that the Picture has had or currently holding
+   * All the tags that the Picture has had or currently holding, or null until the tags first
+   * change.
    */
-  private ArrayList<ArrayList<Tag>> historicalTags;
+  private TagHistory historicalTags;
 
 
   /**
-   * A List of all historical tag-less names
+   * A List of all historical tag-less names, or null while the picture still has its first name.
    */
   private ArrayList<String> historicalTagLessNames;
 
+  /**
+   * The number of edits started with beginEdit() that have not been committed yet.
+   */
+  private transient int editDepth;
+
+  /**
+   * A snapshot of this picture from when the outermost edit was started.
+   */
+  private transient PictureSnapshot stateBeforeEdit;
+
+  /**
+   * True if this picture changed since the outermost edit was started.
+   */
+  private transient boolean changedDuringEdit;
+
+  /**
+   * The full file name of this picture, or null if it has not been worked out since this picture
+   * last changed.
+   */
+  private transient String fullFileName;
+
+  /**
+   * The absolute path of this picture, or null if it has not been worked out since this picture
+   * last changed. It is also what equals() and hashCode() compare.
+   */
+  private transient String absolutePath;
+
+  /**
+   * The directory paths of the pictures, so pictures in the same directory share one path.
+   */
+  private static final PathTrie directories = new PathTrie();
+
+  /**
+   * The listeners of a picture without listeners.
+   */
+  private static final PictureListener[] NO_LISTENERS = new PictureListener[0];
+
+  /**
+   * The listeners of this picture. The array is replaced instead of changed, so it can be read
+   * without locking.
+   */
+  private transient volatile PictureListener[] listeners = NO_LISTENERS;
+
   /**
    * Creates an instance of Picture given the absolute path of the picture. It will parse the
    * absolute path of this picture to get its properties, including the list of tags, directory
@@ -55,51 +122,76 @@ public class Picture extends Observable implements Serializable, Observer, Clone
    * @param absolutePath The absolute path to the Picture.
    */
   public Picture(String absolutePath) {
-    this.tags = new ArrayList<Tag>();
-    this.historicalTags = new ArrayList<ArrayList<Tag>>();
-    this.historicalTagLessNames = new ArrayList<String>();
-
     File file = new File(absolutePath);
 
-    this.directoryPath = file.getParent();
-    String fullFileName = file.getName();
-    this.fileExt = "." + fullFileName.split("\\.")[1].trim();
-    String nameWithoutFileExtension = fullFileName.split("\\.")[0].trim();
+    this.directoryPath = directories.intern(file.getParent());
 
     // Parsing the tagless name and its tags.
-    if (!file.getName().contains("@")) {
-      this.taglessName = nameWithoutFileExtension.trim();
-    } else {
-      String[] nameParts = nameWithoutFileExtension.split("@");
-      this.taglessName = nameParts[0].trim();
-      for (int i = 1; i < nameParts.length; i++) {
-        Tag newTag = new Tag(nameParts[i].trim());
-        if (!tags.contains(newTag)) {
-          this.tags.add(newTag);
-          newTag.addObserver(this);
-        }
+    FileNameTokenizer tokens = FileNameTokenizer.tokenize(file.getName());
+    this.fileExt = tokens.getExtension();
+    this.taglessName = tokens.getTaglessName();
+    this.tags = new ArrayList<Tag>(tokens.getTagCount());
+    for (int i = 0; i < tokens.getTagCount(); i++) {
+      String label = tokens.getTag(i);
+      if (label.isEmpty()) {
+        continue; // an '@' with nothing after it
+      }
+      Tag newTag = new Tag(label);
+      if (!tags.contains(newTag)) {
+        this.tags.add(newTag);
+        newTag.addListener(this);
       }
     }
-    this.historicalTagLessNames.add(this.taglessName);
   }
 
   /**
-   * Set the directory path of this picture It will notify all the observers that it has changed. It
-   * will send a copy of its old Picture instance to the observers.
+   * Creates a picture from the parts saved in a catalog, see CatalogFile. The historical states are
+   * restored as they were saved, without notifying anyone.
+   *
+   * @param directoryPath The directory path to the picture
+   * @param taglessName The file name, without its tags and file extension
+   * @param fileExt The file extension, with the "."
+   * @param tags The tags of the picture
+   * @param historicalTaglessNames All the tag-less names the picture has had, or null if it only
+   * had its current one
+   * @param historicalTagStates The labels of each tag state the picture has had, in order
+   */
+  Picture(String directoryPath, String taglessName, String fileExt, List<Tag> tags,
+      List<String> historicalTaglessNames, List<List<String>> historicalTagStates) {
+    this.directoryPath = directories.intern(directoryPath);
+    this.taglessName = taglessName;
+    this.fileExt = fileExt;
+    this.tags = new ArrayList<Tag>(tags);
+    for (Tag tag : this.tags) {
+      tag.addListener(this);
+    }
+    if (historicalTaglessNames != null) {
+      this.historicalTagLessNames = new ArrayList<String>(historicalTaglessNames);
+    }
+    if (!historicalTagStates.isEmpty()) {
+      this.historicalTags = new TagHistory();
+      for (List<String> labels : historicalTagStates) {
+        this.historicalTags.record(labels);
+      }
+    }
+  }
+
+  /**
+   * Set the directory path of this picture It will notify all the listeners that it has changed. It
+   * will send a snapshot of its old state to the listeners.
    *
    * @param directoryPath The new directory path to this picture.
    */
   public void setDirectoryPath(String directoryPath) {
-    Picture oldPic = this.clone();
-    this.directoryPath = directoryPath;
-    super.setChanged();
-    super.notifyObservers(oldPic);
+    PictureSnapshot oldPic = this.copyBeforeChange();
+    this.directoryPath = directories.intern(directoryPath);
+    this.publishChange(oldPic);
   }
 
   /**
-   * Set the tagless name of this picture. It will notify all the observers that it has changed. If
+   * Set the tagless name of this picture. It will notify all the listeners that it has changed. If
    * the new tagless name is equal to the current tagless name, it will not do anything. It will
-   * send a copy of its old Picture instance to the observers.
+   * send a snapshot of its old state to the listeners.
    *
    * @param taglessName The new tagless name of this picture.
    */
@@ -108,117 +200,287 @@ public class Picture extends Observable implements Serializable, Observer, Clone
       return;
     }
 
-    StringBuilder builder = new StringBuilder();
-    for (Tag tag : this.tags) {
-      builder.append(" @").append(tag.getLabel());
-    }
-
     // Make sure the name does not exceed maximum char length.
-    String fullFileName = builder + taglessName + this.fileExt;
-    if (taglessName.length() > 0 && fullFileName.length() <= 255) {
-      Picture oldPic = this.clone();
+    int lengthOfNewFileName =
+        this.getFullFileName().length() - this.taglessName.length() + taglessName.length();
+    if (taglessName.length() > 0 && lengthOfNewFileName <= 255) {
+      PictureSnapshot oldPic = this.copyBeforeChange();
+      if (this.historicalTagLessNames == null) {
+        this.historicalTagLessNames = new ArrayList<String>(2);
+        this.historicalTagLessNames.add(this.taglessName);
+      }
       this.taglessName = taglessName;
 
       if (!this.historicalTagLessNames.contains(taglessName)) {
         this.historicalTagLessNames.add(this.taglessName);
       }
 
-      super.setChanged();
-      super.notifyObservers(oldPic);
+      this.publishChange(oldPic);
     }
   }
 
   /**
-   * Adds a new tag to this instance and this instance will observe that tag. If the tag already
+   * Adds a new tag to this instance and this instance will listen to that tag. If the tag already
    * exist in this instance, it will not add it. It checks if the tag exists in this instance by the
-   * tag's .equals(). It will notify all the observers that a tag has been added to this picture.
-   * All observers will get a copy of the old picture's state before the new tag has been added.
+   * tag's .equals(). It will notify all the listeners that a tag has been added to this picture.
+   * All listeners will get a snapshot of the picture's state before the new tag has been added.
    *
    * @param tag The tag to add to this instance
    */
   public void addTag(Tag tag) {
     int lengthOfNewFileName = this.getFullFileName().length() + tag.getLabel().length() + 1;
     if (lengthOfNewFileName < 255 && !tags.contains(tag)) {
-      Picture oldPic = this.clone();
+      PictureSnapshot oldPic = this.copyBeforeChange();
       this.tags.add(tag);
 
-      if (!this.getHistoricalTags().contains(getTagsDeepCopy())
-          && !this.getTagsDeepCopy().isEmpty()) {
-        this.historicalTags.add(getTagsDeepCopy());
-      }
+      this.recordHistoricalTags();
 
-      tag.addObserver(this);
+      tag.addListener(this);
 
-      super.setChanged();
-      super.notifyObservers(oldPic);
+      this.publishChange(oldPic);
     }
   }
 
   /**
-   * adds a list of tags to this picture , with the same reasoning behind addTag()
+   * adds a list of tags to this picture , with the same reasoning behind addTag(). All of the tags
+   * are added in one edit, so the listeners are notified once.
    */
   public void addMultipleTags(List<Tag> tags) {
+    this.beginEdit();
     for (Tag tag : tags) {
       int lengthOfNewFileName = this.getFullFileName().length() + tag.getLabel().length() + 1;
       if (lengthOfNewFileName < 255 && !this.tags.contains(tag)) {
-        Picture oldPic = this.clone();
         this.tags.add(tag);
 
-        tag.addObserver(this);
+        tag.addListener(this);
 
-        super.setChanged();
-        super.notifyObservers(oldPic);
+        this.publishChange(null);
       }
     }
-    if (!this.getHistoricalTags().contains(getTagsDeepCopy())
-        && !this.getTagsDeepCopy().isEmpty()) {
-      this.historicalTags.add(getTagsDeepCopy());
-    }
+    this.recordHistoricalTags();
+    this.commitEdit();
   }
 
   /**
-   * Deletes a tag from this picture and will stop observing that tag. If the tag does not exist in
-   * this instance, it will do nothing. It will notifies all observers that a Tag has been deleted
-   * from this picture. It will send a copy of the picture before the tag has been deleted to the
-   * observers.
+   * Deletes a tag from this picture and will stop listening to that tag. If the tag does not exist
+   * in this instance, it will do nothing. It will notify all listeners that a Tag has been deleted
+   * from this picture. It will send a snapshot of the picture before the tag has been deleted to
+   * the listeners.
    *
    * @param tag The tag to delete
    */
   public void deleteTag(Tag tag) {
     if (tags.contains(tag)) {
-      Picture oldPic = this.clone();
+      PictureSnapshot oldPic = this.copyBeforeChange();
       tags.remove(tag);
-      tag.deleteObserver(this);
+      tag.removeListener(this);
 
-      if (!this.getHistoricalTags().contains(getTagsDeepCopy()) && !this.getTags().isEmpty()) {
-        this.historicalTags.add(getTagsDeepCopy());
-      }
+      this.recordHistoricalTags();
 
-      super.setChanged();
-      super.notifyObservers(oldPic);
+      this.publishChange(oldPic);
     }
   }
 
   /**
-   * delete the given list of tags from this picture, if they exist on this picture
+   * delete the given list of tags from this picture, if they exist on this picture. All of the tags
+   * are deleted in one edit, so the listeners are notified once.
    *
    * @param tags tags to delete
    */
   public void deleteMultipleTags(List<Tag> tags) {
+    this.beginEdit();
     for (Tag tag : tags) {
       if (this.tags.contains(tag)) {
-        Picture oldPic = this.clone();
         this.tags.remove(tag);
-        tag.deleteObserver(this);
+        tag.removeListener(this);
 
-        super.setChanged();
-        super.notifyObservers(oldPic);
+        this.publishChange(null);
       }
     }
-    if (!this.getHistoricalTags().contains(getTagsDeepCopy()) && !this.getTags().isEmpty()) {
-      this.historicalTags.add(getTagsDeepCopy());
+    this.recordHistoricalTags();
+    this.commitEdit();
+  }
+
+  /**
+   * Adds the current tags of this picture to the historical tags, unless it has no tags or the same
+   * tags are already there.
+   */
+  private void recordHistoricalTags() {
+    if (this.tags.isEmpty()) {
+      return;
     }
+    if (this.historicalTags == null) {
+      this.historicalTags = new TagHistory();
+    }
+    List<String> labels = new ArrayList<String>(this.tags.size());
+    for (Tag tag : this.tags) {
+      labels.add(tag.getLabel());
+    }
+    this.historicalTags.record(labels);
+  }
 
+  /**
+   * Replaces one of the tags of this picture with an equal tag, keeping its place. Since the label
+   * stays the same, so does the file name, and the listeners are not notified.
+   *
+   * @param tag A tag of this picture
+   * @param equalTag A tag with the same label to use instead
+   */
+  void replaceTag(Tag tag, Tag equalTag) {
+    int index = this.tags.indexOf(tag);
+    if (index != -1 && tag.equals(equalTag)) {
+      this.tags.get(index).removeListener(this);
+      this.tags.set(index, equalTag);
+      equalTag.addListener(this);
+    }
+  }
+
+  /**
+   * Replaces all of the tags of this picture, keeping their order. Unlike the other tag changes, it
+   * does not record a historical tag state, since it is used to put back the tags of a picture when
+   * its file could not be renamed.
+   *
+   * @param tags The new tags of this picture
+   */
+  void setTags(List<Tag> tags) {
+    PictureSnapshot oldPic = this.copyBeforeChange();
+    for (Tag tag : this.tags) {
+      tag.removeListener(this);
+    }
+    this.tags = new ArrayList<Tag>(tags);
+    for (Tag tag : this.tags) {
+      tag.addListener(this);
+    }
+    this.publishChange(oldPic);
+  }
+
+  /**
+   * Starts an edit of this picture. Until the edit is committed, changes to the name, directory
+   * and tags of this picture are collected instead of being sent to the listeners one by one. The
+   * listeners are then notified once, with a snapshot of this picture from before the edit, so a
+   * PictureManager renames the file once. Edits can be nested, only the outermost commitEdit()
+   * notifies the listeners.
+   */
+  public void beginEdit() {
+    if (this.editDepth == 0) {
+      this.stateBeforeEdit = this.getSnapshot();
+      this.changedDuringEdit = false;
+    }
+    this.editDepth++;
+  }
+
+  /**
+   * Commits an edit started with beginEdit(). If this was the outermost edit and this picture
+   * changed during the edit, all the listeners are notified once with a snapshot of this picture
+   * from before the edit.
+   *
+   * @throws IllegalStateException Thrown when no edit has been started.
+   */
+  public void commitEdit() {
+    if (this.editDepth == 0) {
+      throw new IllegalStateException("There is no edit to commit");
+    }
+
+    this.editDepth--;
+    if (this.editDepth == 0) {
+      PictureSnapshot oldPic = this.stateBeforeEdit;
+      this.stateBeforeEdit = null;
+      if (this.changedDuringEdit) {
+        EventBus.getDefault().publish(this, oldPic);
+      }
+    }
+  }
+
+  /**
+   * Returns a snapshot of this picture to send to the listeners once it has changed. During an edit
+   * the snapshot from when the edit started is sent instead, so no snapshot is taken.
+   *
+   * @return A snapshot of this picture, or null during an edit.
+   */
+  private PictureSnapshot copyBeforeChange() {
+    return this.editDepth > 0 ? null : this.getSnapshot();
+  }
+
+  /**
+   * Notifies all listeners that this picture has changed, or remembers the change until the edit
+   * is committed.
+   *
+   * @param oldPic A snapshot of this picture from before the change, ignored during an edit.
+   */
+  private void publishChange(PictureSnapshot oldPic) {
+    this.fullFileName = null;
+    this.absolutePath = null;
+    if (this.editDepth > 0) {
+      this.changedDuringEdit = true;
+    } else {
+      EventBus.getDefault().publish(this, oldPic);
+    }
+  }
+
+  /**
+   * Adds a listener to this picture. Adding a listener that was already added does nothing.
+   *
+   * @param listener A listener
+   */
+  public synchronized void addListener(PictureListener listener) {
+    PictureListener[] curListeners = this.getListeners();
+    for (PictureListener curListener : curListeners) {
+      if (curListener == listener) {
+        return;
+      }
+    }
+    PictureListener[] listeners = Arrays.copyOf(curListeners, curListeners.length + 1);
+    listeners[listeners.length - 1] = listener;
+    this.listeners = listeners;
+  }
+
+  /**
+   * Removes a listener from this picture.
+   *
+   * @param listener A listener
+   */
+  public synchronized void removeListener(PictureListener listener) {
+    List<PictureListener> listeners = new ArrayList<PictureListener>();
+    for (PictureListener curListener : this.getListeners()) {
+      if (curListener != listener) {
+        listeners.add(curListener);
+      }
+    }
+    this.listeners = listeners.toArray(NO_LISTENERS);
+  }
+
+  /**
+   * Returns the number of listeners of this picture.
+   *
+   * @return The number of listeners of this picture.
+   */
+  public int countListeners() {
+    return this.getListeners().length;
+  }
+
+  /**
+   * Returns the listeners of this picture.
+   *
+   * @return The listeners of this picture, which must not be changed.
+   */
+  PictureListener[] getListeners() {
+    PictureListener[] listeners = this.listeners;
+    return listeners == null ? NO_LISTENERS : listeners; // null after deserialization
+  }
+
+  /**
+   * Returns a snapshot of the current state of this picture, which does not change along with this
+   * picture.
+   *
+   * @return A snapshot of this picture.
+   */
+  public PictureSnapshot getSnapshot() {
+    String[] tagLabels = new String[this.tags.size()];
+    for (int i = 0; i < tagLabels.length; i++) {
+      tagLabels[i] = this.tags.get(i).getLabel();
+    }
+    return new PictureSnapshot(this.directoryPath, this.taglessName, this.fileExt, tagLabels,
+        this.fullFileName, this.absolutePath);
   }
 
   /**
@@ -249,8 +511,10 @@ public class Picture extends Observable implements Serializable, Observer, Clone
    * @return The absolute path to the picture
    */
   public String getAbsolutePath() {
-    File newFile = new File(directoryPath, getFullFileName());
-    return newFile.getAbsolutePath();
+    if (this.absolutePath == null) {
+      this.absolutePath = new File(directoryPath, getFullFileName()).getAbsolutePath();
+    }
+    return this.absolutePath;
   }
 
   /**
@@ -270,12 +534,15 @@ public class Picture extends Observable implements Serializable, Observer, Clone
    * @return The full file name of this picture.
    */
   public String getFullFileName() {
-    StringBuilder fullFileName = new StringBuilder(taglessName);
-    for (Tag tag : tags) {
-      fullFileName.append(" @").append(tag.getLabel());
+    if (this.fullFileName == null) {
+      StringBuilder fullFileName = new StringBuilder(taglessName);
+      for (Tag tag : tags) {
+        fullFileName.append(" @").append(tag.getLabel());
+      }
+      fullFileName.append(fileExt);
+      this.fullFileName = fullFileName.toString();
     }
-    fullFileName.append(fileExt);
-    return fullFileName.toString();
+    return this.fullFileName;
   }
 
   /**
@@ -303,20 +570,52 @@ public class Picture extends Observable implements Serializable, Observer, Clone
    * @return A copy of the list of tags in this picture.
    */
   public ArrayList<Tag> getTagsDeepCopy() {
-    ArrayList<Tag> tags = new ArrayList<Tag>();
-    for (Tag tag : this.getTags()) {
+    ArrayList<Tag> tags = new ArrayList<Tag>(this.tags.size());
+    for (Tag tag : this.tags) {
       tags.add(new Tag(tag.getLabel()));
     }
     return tags;
   }
 
   /**
-   * Get a copy of a list of all the historical tags
+   * Get a copy of a list of all the historical tags. The tag states are rebuilt from the changes
+   * recorded, with new Tag instances.
    *
    * @return A copy of a list of all historical tags
    */
   public ArrayList<ArrayList<Tag>> getHistoricalTags() {
-    return new ArrayList<ArrayList<Tag>>(this.historicalTags);
+    ArrayList<ArrayList<Tag>> historicalTags = new ArrayList<ArrayList<Tag>>();
+    if (this.historicalTags != null) {
+      for (List<String> labels : this.historicalTags.getStates()) {
+        ArrayList<Tag> tags = new ArrayList<Tag>(labels.size());
+        for (String label : labels) {
+          tags.add(new Tag(label));
+        }
+        historicalTags.add(tags);
+      }
+    }
+    return historicalTags;
+  }
+
+  /**
+   * Returns the labels of each tag state this picture has had, without creating any Tag.
+   *
+   * @return A new list of the labels of each historical tag state, in order.
+   */
+  List<List<String>> getHistoricalTagStates() {
+    if (this.historicalTags == null) {
+      return new ArrayList<List<String>>();
+    }
+    return this.historicalTags.getStates();
+  }
+
+  /**
+   * Determines whether this picture has had another tag-less name than its current one.
+   *
+   * @return True if this picture was renamed; else false.
+   */
+  boolean hasHistoricalTaglessNames() {
+    return this.historicalTagLessNames != null;
   }
 
   /**
@@ -325,6 +624,11 @@ public class Picture extends Observable implements Serializable, Observer, Clone
    * @return A copy of a list of all historical names.
    */
   public ArrayList<String> getHistoricalTaglessNames() {
+    if (this.historicalTagLessNames == null) {
+      ArrayList<String> names = new ArrayList<String>();
+      names.add(this.taglessName);
+      return names;
+    }
     return new ArrayList<String>(this.historicalTagLessNames);
   }
 
@@ -366,23 +670,99 @@ public class Picture extends Observable implements Serializable, Observer, Clone
   }
 
   /**
-   * This method handles when there is a tag change in this instance. It will also notify the
-   * observers of this instance the change, providing the observers a copy of the state of this
-   * instance before the tag change.
+   * Returns the hash code of this picture, based on its absolute path like equals(). Note that the
+   * hash code changes along with the name, directory and tags of this picture.
+   *
+   * @return The hash code of this picture.
    */
   @Override
-  public void update(Observable curObserved, Object change) {
-    if (curObserved instanceof Tag && change instanceof Tag) {
-      Tag oldTag = (Tag) change;
-      Tag newTag = (Tag) curObserved;
+  public int hashCode() {
+    return this.getAbsolutePath().hashCode();
+  }
+
+  /**
+   * Reads a picture saved with Java serialization, sharing its directory path with the other
+   * pictures in the same directory. The historical tags are read from a list of tag lists into a
+   * TagHistory.
+   *
+   * @param in The stream to read from
+   * @throws IOException When the picture cannot be read
+   * @throws ClassNotFoundException When a class of the saved picture cannot be found
+   */
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    this.directoryPath = directories.intern((String) fields.get("directoryPath", null));
+    this.taglessName = (String) fields.get("taglessName", null);
+    this.fileExt = (String) fields.get("fileExt", null);
+    this.tags = (ArrayList<Tag>) fields.get("tags", null);
+    if (this.tags == null) {
+      this.tags = new ArrayList<Tag>();
+    }
+    for (Tag tag : this.tags) {
+      tag.addListener(this);
+    }
 
-      // Construct the old state of this picture before the tag changed.
-      Picture oldPicture = this.clone();
-      oldPicture.deleteTag(newTag);
-      oldPicture.addTag(oldTag);
+    // Pictures saved before the names were only kept once renamed have their first name listed
+    ArrayList<String> names = (ArrayList<String>) fields.get("historicalTagLessNames", null);
+    if (names != null && names.size() > 1) {
+      this.historicalTagLessNames = names;
+    }
+
+    ArrayList<ArrayList<Tag>> states = (ArrayList<ArrayList<Tag>>) fields.get("historicalTags",
+        null);
+    if (states != null && !states.isEmpty()) {
+      this.historicalTags = new TagHistory();
+      for (ArrayList<Tag> state : states) {
+        List<String> labels = new ArrayList<String>(state.size());
+        for (Tag tag : state) {
+          labels.add(tag.getLabel());
+        }
+        this.historicalTags.record(labels);
+      }
+    }
+  }
+
+  /**
+   * Writes a picture with Java serialization, in the serialized form it had before the historical
+   * tags were kept in a TagHistory.
+   *
+   * @param out The stream to write to
+   * @throws IOException When the picture cannot be written
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    ObjectOutputStream.PutField fields = out.putFields();
+    fields.put("directoryPath", this.directoryPath);
+    fields.put("taglessName", this.taglessName);
+    fields.put("fileExt", this.fileExt);
+    fields.put("tags", this.tags);
+    fields.put("historicalTags", this.getHistoricalTags());
+    fields.put("historicalTagLessNames", this.getHistoricalTaglessNames());
+    out.writeFields();
+  }
 
-      this.setChanged();
-      this.notifyObservers(oldPicture);
+  /**
+   * This method handles when there is a tag change in this instance. It will also notify the
+   * listeners of this instance the change, providing the listeners a snapshot of the state of this
+   * instance before the tag change.
+   *
+   * @param renamedTag The tag of this picture that was renamed
+   * @param oldLabel The label of the tag before it was renamed
+   */
+  @Override
+  public void tagRenamed(Tag renamedTag, String oldLabel) {
+    // Construct the old state of this picture before the tag changed.
+    PictureSnapshot oldPicture = null;
+    if (this.editDepth == 0) {
+      String[] tagLabels = new String[this.tags.size()];
+      for (int i = 0; i < tagLabels.length; i++) {
+        Tag tag = this.tags.get(i);
+        tagLabels[i] = tag == renamedTag ? oldLabel : tag.getLabel();
+      }
+      oldPicture = new PictureSnapshot(this.directoryPath, this.taglessName, this.fileExt,
+          tagLabels, null, null);
     }
+
+    this.publishChange(oldPicture);
   }
 }
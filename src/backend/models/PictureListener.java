@@ -0,0 +1,30 @@
+package backend.models;
+
+import java.util.Map;
+
+/**
+ * A listener for the changes of pictures, such as a new name, directory or tags.
+ */
+public interface PictureListener {
+
+  /**
+   * Called when a picture changed.
+   *
+   * @param picture The picture that changed
+   * @param oldState A snapshot of the picture from before the change
+   */
+  void pictureChanged(Picture picture, PictureSnapshot oldState);
+
+  /**
+   * Called with all the pictures that changed during a batch, see EventBus.beginBatch(). Each
+   * picture is given once, with a snapshot from before its first change in the batch. By default
+   * pictureChanged() is called for each picture.
+   *
+   * @param changes A snapshot of each picture that changed, from before the batch
+   */
+  default void picturesChanged(Map<Picture, PictureSnapshot> changes) {
+    for (Map.Entry<Picture, PictureSnapshot> change : changes.entrySet()) {
+      this.pictureChanged(change.getKey(), change.getValue());
+    }
+  }
+}
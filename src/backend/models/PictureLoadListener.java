@@ -0,0 +1,37 @@
+package backend.models;
+
+import java.util.List;
+
+/**
+ * A listener that receives the pictures of a PictureManager while the manager is still being
+ * populated, so they can be shown before the whole directory has been read.
+ */
+public interface PictureLoadListener {
+
+  /**
+   * Called each time a batch of pictures has been added to the manager.
+   *
+   * @param pictures the pictures that were just added
+   * @param loadedCount the number of pictures added so far, including this batch
+   */
+  void picturesLoaded(List<Picture> pictures, int loadedCount);
+
+  /**
+   * Determines whether the loading should stop early. The manager then keeps the pictures it has
+   * loaded so far.
+   *
+   * @return True if the loading should stop; else false.
+   */
+  boolean isCancelled();
+
+  /**
+   * Called by the owner of the manager once the loading is over, even if it was cancelled or
+   * failed, with the pictures of the manager now in use. These are the pictures to show: the
+   * pictures handed to picturesLoaded() may have been replaced since with equal pictures, such as
+   * the same pictures loaded with their history, and are then no longer tracked.
+   *
+   * @param pictures the pictures of the manager in use
+   */
+  default void loadFinished(List<Picture> pictures) {
+  }
+}
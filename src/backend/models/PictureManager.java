@@ -1,14 +1,27 @@
 package backend.models;
 
 import backend.files.FileManager;
+import backend.files.FileNameTokenizer;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Observable;
-import java.util.Observer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A class used to keep track of the pictures and its tags.
@@ -16,20 +29,116 @@ import java.util.regex.Pattern;
  * Each time a picture is added to this class, any changes to that picture (such as name changes)
  * will reflect the associated file changes in the OS.
  *
+ * The pictures and tags of this class may be used from several threads, for example while a
+ * directory is still being loaded in the background.
+ *
  * @author Emilio Kartono, Shimi Smith, Tarry Dang
  * @version 2
  */
-public class PictureManager implements Observer {
+public class PictureManager implements PictureListener {
+
+  /**
+   * The path of the file in the OS of each picture this class keeps track of. It is updated each
+   * time this class moves or renames a file, so the file of a picture is found without listing its
+   * directory.
+   */
+  private IdentityHashMap<Picture, String> pathsInOS = new IdentityHashMap<>();
+
+  /**
+   * The pictures whose file needs to be moved or renamed once the current bulk edit is done, or
+   * null if there is no bulk edit going on.
+   */
+  private Set<Picture> pendingRelocations;
 
   /**
-   * A list of pictures that this class keeps track of.
+   * All tags that's used by all pictures. Each tag has one shared instance, which every picture
+   * with that tag uses.
    */
-  private ArrayList<Picture> pictures = new ArrayList<Picture>();
+  private TagRegistry availableTags = new TagRegistry();
 
   /**
-   * A list of all tags that's used by all pictures.
+   * The pictures that this class keeps track of, by id. The id of a picture is its position in this
+   * list, given out in the order the pictures were added. The position of an untracked picture is
+   * null until the ids are compacted.
    */
-  private ArrayList<Tag> availableTags = new ArrayList<Tag>();
+  private ArrayList<Picture> picturesById = new ArrayList<>();
+
+  /**
+   * The id of each picture this class keeps track of.
+   */
+  private IdentityHashMap<Picture, Integer> pictureIds = new IdentityHashMap<>();
+
+  /**
+   * The id of the pictures this class keeps track of, by their absolute path, so a picture equal to
+   * a given picture is found without comparing it to every picture.
+   */
+  private HashMap<String, Integer> idsByPath = new HashMap<>();
+
+  /**
+   * The ids of the pictures this class keeps track of.
+   */
+  private BitSet trackedIds = new BitSet();
+
+  /**
+   * The ids of the pictures in this class that have each tag, by the shared instance of the tag. It
+   * is kept up to date as pictures are tracked, untracked and change their tags.
+   */
+  private IdentityHashMap<Tag, BitSet> picturesByTag = new IdentityHashMap<>();
+
+  /**
+   * The tag each alias stands for, by the label of the alias. A picture with a tag whose label is
+   * an alias is found as if it had the tag the alias stands for, without renaming its file.
+   */
+  private HashMap<String, Tag> aliases = new HashMap<>();
+
+  /**
+   * The labels of the aliases of each tag, by the shared instance of the tag.
+   */
+  private IdentityHashMap<Tag, List<String>> aliasesByTag = new IdentityHashMap<>();
+
+  /**
+   * The tree of the available tags, or null if it has to be built again.
+   */
+  private TagTree tagTree;
+
+  /**
+   * The number of changes to the available tags when the tree of the tags was built.
+   */
+  private int tagTreeModCount;
+
+  /**
+   * The number of times a picture was added to or removed from the pictures with a tag, or the ids
+   * changed, so the index of the tag tree knows when to be built again.
+   */
+  private int picturesByTagModCount;
+
+  /**
+   * The ids of the pictures with each tag of the tag tree, the tags one after the other in the
+   * order of the tree, so the ids of the pictures under a node of the tree are one range. An id is
+   * there once for each of its tags. Null if it has not been built yet.
+   */
+  private int[] treeIds;
+
+  /**
+   * The position in treeIds of the ids of each tag of the tag tree, followed by the length of
+   * treeIds.
+   */
+  private int[] treeIdStarts;
+
+  /**
+   * The tag tree treeIds was built for.
+   */
+  private TagTree treeIdsTree;
+
+  /**
+   * The number of changes to the pictures with a tag when treeIds was built.
+   */
+  private int treeIdsModCount;
+
+  /**
+   * Called when the available tags or the aliases changed, or null.
+   */
+  private Runnable tagsChangedListener;
 
   /**
    * The current directory of this manager.
@@ -42,11 +151,24 @@ public class PictureManager implements Observer {
   private boolean isRecursive = false;
 
   /**
-   * The compiled regex Pattern for filename check.(avoid multiple regex compilation for
-   * efficiency). Example: "@.jpg" is not a valid name file name cannot contain any special letter
-   * (except for tags and file extension)
+   * The largest number of pictures handed to a PictureLoadListener at once.
+   */
+  private static final int LOAD_BATCH_SIZE = 500;
+
+  /**
+   * How long to wait for the search to find more files before checking if it is done.
+   */
+  private static final long LOAD_POLL_MILLIS = 20;
+
+  /**
+   * The largest number of files renamed at the same time during a bulk edit.
    */
-  private static final Pattern fileNameSpec = Pattern.compile("\\w+(\\s\\w+)*(\\s@\\w+)*");
+  private static final int BULK_RENAME_THREADS = 8;
+
+  /**
+   * The number of ids below which untracked pictures are never compacted away.
+   */
+  private static final int MIN_IDS_TO_COMPACT = 64;
 
   /**
    * Populate the picture manager with pictures under a certain directory
@@ -67,35 +189,127 @@ public class PictureManager implements Observer {
     }
 
     for (File file : files) {
-      if (this.nameCheck(file)) {
-        Picture picture = new Picture(file.getAbsolutePath());
-        this.addPicture(picture);
-
-        for (Tag tag : this.availableTags) {
-          for (Tag pictureTag : picture.getTags()) {
-            if (tag.equals(pictureTag) && tag != pictureTag) {
-              picture.deleteTag(pictureTag);
-              picture.addTag(tag);
-            }
+      this.loadPicture(file);
+    }
+  }
+
+  /**
+   * Populate the picture manager with pictures under a certain directory, handing the pictures to
+   * the listener in batches while the directory is still being searched. If the listener cancels
+   * the loading, the manager keeps the pictures loaded so far.
+   *
+   * @param directoryPath A directory path
+   * @param recursive Determines whether to grab the images recursively or not.
+   * @param listener The listener receiving the pictures as they are loaded.
+   * @throws IOException Thrown when the directory does not exist or cannot be read.
+   */
+  public PictureManager(String directoryPath, boolean recursive, PictureLoadListener listener)
+      throws IOException {
+    this.currDir = directoryPath;
+    this.isRecursive = recursive;
+
+    // the files are found on other threads and queued up here
+    BlockingQueue<List<File>> found = new LinkedBlockingQueue<>();
+    Future<List<File>> search =
+        FileManager.findImages(directoryPath, recursive, found::add, listener::isCancelled);
+
+    List<Picture> batch = new ArrayList<>();
+    int loadedCount = 0;
+    try {
+      while (!listener.isCancelled()) {
+        List<File> files = found.poll(LOAD_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (files == null) {
+          if (search.isDone() && found.isEmpty()) {
+            break; // everything has been found
+          }
+          continue;
+        }
+
+        for (File file : files) {
+          Picture picture = this.loadPicture(file);
+          if (picture != null) {
+            batch.add(picture);
           }
         }
+
+        // hand out full batches, or whatever there is when we would otherwise wait
+        if (batch.size() >= LOAD_BATCH_SIZE || (found.isEmpty() && !batch.isEmpty())) {
+          loadedCount += batch.size();
+          listener.picturesLoaded(batch, loadedCount);
+          batch = new ArrayList<>();
+        }
       }
+    } catch (InterruptedException e) {
+      // stop loading, the same as a cancellation
+      Thread.currentThread().interrupt();
+    }
+
+    if (!batch.isEmpty()) {
+      loadedCount += batch.size();
+      listener.picturesLoaded(batch, loadedCount);
+    }
+
+    IOException failure = searchFailure(search);
+    if (failure != null) {
+      this.close();
+      throw failure;
     }
   }
 
   /**
-   * Check if the file contains a valid name.
+   * Returns why a finished search for files failed, such as the directory no longer existing or
+   * not being readable. A search that was cancelled or is still running has not failed.
+   *
+   * @param search The search for files
+   * @return The error of the search, or null if it did not fail
+   */
+  private static IOException searchFailure(Future<List<File>> search) {
+    if (!search.isDone() || search.isCancelled()) {
+      return null;
+    }
+
+    try {
+      search.get();
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+        if (cause instanceof IOException) {
+          return (IOException) cause;
+        }
+      }
+      return new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Adds the picture of a file to this manager. Files with an invalid name are ignored.
+   *
+   * @param file An image file
+   * @return The picture added, or null if the file does not have a valid name
+   */
+  private Picture loadPicture(File file) {
+    if (!this.nameCheck(file)) {
+      return null;
+    }
+
+    Picture picture = new Picture(file.getAbsolutePath());
+    this.addPicture(picture);
+    return picture;
+  }
+
+  /**
+   * Check if the file contains a valid name. Example: "@.jpg" is not a valid name, a file name
+   * cannot contain any special letter (except for tags and file extension), see
+   * FileNameTokenizer.
    *
    * @param file The file
    * @return True if the file has a valid name; else false.
    */
   private boolean nameCheck(File file) {
-    String nameWithoutFileExtension = file.getName().split("\\.")[0].trim();
-    Matcher m = fileNameSpec.matcher(nameWithoutFileExtension);
-    if (m.matches()) {
-      return true;
-    }
-    return false;
+    return FileNameTokenizer.tokenize(file.getName()).isValid();
   }
 
   /**
@@ -109,8 +323,14 @@ public class PictureManager implements Observer {
    *
    * @return A list of pictures in this class.
    */
-  public ArrayList<Picture> getPictures() {
-    return new ArrayList<Picture>(pictures);
+  public synchronized ArrayList<Picture> getPictures() {
+    ArrayList<Picture> pictures = new ArrayList<Picture>(this.pictureIds.size());
+    for (Picture picture : this.picturesById) {
+      if (picture != null) {
+        pictures.add(picture);
+      }
+    }
+    return pictures;
   }
 
   /**
@@ -119,28 +339,238 @@ public class PictureManager implements Observer {
    * @param tag The tag to search for
    * @return A list of pictures that this tag belongs to.
    */
-  public ArrayList<Picture> getPicturesWithTag(Tag tag) {
-    ArrayList<Picture> picturesWithTags = new ArrayList<>();
-    for (Picture picture : pictures) {
-      if (picture.containsTag(tag)) {
-        picturesWithTags.add(picture);
+  public synchronized ArrayList<Picture> getPicturesWithTag(Tag tag) {
+    ArrayList<Picture> picturesWithTag = new ArrayList<>();
+    BitSet ids = this.getIdsWithTag(tag.getLabel());
+    if (ids != null) {
+      for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+        picturesWithTag.add(this.picturesById.get(id));
+      }
+    }
+    return picturesWithTag;
+  }
+
+  /**
+   * Returns the pictures stored in this class that match a query, in the order they were added.
+   * The query is evaluated right away, but each picture is only looked up as the iterator reaches
+   * it. Pictures untracked in the meantime are skipped.
+   *
+   * @param query The query to match
+   * @return An iterator over the pictures matching the query.
+   */
+  public synchronized Iterator<Picture> getPicturesMatching(TagQuery query) {
+    BitSet ids = query.evaluate(this::getIdsMatching, this.trackedIds);
+    List<Picture> pictures = this.picturesById; // the ids are only valid for this list
+    return new Iterator<Picture>() {
+
+      /**
+       * The next picture to return, or null if it has not been looked up yet.
+       */
+      private Picture nextPicture;
+
+      /**
+       * The id to look for the next picture from.
+       */
+      private int nextId = 0;
+
+      @Override
+      public boolean hasNext() {
+        synchronized (PictureManager.this) {
+          while (this.nextPicture == null && (this.nextId = ids.nextSetBit(this.nextId)) >= 0) {
+            Picture picture = pictures.get(this.nextId++);
+            if (PictureManager.this.pictureIds.containsKey(picture)) {
+              this.nextPicture = picture;
+            }
+          }
+        }
+        return this.nextPicture != null;
+      }
+
+      @Override
+      public Picture next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Picture picture = this.nextPicture;
+        this.nextPicture = null;
+        return picture;
+      }
+    };
+  }
+
+  /**
+   * Returns the pictures stored in this class that have a tag with a path or under it, such as all
+   * the pictures under "place-canada", see TagTree.
+   *
+   * @param path A path, such as "place-canada"
+   * @return A list of the pictures with a tag under the path, in the order they were added.
+   */
+  public synchronized ArrayList<Picture> getPicturesUnder(String path) {
+    ArrayList<Picture> picturesUnder = new ArrayList<>();
+    BitSet ids = this.getIdsUnder(path);
+    if (ids != null) {
+      for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+        picturesUnder.add(this.picturesById.get(id));
+      }
+    }
+    return picturesUnder;
+  }
+
+  /**
+   * Returns the tree of the available tags, building it again if the tags changed since it was
+   * last built.
+   *
+   * @return The tree of the available tags.
+   */
+  public synchronized TagTree getTagTree() {
+    if (this.tagTree == null || this.tagTreeModCount != this.availableTags.getModCount()) {
+      this.tagTree = new TagTree(this.getAvailableTags());
+      this.tagTreeModCount = this.availableTags.getModCount();
+    }
+    return this.tagTree;
+  }
+
+  /**
+   * Returns the ids of the pictures matching a label of a TagQuery, which is either the label of a
+   * tag or a path followed by TagTree.SUBTREE_SUFFIX.
+   *
+   * @param label A label of a query
+   * @return The ids, or null if no picture matches the label.
+   */
+  private BitSet getIdsMatching(String label) {
+    if (label.endsWith(TagTree.SUBTREE_SUFFIX)) {
+      return this.getIdsUnder(label.substring(0, label.length() - TagTree.SUBTREE_SUFFIX.length()));
+    }
+    return this.getIdsWithTag(label);
+  }
+
+  /**
+   * Returns the ids of the pictures with a tag with a path or under it. The tags under the path
+   * are one interval of the tree of the tags, and the ids are indexed in the order of the tree, so
+   * the ids under the path are read from one range of the index.
+   *
+   * @param path A path, such as "place-canada"
+   * @return The ids, or null if there is no tag with the path or under it.
+   */
+  private BitSet getIdsUnder(String path) {
+    TagTree tree = this.getTagTree();
+    TagTree.Node node = tree.find(path);
+    if (node == null) {
+      return null;
+    }
+
+    if (this.treeIds == null || this.treeIdsTree != tree
+        || this.treeIdsModCount != this.picturesByTagModCount) {
+      this.indexTree(tree);
+    }
+    BitSet ids = new BitSet();
+    int end = this.treeIdStarts[node.getEnd()];
+    for (int i = this.treeIdStarts[node.getStart()]; i < end; i++) {
+      ids.set(this.treeIds[i]);
+    }
+    return ids;
+  }
+
+  /**
+   * Builds the index of the ids of the pictures with each tag of the tag tree, in the order of the
+   * tree. The pictures with an alias of a tag are indexed under the tag.
+   *
+   * @param tree The tag tree
+   */
+  private void indexTree(TagTree tree) {
+    List<Tag> tags = tree.getRoot().getTags();
+    int[] starts = new int[tags.size() + 1];
+    int[] ids = new int[16];
+    int size = 0;
+    for (int i = 0; i < tags.size(); i++) {
+      starts[i] = size;
+      BitSet tagIds = this.getIdsWithTag(tags.get(i).getLabel());
+      if (tagIds == null) {
+        continue;
+      }
+      if (size + tagIds.cardinality() > ids.length) {
+        ids = Arrays.copyOf(ids, Math.max(ids.length * 2, size + tagIds.cardinality()));
+      }
+      for (int id = tagIds.nextSetBit(0); id >= 0; id = tagIds.nextSetBit(id + 1)) {
+        ids[size++] = id;
+      }
+    }
+    starts[tags.size()] = size;
+
+    this.treeIds = ids;
+    this.treeIdStarts = starts;
+    this.treeIdsTree = tree;
+    this.treeIdsModCount = this.picturesByTagModCount;
+  }
+
+  /**
+   * Returns the ids of the pictures in this class with a tag.
+   *
+   * @param label The label of the tag
+   * @return The ids of the pictures with the tag, or null if there are none.
+   */
+  private BitSet getIdsWithTag(String label) {
+    Tag sharedTag = this.aliases.get(label);
+    if (sharedTag == null) {
+      sharedTag = this.availableTags.get(label);
+    }
+    if (sharedTag == null) {
+      return null;
+    }
+
+    BitSet ids = this.picturesByTag.get(sharedTag);
+    List<String> aliasLabels = this.aliasesByTag.get(sharedTag);
+    if (aliasLabels == null) {
+      return ids;
+    }
+
+    // The pictures with an alias of the tag are found as well
+    BitSet allIds = ids == null ? new BitSet() : (BitSet) ids.clone();
+    for (String alias : aliasLabels) {
+      Tag aliasTag = this.availableTags.get(alias);
+      BitSet aliasIds = aliasTag == null ? null : this.picturesByTag.get(aliasTag);
+      if (aliasIds != null) {
+        allIds.or(aliasIds);
       }
     }
-    return picturesWithTags;
+    return allIds;
   }
 
   /**
    * Deletes a tag. It will update all the pictures in this instance that has this tag so that these
-   * pictures do not have the deleted tag anymore.
+   * pictures do not have the deleted tag anymore. The aliases of the tag are deleted along with it,
+   * and so are the tags with the label of an alias.
    *
    * @param tag The tag to delete.
    */
-  public void deleteTag(Tag tag) {
-    for (Picture picture : pictures) {
-      if (picture.containsTag(tag)) {
-        picture.deleteTag(tag);
+  public synchronized void deleteTag(Tag tag) {
+    Tag sharedTag = this.resolveAlias(tag.getLabel());
+    List<String> aliasLabels = sharedTag == null ? null : this.aliasesByTag.get(sharedTag);
+    if (aliasLabels != null) {
+      for (String alias : new ArrayList<>(aliasLabels)) {
+        this.removeAlias(alias);
+        this.deleteSharedTag(new Tag(alias));
       }
     }
+    this.deleteSharedTag(sharedTag == null ? tag : sharedTag);
+    this.notifyTagsChanged();
+  }
+
+  /**
+   * Deletes a tag from the pictures in this class and from the collection, without looking at its
+   * aliases.
+   *
+   * @param tag The tag to delete
+   */
+  private void deleteSharedTag(Tag tag) {
+    for (Picture picture : this.getPicturesWithTag(tag)) {
+      picture.deleteTag(tag);
+    }
+    Tag sharedTag = this.availableTags.get(tag.getLabel());
+    if (sharedTag != null) {
+      this.picturesByTag.remove(sharedTag);
+      this.picturesByTagModCount++;
+    }
     this.availableTags.remove(tag);
   }
 
@@ -150,47 +580,410 @@ public class PictureManager implements Observer {
    *
    * @param tag A new tag to add to the collection
    */
-  public void addTagToCollection(Tag tag) {
-    if (!availableTags.contains(tag)) {
-      this.availableTags.add(tag);
+  public synchronized void addTagToCollection(Tag tag) {
+    int modCount = this.availableTags.getModCount();
+    this.availableTags.intern(tag);
+    if (this.availableTags.getModCount() != modCount) {
+      this.notifyTagsChanged();
     }
   }
 
   /**
-   * Adds a unique picture to this class. It will also add this instance as an observer to the
-   * picture as well as add any tags from the picture not in the collection to the collection. If
-   * the picture already exist, it will not add it. To see if a picture exist, refer to the
-   * Picture.equals() to see if two pictures are equal.
+   * Returns the tag in the collection with the same label as the given tag, adding the given tag to
+   * the collection if there is no such tag yet. Pictures in this class use the returned instance.
    *
-   * @param picture A picture to add
+   * @param tag A tag
+   * @return The tag in the collection with the same label.
+   */
+  public synchronized Tag getSharedTag(Tag tag) {
+    return this.availableTags.intern(tag);
+  }
+
+  /**
+   * Returns the shared instance of the tag a label stands for: the tag an alias stands for if the
+   * label is an alias, or else the tag with the label.
+   *
+   * @param label The label of a tag or of an alias
+   * @return The tag the label stands for, or null if there is none.
+   */
+  private Tag resolveAlias(String label) {
+    Tag sharedTag = this.aliases.get(label);
+    return sharedTag == null ? this.availableTags.get(label) : sharedTag;
+  }
+
+  /**
+   * Returns the tag in the collection a tag stands for. If the label of the tag is an alias, this
+   * is the tag the alias stands for, otherwise it is the same as getSharedTag().
+   *
+   * @param tag A tag
+   * @return The tag in the collection the tag stands for.
+   */
+  public synchronized Tag resolveTag(Tag tag) {
+    Tag sharedTag = this.aliases.get(tag.getLabel());
+    return sharedTag == null ? this.availableTags.intern(tag) : sharedTag;
+  }
+
+  /**
+   * Makes a label an alias of a tag. The pictures with a tag with that label are then found as if
+   * they had the tag, in queries and in getPicturesWithTag(), and the tag with that label is no
+   * longer listed in getAvailableTags(). No file is renamed, see normalizeAliases(). The aliases of
+   * the label, if it is a tag that has aliases, become aliases of the tag as well.
+   *
+   * @param alias The label of the alias
+   * @param tag The tag the alias stands for
+   * @throws IllegalArgumentException Thrown when the tag is the alias itself or stands for it.
+   */
+  public synchronized void addAlias(String alias, Tag tag) {
+    Tag sharedTag = this.resolveTag(tag);
+    if (sharedTag.getLabel().equals(alias)) {
+      throw new IllegalArgumentException("@" + alias + " cannot be an alias of itself");
+    }
+
+    this.removeAlias(alias);
+    List<String> aliasLabels = new ArrayList<>();
+    aliasLabels.add(alias);
+    Tag aliasTag = this.availableTags.get(alias);
+    if (aliasTag != null && this.aliasesByTag.containsKey(aliasTag)) {
+      aliasLabels.addAll(this.aliasesByTag.remove(aliasTag));
+    }
+
+    for (String label : aliasLabels) {
+      this.aliases.put(label, sharedTag);
+    }
+    this.tagTree = null; // the tags with the label of an alias are left out of the tree
+    List<String> tagAliases = this.aliasesByTag.get(sharedTag);
+    if (tagAliases == null) {
+      tagAliases = new ArrayList<>(2);
+      this.aliasesByTag.put(sharedTag, tagAliases);
+    }
+    tagAliases.addAll(aliasLabels);
+    this.notifyTagsChanged();
+  }
+
+  /**
+   * Merges a tag into another tag, by making the label of the first tag an alias of the second
+   * one. See addAlias().
+   *
+   * @param tag The tag to merge
+   * @param into The tag it is merged into
+   * @throws IllegalArgumentException Thrown when both tags stand for the same tag.
+   */
+  public synchronized void mergeTags(Tag tag, Tag into) {
+    this.addAlias(tag.getLabel(), into);
+  }
+
+  /**
+   * Removes an alias, so the pictures with a tag with its label are found by that tag again.
+   *
+   * @param alias The label of the alias
+   */
+  public synchronized void removeAlias(String alias) {
+    Tag sharedTag = this.aliases.remove(alias);
+    if (sharedTag != null) {
+      this.tagTree = null;
+      List<String> tagAliases = this.aliasesByTag.get(sharedTag);
+      tagAliases.remove(alias);
+      if (tagAliases.isEmpty()) {
+        this.aliasesByTag.remove(sharedTag);
+      }
+      this.notifyTagsChanged();
+    }
+  }
+
+  /**
+   * Returns the label of the tag each alias stands for, by the label of the alias.
+   *
+   * @return A map from the label of each alias to the label of its tag.
+   */
+  public synchronized Map<String, String> getAliases() {
+    Map<String, String> labels = new HashMap<>();
+    for (Map.Entry<String, Tag> alias : this.aliases.entrySet()) {
+      labels.put(alias.getKey(), alias.getValue().getLabel());
+    }
+    return labels;
+  }
+
+  /**
+   * Makes a picture use the shared instance of each of its tags, adding the tags that are not in
+   * the collection yet to the collection. The name of the picture does not change.
+   *
+   * @param picture A picture
    */
-  public void addPicture(Picture picture) {
-    if (!pictures.contains(picture)) {
-      pictures.add(picture);
-      picture.addObserver(this);
+  private void shareTags(Picture picture) {
+    for (Tag tag : picture.getTags()) {
+      Tag sharedTag = this.availableTags.intern(tag);
+      if (sharedTag != tag) {
+        picture.replaceTag(tag, sharedTag);
+      }
+    }
+  }
 
-      for (Tag tag : picture.getTags()) {
-        if (!this.contains(tag)) {
-          this.availableTags.add(tag);
+  /**
+   * Updates the pictures by tag after the tags of a picture changed. The picture is added under
+   * each of its tags, and removed from the tags it had before but does not have anymore.
+   *
+   * @param picture A picture in this class, using the shared instance of each of its tags
+   * @param oldPicture A snapshot of the picture from before the change, or null if it is new
+   */
+  private void indexTags(Picture picture, PictureSnapshot oldPicture) {
+    int id = this.pictureIds.get(picture);
+    for (Tag tag : picture.getTags()) {
+      BitSet ids = this.picturesByTag.get(tag);
+      if (ids == null) {
+        ids = new BitSet();
+        this.picturesByTag.put(tag, ids);
+      }
+      if (!ids.get(id)) {
+        ids.set(id);
+        this.picturesByTagModCount++;
+      }
+    }
+
+    if (oldPicture != null) {
+      for (String oldLabel : oldPicture.getTagLabels()) {
+        Tag sharedTag = this.availableTags.get(oldLabel);
+        if (sharedTag != null && !picture.containsTag(sharedTag)) {
+          this.unindexTag(picture, sharedTag);
         }
       }
     }
   }
 
+  /**
+   * Removes a picture from the pictures with a tag.
+   *
+   * @param picture A picture
+   * @param tag The shared instance of a tag
+   */
+  private void unindexTag(Picture picture, Tag tag) {
+    BitSet ids = this.picturesByTag.get(tag);
+    if (ids != null) {
+      ids.clear(this.pictureIds.get(picture));
+      this.picturesByTagModCount++;
+      if (ids.isEmpty()) {
+        this.picturesByTag.remove(tag);
+      }
+    }
+  }
+
+  /**
+   * Adds a unique picture to this class. It will also add this instance as an observer to the
+   * picture as well as add any tags from the picture not in the collection to the collection. The
+   * picture is made to use the tags in the collection instead of its own copies. If the picture
+   * already exist, it will not add it. To see if a picture exist, refer to the Picture.equals() to
+   * see if two pictures are equal.
+   *
+   * @param picture A picture to add
+   */
+  public synchronized void addPicture(Picture picture) {
+    String path = picture.getAbsolutePath();
+    if (!idsByPath.containsKey(path)) {
+      int id = picturesById.size();
+      picturesById.add(picture);
+      pictureIds.put(picture, id);
+      idsByPath.put(path, id);
+      trackedIds.set(id);
+      pathsInOS.put(picture, path);
+      picture.addListener(this);
+      this.shareTags(picture);
+      this.indexTags(picture, null);
+    }
+  }
+
   /**
    * Untracks a picture from this class and the picture no longer becomes observed from this class.
    * If the picture does not exist, it will do nothing
    *
    * @param picture A picture in this class to untrack from.
    */
-  public void untrackPicture(Picture picture) {
-    for (Picture thePicture : this.pictures) {
-      if (thePicture.equals(picture)) {
-        pictures.remove(thePicture);
-        thePicture.deleteObserver(this);
-        break;
+  public synchronized void untrackPicture(Picture picture) {
+    String path = picture.getAbsolutePath();
+    Integer id = idsByPath.get(path);
+    if (id == null) {
+      return;
+    }
+
+    Picture thePicture = picturesById.get(id);
+    for (Tag tag : thePicture.getTags()) {
+      this.unindexTag(thePicture, tag);
+    }
+    idsByPath.remove(path);
+    pictureIds.remove(thePicture);
+    picturesById.set(id, null);
+    trackedIds.clear(id);
+    pathsInOS.remove(thePicture);
+    thePicture.removeListener(this);
+
+    if (picturesById.size() >= MIN_IDS_TO_COMPACT && pictureIds.size() < picturesById.size() / 2) {
+      this.compactIds();
+    }
+  }
+
+  /**
+   * Stops keeping track of all the pictures and tags in this class, such as when another directory
+   * is opened. The pictures are shared with the app settings and the next picture manager, so this
+   * class must stop listening to them, or it would rename their files as well.
+   */
+  public synchronized void close() {
+    for (Picture picture : this.getPictures()) {
+      this.untrackPicture(picture);
+    }
+    for (Tag tag : this.availableTags.getTags()) {
+      this.availableTags.remove(tag);
+    }
+    this.tagsChangedListener = null;
+  }
+
+  /**
+   * Replaces the pictures in this class with the given pictures equal to them, such as the same
+   * pictures loaded with their history. Each picture is looked up by its absolute path and takes
+   * the place of the picture it replaces, keeping its id. The given pictures without an equal
+   * picture in this class are ignored.
+   *
+   * @param pictures The pictures to put in place of the pictures equal to them
+   * @return The number of pictures replaced.
+   */
+  public synchronized int replacePictures(Collection<Picture> pictures) {
+    int replacedCount = 0;
+    for (Picture picture : pictures) {
+      String path = picture.getAbsolutePath();
+      Integer id = this.idsByPath.get(path);
+      if (id == null || this.picturesById.get(id) == picture) {
+        continue;
+      }
+
+      Picture oldPicture = this.picturesById.get(id);
+      for (Tag tag : oldPicture.getTags()) {
+        this.unindexTag(oldPicture, tag);
+      }
+      this.pictureIds.remove(oldPicture);
+      this.pathsInOS.remove(oldPicture);
+      oldPicture.removeListener(this);
+
+      this.picturesById.set(id, picture);
+      this.pictureIds.put(picture, id);
+      this.pathsInOS.put(picture, path);
+      picture.addListener(this);
+      this.shareTags(picture);
+      this.indexTags(picture, null);
+      replacedCount++;
+    }
+    return replacedCount;
+  }
+
+  /**
+   * Gives the pictures new ids without gaps, keeping their order, once most of the ids belong to
+   * untracked pictures.
+   */
+  private void compactIds() {
+    int[] newIds = new int[this.picturesById.size()];
+    ArrayList<Picture> compacted = new ArrayList<>(this.pictureIds.size());
+    for (int id = 0; id < this.picturesById.size(); id++) {
+      Picture picture = this.picturesById.get(id);
+      if (picture != null) {
+        newIds[id] = compacted.size();
+        compacted.add(picture);
+      }
+    }
+
+    for (Map.Entry<Tag, BitSet> entry : this.picturesByTag.entrySet()) {
+      BitSet ids = entry.getValue();
+      BitSet compactedIds = new BitSet(compacted.size());
+      for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+        compactedIds.set(newIds[id]);
+      }
+      entry.setValue(compactedIds);
+    }
+    this.picturesByTagModCount++;
+    for (Map.Entry<String, Integer> entry : this.idsByPath.entrySet()) {
+      entry.setValue(newIds[entry.getValue()]);
+    }
+    for (Map.Entry<Picture, Integer> entry : this.pictureIds.entrySet()) {
+      entry.setValue(newIds[entry.getValue()]);
+    }
+
+    // A new list, since iterators from getPicturesMatching() still use the old ids
+    this.picturesById = compacted;
+    this.trackedIds = new BitSet(compacted.size());
+    this.trackedIds.set(0, compacted.size());
+  }
+
+  /**
+   * Applies changes made to the files in the OS by other programs. Pictures whose file, or one of
+   * whose parent directories, was deleted are untracked. Images created with a valid name are
+   * tracked, with their tags parsed from the file name. Images that are already tracked, such as
+   * the files renamed by this class, are left alone.
+   *
+   * @param created The absolute paths of the images that were created.
+   * @param deleted The absolute paths of the images and directories that were deleted.
+   * @return True if any picture was tracked or untracked; else false.
+   */
+  public synchronized boolean applyFileChanges(Collection<String> created,
+      Collection<String> deleted) {
+    boolean changed = false;
+
+    if (!deleted.isEmpty()) {
+      Set<String> deletedPaths = new HashSet<>(deleted);
+      for (Picture picture : this.getPictures()) {
+        if (isUnder(new File(this.pathsInOS.get(picture)), deletedPaths)) {
+          this.untrackPicture(picture);
+          changed = true;
+        }
+      }
+    }
+
+    for (String path : created) {
+      File file = new File(path);
+      if (!this.contains(new Picture(path)) && this.loadPicture(file) != null) {
+        changed = true;
       }
     }
+    return changed;
+  }
+
+  /**
+   * Determines whether a file or one of its parent directories is among the given paths.
+   *
+   * @param file A file
+   * @param paths A set of absolute paths
+   * @return True if the file or one of its parent directories is in the set; else false.
+   */
+  private static boolean isUnder(File file, Set<String> paths) {
+    for (File curFile = file; curFile != null; curFile = curFile.getParentFile()) {
+      if (paths.contains(curFile.getAbsolutePath())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Reads the current directory again and applies every difference between the files in the OS and
+   * the pictures in this class, as in applyFileChanges().
+   *
+   * @return True if any picture was tracked or untracked; else false.
+   * @throws IOException Thrown when the directory does not exist anymore.
+   */
+  public synchronized boolean resync() throws IOException {
+    List<File> files;
+    if (this.isRecursive) {
+      files = FileManager.getImageListRec(this.currDir);
+    } else {
+      files = FileManager.getImageList(this.currDir);
+    }
+
+    Set<String> created = new HashSet<>();
+    for (File file : files) {
+      created.add(file.getAbsolutePath());
+    }
+
+    List<String> deleted = new ArrayList<>();
+    for (String pathInOS : this.pathsInOS.values()) {
+      if (!created.remove(pathInOS)) {
+        deleted.add(pathInOS);
+      }
+    }
+    return this.applyFileChanges(created, deleted);
   }
 
   /**
@@ -200,8 +993,8 @@ public class PictureManager implements Observer {
    * @param picture A picture to test
    * @return True if the picture is in this instance; else false.
    */
-  public boolean contains(Picture picture) {
-    return pictures.contains(picture);
+  public synchronized boolean contains(Picture picture) {
+    return idsByPath.containsKey(picture.getAbsolutePath());
   }
 
   /**
@@ -210,98 +1003,419 @@ public class PictureManager implements Observer {
    * @param tag A tag to test.
    * @return True if the tag is in this collection of tags; else false.
    */
-  public boolean contains(Tag tag) {
+  public synchronized boolean contains(Tag tag) {
     return this.availableTags.contains(tag);
   }
 
   /**
-   * This method is called whenever the observed object is changed. When the arguements and the
-   * observable object is a Picture object, and this instance is keeping track of this object, it
-   * will perform the changes of the Picture class in the IO level.
+   * This method is called whenever a picture is changed. When this instance is keeping track of the
+   * picture, it will perform the changes of the Picture class in the IO level.
+   *
+   * @param picture The picture that changed
+   * @param oldState A snapshot of the picture from before the change
+   */
+  @Override
+  public void pictureChanged(Picture picture, PictureSnapshot oldState) {
+    this.updatePicture(picture, oldState);
+  }
+
+  /**
+   * This method is called with the pictures changed during a batch, such as all the pictures with
+   * a tag that was renamed. The files of the pictures are renamed together on a bounded number of
+   * threads. A picture whose file cannot be renamed keeps the path of its old file, the same as in
+   * pictureChanged().
    *
-   * @param o the observable object.
-   * @param arg an argument passed to the <code>notifyObservers</code>
+   * @param changes A snapshot of each picture that changed, from before the batch
    */
   @Override
-  public void update(Observable o, Object arg) {
-    // If there is a commands with the pictures
-    if (o instanceof Picture && arg instanceof Picture) {
-      Picture newPicture = (Picture) o;
-      Picture oldPicture = (Picture) arg;
-      this.updatePicture(newPicture, oldPicture);
+  public synchronized void picturesChanged(Map<Picture, PictureSnapshot> changes) {
+    if (changes.size() == 1 || this.pendingRelocations != null) {
+      PictureListener.super.picturesChanged(changes);
+      return;
+    }
+
+    this.pendingRelocations = Collections.newSetFromMap(new IdentityHashMap<>());
+    try {
+      for (Map.Entry<Picture, PictureSnapshot> change : changes.entrySet()) {
+        this.updatePicture(change.getKey(), change.getValue());
+      }
+      this.relocatePending(null);
+    } finally {
+      this.pendingRelocations = null;
     }
   }
 
   /**
-   * A helper function for the update(), where changes to a picture will reflect the changes in the
-   * OS. Note: if newPicture does not exist in this class, it will do nothing.
+   * A helper function for pictureChanged(), where changes to a picture will reflect the changes in
+   * the OS. Note: if newPicture does not exist in this class, it will do nothing.
    *
    * @param newPicture The picture with the new properties
-   * @param oldPicture A copy of newPicture, but with its properties from an earlier state.
+   * @param oldPicture A snapshot of newPicture, with its properties from an earlier state.
    */
-  private void updatePicture(Picture newPicture, Picture oldPicture) {
-    if (pictures.contains(newPicture)) {
+  private synchronized void updatePicture(Picture newPicture, PictureSnapshot oldPicture) {
+    String pathInOS = this.pathsInOS.get(newPicture);
+    if (pathInOS == null) {
+      return;
+    }
+    this.updatePath(newPicture, oldPicture);
+    this.shareTags(newPicture); // in case a tag was added
+    this.indexTags(newPicture, oldPicture);
 
-      // Find the file that has the same tagless name.
-      String absolutePathInOS = "";
-      try {
-        List<File> possibleFiles = FileManager.getImageList(oldPicture.getDirectoryPath());
-        for (File file : possibleFiles) {
-          if (file.getName().contains(oldPicture.getTaglessName())) {
-            absolutePathInOS = file.getAbsolutePath();
-            break;
-          }
+    // During a bulk edit the files are renamed together afterwards
+    if (this.pendingRelocations != null) {
+      this.pendingRelocations.add(newPicture);
+      return;
+    }
+
+    // Move and rename the file in one step, it is only moved if the directory changed
+    String newPath = newPicture.getAbsolutePath();
+    boolean relocated = !newPath.equals(pathInOS) && FileManager.relocateFile(pathInOS, newPath);
+    this.finishRelocation(newPicture, pathInOS, relocated);
+  }
+
+  /**
+   * Files a picture that changed under its new absolute path, so it is still found by contains()
+   * and untrackPicture().
+   *
+   * @param picture A picture in this class
+   * @param oldPicture A snapshot of the picture from before the change
+   */
+  private void updatePath(Picture picture, PictureSnapshot oldPicture) {
+    Integer id = this.pictureIds.get(picture);
+    String oldPath = oldPicture.getAbsolutePath();
+    if (id.equals(this.idsByPath.get(oldPath))) {
+      this.idsByPath.remove(oldPath);
+    }
+    this.idsByPath.putIfAbsent(picture.getAbsolutePath(), id);
+  }
+
+  /**
+   * Updates the path of the file of a picture after the file was moved or renamed. If the picture
+   * is no longer under the current directory, it is untracked.
+   *
+   * @param picture The picture
+   * @param oldPath The path of the file before it was moved or renamed
+   * @param relocated True if the file was moved or renamed
+   */
+  private void finishRelocation(Picture picture, String oldPath, boolean relocated) {
+    String newPath = picture.getAbsolutePath();
+    if (relocated) {
+      this.pathsInOS.put(picture, newPath);
+    }
+    boolean moved =
+        relocated && !picture.getDirectoryPath().equals(new File(oldPath).getParent());
+
+    // Remove it from the picture manager if it is outside the current directory
+    boolean isUnderCurDir = newPath.contains(this.currDir);
+    if (moved && !isRecursive || !isUnderCurDir) {
+      this.untrackPicture(picture);
+    }
+  }
+
+  /**
+   * Adds tags to many pictures at once. The new file names of all the pictures are worked out first
+   * and the files are then renamed on a bounded number of threads. A picture whose file cannot be
+   * renamed keeps its old tags and is reported as failed, without stopping the other pictures from
+   * being tagged. Pictures that are not in this class are ignored.
+   *
+   * @param pictures The pictures to add the tags to
+   * @param tags The tags to add
+   * @return Which pictures were tagged and which failed
+   */
+  public synchronized BulkEditResult addTagsToPictures(Collection<Picture> pictures,
+      List<Tag> tags) {
+    List<Tag> sharedTags = new ArrayList<>();
+    for (Tag tag : tags) {
+      sharedTags.add(this.resolveTag(tag));
+    }
+
+    Map<Picture, List<Tag>> changes = new IdentityHashMap<>();
+    for (Picture picture : pictures) {
+      changes.put(picture, sharedTags);
+    }
+    return this.editTagsInBulk(changes, true);
+  }
+
+  /**
+   * Deletes tags from many pictures at once, renaming the files the same way as
+   * addTagsToPictures().
+   *
+   * @param changes The tags to delete, by the picture to delete them from
+   * @return Which pictures were changed and which failed
+   */
+  public synchronized BulkEditResult deleteTagsFromPictures(Map<Picture, List<Tag>> changes) {
+    return this.editTagsInBulk(changes, false);
+  }
+
+  /**
+   * A helper for the bulk tag edits. Changes the tags of the pictures while holding back the
+   * renames, then renames all the files in parallel and puts back the tags of the pictures whose
+   * file could not be renamed.
+   *
+   * @param changes The tags to add or delete, by picture
+   * @param add True to add the tags, false to delete them
+   * @return Which pictures were changed and which failed
+   */
+  private BulkEditResult editTagsInBulk(Map<Picture, List<Tag>> changes, boolean add) {
+    long start = System.currentTimeMillis();
+    BulkEditResult result = new BulkEditResult();
+    Map<Picture, List<Tag>> oldTags = new IdentityHashMap<>();
+
+    this.pendingRelocations = Collections.newSetFromMap(new IdentityHashMap<>());
+    try {
+      // Change the pictures, which only plans the renames
+      for (Map.Entry<Picture, List<Tag>> change : changes.entrySet()) {
+        Picture picture = change.getKey();
+        if (!this.pathsInOS.containsKey(picture)) {
+          continue;
         }
 
-        boolean moved = false;
-        // If there was a directory change
-        if (!newPicture.getDirectoryPath().equals(oldPicture.getDirectoryPath())) {
-          moved = FileManager.moveFile(absolutePathInOS, newPicture.getDirectoryPath());
+        List<Tag> before = picture.getTags();
+        if (add) {
+          picture.addMultipleTags(change.getValue());
+        } else {
+          picture.deleteMultipleTags(change.getValue());
         }
 
-        // If there was a file name change
-        if (!newPicture.getFullFileName().equals(oldPicture.getFullFileName())) {
-          String fileName = newPicture.getFullFileName();
-          if (fileName.contains(".")) {
-            fileName = fileName.split("\\.")[0];
+        List<Tag> changedTags = new ArrayList<>();
+        for (Tag tag : change.getValue()) {
+          if (add != before.contains(tag) && add == picture.containsTag(tag)) {
+            changedTags.add(tag);
           }
+        }
+        if (!changedTags.isEmpty()) {
+          oldTags.put(picture, before);
+          result.addEdited(picture, changedTags);
+        }
+      }
+
+      // Rename all of the files together
+      for (Picture picture : this.relocatePending(null)) {
+        picture.setTags(oldTags.get(picture)); // the file still has the old name
+        result.addFailed(picture);
+      }
+    } finally {
+      this.pendingRelocations = null;
+    }
+
+    result.setElapsedMillis(System.currentTimeMillis() - start);
+    return result;
+  }
+
+  /**
+   * Renames a tag and the files of all the pictures in this class that have it. If the label of the
+   * tag is an alias, the tag the alias stands for is renamed. The pictures are
+   * found through the index of tags, and their files are renamed on a bounded number of threads,
+   * grouped by directory. Since all the pictures share one tag, the rename is all or nothing: if a
+   * file cannot be renamed, the tag gets its old label back, the files that were renamed are put
+   * back, and the pictures whose file could not be renamed are reported as failed.
+   *
+   * @param tag The tag to rename
+   * @param newLabel The new label of the tag
+   * @param listener The listener told about each file that is renamed, or null
+   * @return Which pictures were renamed and which failed
+   * @throws IllegalArgumentException Thrown when another tag in this class already has the label.
+   */
+  public synchronized BulkEditResult renameTag(Tag tag, String newLabel,
+      BulkEditListener listener) {
+    long start = System.currentTimeMillis();
+    BulkEditResult result = new BulkEditResult();
+    Tag sharedTag = this.resolveAlias(tag.getLabel());
+    Tag otherTag = this.resolveAlias(newLabel);
+    if (otherTag != null && otherTag != sharedTag || this.aliases.containsKey(newLabel)) {
+      throw new IllegalArgumentException("There is already a tag @" + newLabel);
+    }
+    boolean isCopy = tag != sharedTag && !this.aliases.containsKey(tag.getLabel());
+
+    if (sharedTag != null) {
+      String oldLabel = sharedTag.getLabel();
+      List<Picture> pictures = this.getPicturesWithTag(sharedTag);
+      List<Picture> failed;
+      this.pendingRelocations = Collections.newSetFromMap(new IdentityHashMap<>());
+      try {
+        sharedTag.setLabel(newLabel);
+        failed = this.relocatePending(listener);
+      } finally {
+        this.pendingRelocations = null;
+      }
 
-          FileManager.renameFile(absolutePathInOS, fileName);
+      if (failed.isEmpty()) {
+        for (Picture picture : pictures) {
+          result.addEdited(picture, Collections.singletonList(sharedTag));
         }
+      } else {
+        this.pendingRelocations = Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+          sharedTag.setLabel(oldLabel);
+          this.relocatePending(null);
+        } finally {
+          this.pendingRelocations = null;
+        }
+        for (Picture picture : failed) {
+          result.addFailed(picture);
+        }
+      }
+    }
 
-        // Remove it from the picture manager if it is outside the current directory
-        boolean isUnderCurDir = newPicture.getAbsolutePath().contains(this.currDir);
-        if (moved && !isRecursive || !isUnderCurDir) {
-          this.untrackPicture(newPicture);
+    // A copy of the tag that is not in this class is renamed as well
+    if (isCopy && result.getFailed().isEmpty()) {
+      tag.setLabel(newLabel);
+    }
+    this.notifyTagsChanged();
+
+    result.setElapsedMillis(System.currentTimeMillis() - start);
+    return result;
+  }
+
+  /**
+   * Renames the files of some of the pictures that have a tag whose label is an alias, replacing
+   * that tag with the tag the alias stands for. A picture whose file cannot be renamed keeps its
+   * tags and is reported as failed. A tag whose label is an alias is removed from the collection
+   * once no picture has it, but the alias is kept for the pictures added later.
+   *
+   * @param maxPictures The largest number of pictures to rename
+   * @return Which pictures were renamed and which failed. No picture is renamed when there is none
+   * left with a tag whose label is an alias.
+   */
+  public synchronized BulkEditResult normalizeAliases(int maxPictures) {
+    long start = System.currentTimeMillis();
+    BulkEditResult result = new BulkEditResult();
+    Map<Picture, List<Tag>> oldTags = new IdentityHashMap<>();
+
+    this.pendingRelocations = Collections.newSetFromMap(new IdentityHashMap<>());
+    try {
+      for (Map.Entry<String, Tag> alias : this.aliases.entrySet()) {
+        Tag aliasTag = this.availableTags.get(alias.getKey());
+        BitSet ids = aliasTag == null ? null : this.picturesByTag.get(aliasTag);
+        if (ids == null) {
+          continue;
         }
 
-      } catch (IOException e) {
+        // The pictures are changed after they are found, since changing them updates the ids
+        List<Picture> pictures = new ArrayList<>();
+        for (int id = ids.nextSetBit(0); id >= 0 && oldTags.size() + pictures.size() < maxPictures;
+            id = ids.nextSetBit(id + 1)) {
+          pictures.add(this.picturesById.get(id));
+        }
+        for (Picture picture : pictures) {
+          List<Tag> before = picture.getTags();
+          List<Tag> after = new ArrayList<>(before.size());
+          for (Tag tag : before) {
+            Tag newTag = tag.equals(aliasTag) ? alias.getValue() : tag;
+            if (!after.contains(newTag)) {
+              after.add(newTag);
+            }
+          }
+          picture.setTags(after);
+          if (oldTags.putIfAbsent(picture, before) == null) {
+            result.addEdited(picture, Collections.singletonList(alias.getValue()));
+          }
+        }
       }
+
+      // Rename all of the files together
+      for (Picture picture : this.relocatePending(null)) {
+        picture.setTags(oldTags.get(picture)); // the file still has the old name
+        result.addFailed(picture);
+      }
+    } finally {
+      this.pendingRelocations = null;
     }
+
+    for (String alias : this.aliases.keySet()) {
+      Tag aliasTag = this.availableTags.get(alias);
+      if (aliasTag != null && !this.picturesByTag.containsKey(aliasTag)) {
+        this.availableTags.remove(aliasTag);
+        this.notifyTagsChanged();
+      }
+    }
+
+    result.setElapsedMillis(System.currentTimeMillis() - start);
+    return result;
+  }
+
+  /**
+   * Renames the files of the pictures waiting to be relocated on a bounded number of threads, and
+   * finishes the relocation of the pictures whose file was renamed.
+   *
+   * @param listener The listener told about each file that is done, or null
+   * @return The pictures whose file could not be renamed
+   */
+  private List<Picture> relocatePending(BulkEditListener listener) {
+    Map<String, String> moves = new HashMap<>();
+    for (Picture picture : this.pendingRelocations) {
+      String newPath = picture.getAbsolutePath();
+      if (!newPath.equals(this.pathsInOS.get(picture))) {
+        moves.put(this.pathsInOS.get(picture), newPath);
+      }
+    }
+    int total = moves.size();
+    Set<String> failed = FileManager.relocateFiles(moves, BULK_RENAME_THREADS,
+        listener == null ? null : done -> listener.filesRenamed(done, total));
+
+    List<Picture> failedPictures = new ArrayList<>();
+    for (Picture picture : new ArrayList<>(this.pendingRelocations)) {
+      String oldPath = this.pathsInOS.get(picture);
+      if (failed.contains(oldPath)) {
+        failedPictures.add(picture);
+      } else {
+        this.finishRelocation(picture, oldPath, moves.containsKey(oldPath));
+      }
+    }
+    return failedPictures;
   }
 
   /**
-   * Returns a list of all of the available tags stored in this class.
+   * Returns a list of all of the available tags stored in this class. The tags whose label is an
+   * alias are left out, since they are found through the tag the alias stands for.
    *
    * @return A list of all available tags in this class.
    */
-  public ArrayList<Tag> getAvailableTags() {
-    return new ArrayList<Tag>(availableTags);
+  public synchronized ArrayList<Tag> getAvailableTags() {
+    ArrayList<Tag> tags = new ArrayList<>();
+    for (Tag tag : this.availableTags.getTags()) {
+      if (!this.aliases.containsKey(tag.getLabel())) {
+        tags.add(tag);
+      }
+    }
+    return tags;
   }
 
   /**
    * @return A list of Tags that are available but not in this picture.
    */
   public List<Tag> getAvailableTags(Picture picture) {
-    ArrayList<Tag> TagsAvailable = this.getAvailableTags();
-    for (Tag tag : picture.getTags()) {
-      if (TagsAvailable.contains(tag)) {
-        TagsAvailable.remove(tag);
+    Set<Tag> pictureTags = new HashSet<>(picture.getTags());
+    ArrayList<Tag> TagsAvailable = new ArrayList<>();
+    for (Tag tag : this.getAvailableTags()) {
+      if (!pictureTags.contains(tag)) {
+        TagsAvailable.add(tag);
       }
     }
     return TagsAvailable;
   }
 
+  /**
+   * Sets the listener called when a tag is added to the collection, deleted or renamed, or an
+   * alias is added or removed. It is called while this is locked, from the thread making the
+   * change, so it should not wait on other threads.
+   *
+   * @param listener The listener, or null
+   */
+  public void setTagsChangedListener(Runnable listener) {
+    this.tagsChangedListener = listener;
+  }
+
+  /**
+   * Calls the tags changed listener, if there is one.
+   */
+  private void notifyTagsChanged() {
+    Runnable listener = this.tagsChangedListener;
+    if (listener != null) {
+      listener.run();
+    }
+  }
+
   /**
    * Returns the current directory of this PictureManager.
    *
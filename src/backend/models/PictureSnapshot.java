@@ -0,0 +1,142 @@
+package backend.models;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The state of a picture at one point in time: its directory path, tagless name, file extension
+ * and the labels of its tags. A picture sends a snapshot of its old state to its observers each
+ * time it changes. Unlike a copy of the picture, a snapshot does not parse a path, create tags or
+ * copy the history of the picture, and it never changes.
+ */
+public class PictureSnapshot {
+
+  /**
+   * The directory path of the picture.
+   */
+  private final String directoryPath;
+
+  /**
+   * The name of the picture, without its tags and its file extension.
+   */
+  private final String taglessName;
+
+  /**
+   * The file extension of the picture, with the ".".
+   */
+  private final String fileExt;
+
+  /**
+   * The labels of the tags of the picture, in order.
+   */
+  private final String[] tagLabels;
+
+  /**
+   * The full file name of the picture, or null if it has not been worked out yet.
+   */
+  private String fullFileName;
+
+  /**
+   * The absolute path of the picture, or null if it has not been worked out yet.
+   */
+  private String absolutePath;
+
+  /**
+   * Creates a snapshot of the state of a picture.
+   *
+   * @param directoryPath The directory path of the picture
+   * @param taglessName The name of the picture, without its tags and its file extension
+   * @param fileExt The file extension of the picture, with the "."
+   * @param tagLabels The labels of the tags of the picture, in order
+   * @param fullFileName The full file name of the picture if it is known, or null
+   * @param absolutePath The absolute path of the picture if it is known, or null
+   */
+  PictureSnapshot(String directoryPath, String taglessName, String fileExt, String[] tagLabels,
+      String fullFileName, String absolutePath) {
+    this.directoryPath = directoryPath;
+    this.taglessName = taglessName;
+    this.fileExt = fileExt;
+    this.tagLabels = tagLabels;
+    this.fullFileName = fullFileName;
+    this.absolutePath = absolutePath;
+  }
+
+  /**
+   * Returns the directory path of the picture.
+   *
+   * @return The directory path of the picture.
+   */
+  public String getDirectoryPath() {
+    return this.directoryPath;
+  }
+
+  /**
+   * Returns the name of the picture without its tags and its file extension.
+   *
+   * @return The name of the picture without its tags.
+   */
+  public String getTaglessName() {
+    return this.taglessName;
+  }
+
+  /**
+   * Returns the file extension of the picture. Note: it includes the ".". Ex: ".jpg"
+   *
+   * @return The file extension of the picture.
+   */
+  public String getFileExtension() {
+    return this.fileExt;
+  }
+
+  /**
+   * Returns the labels of the tags of the picture, in order.
+   *
+   * @return An unmodifiable list of the labels of the tags.
+   */
+  public List<String> getTagLabels() {
+    return Collections.unmodifiableList(Arrays.asList(this.tagLabels));
+  }
+
+  /**
+   * Returns the full file name of the picture, including its tags and its file extension. Ex:
+   * "jane @person.jpg".
+   *
+   * @return The full file name of the picture.
+   */
+  public String getFullFileName() {
+    if (this.fullFileName == null) {
+      StringBuilder fullFileName = new StringBuilder(this.taglessName);
+      for (String label : this.tagLabels) {
+        fullFileName.append(" @").append(label);
+      }
+      fullFileName.append(this.fileExt);
+      this.fullFileName = fullFileName.toString();
+    }
+    return this.fullFileName;
+  }
+
+  /**
+   * Returns the absolute path of the picture, which includes its directory path and its full file
+   * name.
+   *
+   * @return The absolute path of the picture.
+   */
+  public String getAbsolutePath() {
+    if (this.absolutePath == null) {
+      this.absolutePath = new File(this.directoryPath, this.getFullFileName()).getAbsolutePath();
+    }
+    return this.absolutePath;
+  }
+
+  /**
+   * Returns the string representation of this snapshot.
+   *
+   * @return The full file name of the picture.
+   */
+  @Override
+  public String toString() {
+    return this.getFullFileName();
+  }
+}
@@ -1,18 +1,31 @@
 package backend.models;
 
 import java.io.Serializable;
-import java.util.Observable;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 /**
  * A class representing a tag to a picture.
  */
-public class Tag extends Observable implements Serializable, Cloneable {
+public class Tag implements Serializable, Cloneable {
+
+  /**
+   * The version of the serialized form, which is the one tags were saved with before there were
+   * catalogs, so those app settings can still be read.
+   */
+  private static final long serialVersionUID = 6386743085937577420L;
 
   /**
    * The label of the tag.
    */
   private String label;
 
+  /**
+   * The listeners of this tag, such as the pictures with this tag, or null if there are none yet.
+   */
+  private transient Set<TagListener> listeners;
+
   /**
    * Constructs a new tag with a given label.
    *
@@ -33,21 +46,68 @@ public class Tag extends Observable implements Serializable, Cloneable {
 
   /**
    * Set a new label for this tag if the new label is different from its current label. It notifies
-   * all observers observing this tag, providing the observers a copy of this instance before the
-   * label change.
+   * all listeners of this tag, providing the listeners the label before the change. The pictures
+   * with this tag change in one batch of the EventBus, so their listeners get all of the pictures
+   * at once.
    *
    * @param label A new label to this Tag instance
    */
   public void setLabel(String label) {
     if (!label.equals(this.label)) {
-      Tag oldTag = new Tag(this.label);
+      String oldLabel = this.label;
       this.label = label;
 
-      this.setChanged();
-      this.notifyObservers(oldTag);
+      TagListener[] listeners;
+      synchronized (this) {
+        if (this.listeners == null) {
+          return;
+        }
+        listeners = this.listeners.toArray(new TagListener[0]);
+      }
+
+      EventBus.getDefault().beginBatch();
+      try {
+        for (TagListener listener : listeners) {
+          listener.tagRenamed(this, oldLabel);
+        }
+      } finally {
+        EventBus.getDefault().endBatch();
+      }
+    }
+  }
+
+  /**
+   * Adds a listener to this tag. Adding a listener that was already added does nothing.
+   *
+   * @param listener A listener
+   */
+  public synchronized void addListener(TagListener listener) {
+    if (this.listeners == null) {
+      this.listeners = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+    this.listeners.add(listener);
+  }
+
+  /**
+   * Removes a listener from this tag.
+   *
+   * @param listener A listener
+   */
+  public synchronized void removeListener(TagListener listener) {
+    if (this.listeners != null) {
+      this.listeners.remove(listener);
     }
   }
 
+  /**
+   * Returns the number of listeners of this tag.
+   *
+   * @return The number of listeners of this tag.
+   */
+  public synchronized int countListeners() {
+    return this.listeners == null ? 0 : this.listeners.size();
+  }
+
 
   /**
    * Returns the string representation of this class.
@@ -74,4 +134,16 @@ public class Tag extends Observable implements Serializable, Cloneable {
     }
     return false;
   }
+
+  /**
+   * Returns the hash code of this tag, which is the hash code of its label. Since renaming a tag
+   * changes its hash code, a tag has to be taken out of hash based collections before it is renamed
+   * and put back afterwards.
+   *
+   * @return The hash code of this tag.
+   */
+  @Override
+  public int hashCode() {
+    return label.hashCode();
+  }
 }
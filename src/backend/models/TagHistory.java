@@ -0,0 +1,152 @@
+package backend.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The tag states a picture has had, each state being the labels of its tags in order. Instead of a
+ * full copy of every state, each state is stored as the labels removed from and added to the state
+ * before it. A state is only stored in full when its order cannot be reached that way, such as
+ * after a tag was renamed in place. The hash of every state is kept, so a state that is already in
+ * the history is found without comparing it to every state.
+ */
+class TagHistory {
+
+  /**
+   * The changes from each state to the next, starting from no tags.
+   */
+  private ArrayList<Delta> deltas = new ArrayList<>(2);
+
+  /**
+   * The labels of the last state.
+   */
+  private String[] lastState = new String[0];
+
+  /**
+   * The hash of every state, as returned by List.hashCode().
+   */
+  private HashSet<Integer> hashes = new HashSet<>();
+
+  /**
+   * Adds a state to this history, unless it has no tags or is already in this history.
+   *
+   * @param labels The labels of the tags of the state, in order
+   */
+  void record(List<String> labels) {
+    if (labels.isEmpty()) {
+      return;
+    }
+
+    // Only states with a hash that was seen before need to be compared
+    if (this.hashes.contains(labels.hashCode()) && this.contains(labels)) {
+      return;
+    }
+
+    List<String> last = Arrays.asList(this.lastState);
+    List<String> removed = new ArrayList<>(last);
+    removed.removeAll(labels);
+    List<String> added = new ArrayList<>(labels);
+    added.removeAll(last);
+
+    List<String> reached = new ArrayList<>(last);
+    reached.removeAll(removed);
+    reached.addAll(added);
+    if (reached.equals(labels)) {
+      this.deltas.add(new Delta(removed.toArray(new String[0]), added.toArray(new String[0])));
+    } else {
+      this.deltas.add(new Delta(null, labels.toArray(new String[0])));
+    }
+
+    this.lastState = labels.toArray(new String[0]);
+    this.hashes.add(labels.hashCode());
+  }
+
+  /**
+   * Determines whether a state is in this history, replaying the changes one state at a time
+   * without keeping the states.
+   *
+   * @param labels The labels of the tags of the state, in order
+   * @return True if the state is in this history; else false.
+   */
+  private boolean contains(List<String> labels) {
+    List<String> state = new ArrayList<>();
+    for (Delta delta : this.deltas) {
+      state = delta.apply(state);
+      if (state.equals(labels)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns every state in this history, in the order they were added, rebuilt from the changes.
+   * The states are not kept, so each call rebuilds them.
+   *
+   * @return A new list of the labels of each state, each unmodifiable.
+   */
+  List<List<String>> getStates() {
+    List<List<String>> states = new ArrayList<>(this.deltas.size());
+    List<String> state = new ArrayList<>();
+    for (Delta delta : this.deltas) {
+      state = delta.apply(state);
+      states.add(Collections.unmodifiableList(state));
+    }
+    return states;
+  }
+
+  /**
+   * Returns the number of states in this history.
+   *
+   * @return The number of states in this history.
+   */
+  int size() {
+    return this.deltas.size();
+  }
+
+  /**
+   * The change from one state to the next.
+   */
+  private static class Delta {
+
+    /**
+     * The labels removed from the state before, or null if the whole state is in added.
+     */
+    private final String[] removed;
+
+    /**
+     * The labels added to the end of the state before, or the whole state.
+     */
+    private final String[] added;
+
+    /**
+     * Creates the change from one state to the next.
+     *
+     * @param removed The labels removed, or null if added holds the whole state
+     * @param added The labels added to the end, or the whole state
+     */
+    Delta(String[] removed, String[] added) {
+      this.removed = removed;
+      this.added = added;
+    }
+
+    /**
+     * Returns the state this change leads to.
+     *
+     * @param state The state before, which is left as it is
+     * @return A new list of the labels of the next state.
+     */
+    List<String> apply(List<String> state) {
+      if (this.removed == null) {
+        return new ArrayList<>(Arrays.asList(this.added));
+      }
+      List<String> next = new ArrayList<>(state);
+      next.removeAll(Arrays.asList(this.removed));
+      next.addAll(Arrays.asList(this.added));
+      return next;
+    }
+  }
+}
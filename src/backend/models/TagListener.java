@@ -0,0 +1,15 @@
+package backend.models;
+
+/**
+ * A listener for the changes of tags.
+ */
+public interface TagListener {
+
+  /**
+   * Called when a tag got a new label.
+   *
+   * @param tag The tag, with its new label
+   * @param oldLabel The label of the tag before it changed
+   */
+  void tagRenamed(Tag tag, String oldLabel);
+}
@@ -0,0 +1,414 @@
+package backend.models;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A boolean query over the tags of pictures, such as "@family AND @2019 AND NOT @blurry" or
+ * "(@cat OR @dog)". A query is made of tags written as @label, combined with AND, OR, NOT and
+ * parentheses. The keywords are not case sensitive, NOT binds tighter than AND, and AND binds
+ * tighter than OR. Tags written next to each other without a keyword have to all match, as with
+ * AND. A path followed by TagTree.SUBTREE_SUFFIX, such as "@place-canada-*", matches the tag with
+ * that path and every tag under it.
+ *
+ * A query is evaluated by a PictureManager over a set of picture ids per tag, see
+ * PictureManager.getPicturesMatching().
+ */
+public class TagQuery {
+
+  /**
+   * The expression this query was parsed from.
+   */
+  private final String expression;
+
+  /**
+   * The root of the parsed expression.
+   */
+  private final Node root;
+
+  /**
+   * Creates a query from its parsed expression.
+   *
+   * @param expression The expression the query was parsed from
+   * @param root The root of the parsed expression
+   */
+  private TagQuery(String expression, Node root) {
+    this.expression = expression;
+    this.root = root;
+  }
+
+  /**
+   * Parses a query.
+   *
+   * @param expression The query, such as "@cat AND NOT @dog"
+   * @return The parsed query
+   * @throws IllegalArgumentException When the expression is not a valid query
+   */
+  public static TagQuery parse(String expression) {
+    Parser parser = new Parser(expression);
+    Node root = parser.parseOr();
+    if (parser.peek() != null) {
+      throw parser.error("unexpected '" + parser.peek() + "'");
+    }
+    return new TagQuery(expression, root);
+  }
+
+  /**
+   * Returns the labels of the tags used in this query.
+   *
+   * @return The labels of the tags used in this query, in the order they appear
+   */
+  public List<String> getLabels() {
+    List<String> labels = new ArrayList<>();
+    this.root.collectLabels(labels);
+    return labels;
+  }
+
+  /**
+   * Finds the ids of the pictures matching this query. The sets given are not changed.
+   *
+   * @param picturesWithTag Returns the ids of the pictures with a tag label, or null if no picture
+   *     has that tag
+   * @param allPictures The ids of all pictures
+   * @return The ids of the pictures matching this query
+   */
+  BitSet evaluate(Function<String, BitSet> picturesWithTag, BitSet allPictures) {
+    return this.root.evaluate(picturesWithTag, allPictures);
+  }
+
+  /**
+   * Returns the expression this query was parsed from.
+   *
+   * @return The expression this query was parsed from.
+   */
+  @Override
+  public String toString() {
+    return this.expression;
+  }
+
+  /**
+   * A node of a parsed query.
+   */
+  private abstract static class Node {
+
+    /**
+     * Finds the ids of the pictures matching this node. The returned set may be changed by the
+     * caller, so a node never returns one of the sets given to it.
+     *
+     * @param picturesWithTag Returns the ids of the pictures with a tag label, or null
+     * @param allPictures The ids of all pictures
+     * @return The ids of the pictures matching this node
+     */
+    abstract BitSet evaluate(Function<String, BitSet> picturesWithTag, BitSet allPictures);
+
+    /**
+     * Adds the labels of the tags under this node to a list.
+     *
+     * @param labels The list to add to
+     */
+    abstract void collectLabels(List<String> labels);
+  }
+
+  /**
+   * A tag, matching the pictures with that tag.
+   */
+  private static class TagNode extends Node {
+
+    /**
+     * The label of the tag.
+     */
+    private final String label;
+
+    /**
+     * Creates a node matching the pictures with a tag.
+     *
+     * @param label The label of the tag
+     */
+    TagNode(String label) {
+      this.label = label;
+    }
+
+    @Override
+    BitSet evaluate(Function<String, BitSet> picturesWithTag, BitSet allPictures) {
+      BitSet ids = picturesWithTag.apply(this.label);
+      return ids == null ? new BitSet() : (BitSet) ids.clone();
+    }
+
+    @Override
+    void collectLabels(List<String> labels) {
+      labels.add(this.label);
+    }
+  }
+
+  /**
+   * NOT, matching the pictures that do not match its operand.
+   */
+  private static class NotNode extends Node {
+
+    /**
+     * The operand.
+     */
+    private final Node operand;
+
+    /**
+     * Creates a node matching the pictures that do not match the operand.
+     *
+     * @param operand The operand
+     */
+    NotNode(Node operand) {
+      this.operand = operand;
+    }
+
+    @Override
+    BitSet evaluate(Function<String, BitSet> picturesWithTag, BitSet allPictures) {
+      BitSet ids = (BitSet) allPictures.clone();
+      ids.andNot(this.operand.evaluate(picturesWithTag, allPictures));
+      return ids;
+    }
+
+    @Override
+    void collectLabels(List<String> labels) {
+      this.operand.collectLabels(labels);
+    }
+  }
+
+  /**
+   * AND, matching the pictures that match all of its operands. Negated operands are subtracted from
+   * the result instead of being complemented first.
+   */
+  private static class AndNode extends Node {
+
+    /**
+     * The operands.
+     */
+    private final List<Node> operands;
+
+    /**
+     * Creates a node matching the pictures that match all of the operands.
+     *
+     * @param operands The operands, at least two
+     */
+    AndNode(List<Node> operands) {
+      this.operands = operands;
+    }
+
+    @Override
+    BitSet evaluate(Function<String, BitSet> picturesWithTag, BitSet allPictures) {
+      BitSet ids = null;
+      for (Node operand : this.operands) {
+        if (!(operand instanceof NotNode)) {
+          BitSet operandIds = operand.evaluate(picturesWithTag, allPictures);
+          if (ids == null) {
+            ids = operandIds;
+          } else {
+            ids.and(operandIds);
+          }
+          if (ids.isEmpty()) {
+            return ids; // nothing left to narrow down
+          }
+        }
+      }
+
+      if (ids == null) {
+        ids = (BitSet) allPictures.clone();
+      }
+      for (Node operand : this.operands) {
+        if (operand instanceof NotNode) {
+          ids.andNot(((NotNode) operand).operand.evaluate(picturesWithTag, allPictures));
+        }
+      }
+      return ids;
+    }
+
+    @Override
+    void collectLabels(List<String> labels) {
+      for (Node operand : this.operands) {
+        operand.collectLabels(labels);
+      }
+    }
+  }
+
+  /**
+   * OR, matching the pictures that match any of its operands.
+   */
+  private static class OrNode extends Node {
+
+    /**
+     * The operands.
+     */
+    private final List<Node> operands;
+
+    /**
+     * Creates a node matching the pictures that match any of the operands.
+     *
+     * @param operands The operands, at least two
+     */
+    OrNode(List<Node> operands) {
+      this.operands = operands;
+    }
+
+    @Override
+    BitSet evaluate(Function<String, BitSet> picturesWithTag, BitSet allPictures) {
+      BitSet ids = new BitSet();
+      for (Node operand : this.operands) {
+        ids.or(operand.evaluate(picturesWithTag, allPictures));
+      }
+      return ids;
+    }
+
+    @Override
+    void collectLabels(List<String> labels) {
+      for (Node operand : this.operands) {
+        operand.collectLabels(labels);
+      }
+    }
+  }
+
+  /**
+   * A recursive descent parser for queries.
+   */
+  private static class Parser {
+
+    /**
+     * The expression being parsed.
+     */
+    private final String expression;
+
+    /**
+     * The position of the next character to read.
+     */
+    private int position = 0;
+
+    /**
+     * Creates a parser for an expression.
+     *
+     * @param expression The expression to parse
+     */
+    Parser(String expression) {
+      this.expression = expression;
+    }
+
+    /**
+     * Parses operands separated by OR.
+     *
+     * @return The parsed node
+     */
+    Node parseOr() {
+      List<Node> operands = new ArrayList<>();
+      operands.add(this.parseAnd());
+      while ("OR".equalsIgnoreCase(this.peek())) {
+        this.next();
+        operands.add(this.parseAnd());
+      }
+      return operands.size() == 1 ? operands.get(0) : new OrNode(operands);
+    }
+
+    /**
+     * Parses operands separated by AND, or written next to each other.
+     *
+     * @return The parsed node
+     */
+    Node parseAnd() {
+      List<Node> operands = new ArrayList<>();
+      operands.add(this.parseNot());
+      while (true) {
+        String token = this.peek();
+        if ("AND".equalsIgnoreCase(token)) {
+          this.next();
+        } else if (token == null || token.equals(")") || "OR".equalsIgnoreCase(token)) {
+          break;
+        }
+        operands.add(this.parseNot());
+      }
+      return operands.size() == 1 ? operands.get(0) : new AndNode(operands);
+    }
+
+    /**
+     * Parses an operand that may be negated with NOT.
+     *
+     * @return The parsed node
+     */
+    Node parseNot() {
+      if ("NOT".equalsIgnoreCase(this.peek())) {
+        this.next();
+        return new NotNode(this.parseNot());
+      }
+      return this.parsePrimary();
+    }
+
+    /**
+     * Parses a tag or an expression in parentheses.
+     *
+     * @return The parsed node
+     */
+    Node parsePrimary() {
+      String token = this.next();
+      if (token == null) {
+        throw this.error("a tag is missing");
+      } else if (token.equals("(")) {
+        Node node = this.parseOr();
+        if (!")".equals(this.next())) {
+          throw this.error("')' is missing");
+        }
+        return node;
+      } else if (token.startsWith("@") && token.length() > 1) {
+        return new TagNode(token.substring(1));
+      }
+      throw this.error("expected a tag but found '" + token + "'");
+    }
+
+    /**
+     * Returns the next token without reading it.
+     *
+     * @return The next token, or null at the end of the expression
+     */
+    String peek() {
+      int start = this.position;
+      String token = this.next();
+      this.position = start;
+      return token;
+    }
+
+    /**
+     * Reads the next token, which is a parenthesis or a run of characters up to the next space or
+     * parenthesis.
+     *
+     * @return The next token, or null at the end of the expression
+     */
+    String next() {
+      while (this.position < this.expression.length()
+          && Character.isWhitespace(this.expression.charAt(this.position))) {
+        this.position++;
+      }
+      if (this.position == this.expression.length()) {
+        return null;
+      }
+
+      int start = this.position;
+      char c = this.expression.charAt(this.position++);
+      if (c != '(' && c != ')') {
+        while (this.position < this.expression.length()) {
+          c = this.expression.charAt(this.position);
+          if (Character.isWhitespace(c) || c == '(' || c == ')') {
+            break;
+          }
+          this.position++;
+        }
+      }
+      return this.expression.substring(start, this.position);
+    }
+
+    /**
+     * Creates the exception thrown for an invalid expression.
+     *
+     * @param message What is wrong with the expression
+     * @return The exception to throw
+     */
+    IllegalArgumentException error(String message) {
+      return new IllegalArgumentException(
+          "Invalid query \"" + this.expression + "\" at " + this.position + ": " + message);
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package backend.models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * A registry of the tags used by a PictureManager. It interns tags by their label, so every picture
+ * with the same tag shares one Tag instance, and looks tags up by label in constant time. The
+ * registry listens to its tags, so a renamed tag is found by its new label.
+ */
+class TagRegistry implements TagListener {
+
+  /**
+   * The shared instance of each tag, by label.
+   */
+  private final HashMap<String, Tag> tags = new HashMap<>();
+
+  /**
+   * The tags in the order they were added, by their position in that order. A renamed tag keeps
+   * its position.
+   */
+  private final TreeMap<Long, Tag> order = new TreeMap<>();
+
+  /**
+   * The position of each tag in the order they were added.
+   */
+  private final IdentityHashMap<Tag, Long> positions = new IdentityHashMap<>();
+
+  /**
+   * The position of the next tag added.
+   */
+  private long nextPosition;
+
+  /**
+   * The number of times a tag was added, removed or renamed.
+   */
+  private int modCount;
+
+  /**
+   * Returns the shared instance of a tag, adding the tag to this registry if there is no tag with
+   * the same label yet.
+   *
+   * @param tag A tag
+   * @return The tag in this registry with the same label as the given tag.
+   */
+  Tag intern(Tag tag) {
+    Tag sharedTag = this.tags.get(tag.getLabel());
+    if (sharedTag == null) {
+      sharedTag = tag;
+      this.tags.put(tag.getLabel(), tag);
+      this.positions.put(tag, this.nextPosition);
+      this.order.put(this.nextPosition++, tag);
+      tag.addListener(this);
+      this.modCount++;
+    }
+    return sharedTag;
+  }
+
+  /**
+   * Returns the tag in this registry with a label.
+   *
+   * @param label The label of the tag
+   * @return The tag with the label, or null if there is none.
+   */
+  Tag get(String label) {
+    return this.tags.get(label);
+  }
+
+  /**
+   * Determines whether this registry has a tag with the same label as the given tag.
+   *
+   * @param tag A tag
+   * @return True if there is a tag with the same label; else false.
+   */
+  boolean contains(Tag tag) {
+    return this.tags.containsKey(tag.getLabel());
+  }
+
+  /**
+   * Removes the tag with the same label as the given tag from this registry.
+   *
+   * @param tag A tag
+   */
+  void remove(Tag tag) {
+    Tag sharedTag = this.tags.remove(tag.getLabel());
+    if (sharedTag != null) {
+      this.forget(sharedTag);
+      this.modCount++;
+    }
+  }
+
+  /**
+   * Takes a tag that is no longer filed under its label out of the order of the tags, and stops
+   * listening to it.
+   *
+   * @param tag A tag in this registry
+   */
+  private void forget(Tag tag) {
+    this.order.remove(this.positions.remove(tag));
+    tag.removeListener(this);
+  }
+
+  /**
+   * Returns a list of the tags in this registry, in the order they were added.
+   *
+   * @return A list of the tags in this registry.
+   */
+  List<Tag> getTags() {
+    return new ArrayList<>(this.order.values());
+  }
+
+  /**
+   * Returns the number of tags in this registry.
+   *
+   * @return The number of tags in this registry.
+   */
+  int size() {
+    return this.tags.size();
+  }
+
+  /**
+   * Returns the number of times a tag was added to, removed from or renamed in this registry, so a
+   * change is noticed without comparing the tags.
+   *
+   * @return The number of changes to this registry.
+   */
+  int getModCount() {
+    return this.modCount;
+  }
+
+  /**
+   * Files a tag under its new label when it is renamed, keeping its place in the order of the tags.
+   * If another tag already has the new label, the tag that was added first keeps it and the other
+   * one is removed.
+   *
+   * @param tag The tag that was renamed
+   * @param oldLabel The label of the tag before it was renamed
+   */
+  @Override
+  public void tagRenamed(Tag tag, String oldLabel) {
+    Long position = this.positions.get(tag);
+    if (position == null) {
+      return;
+    }
+    if (this.tags.get(oldLabel) == tag) {
+      this.tags.remove(oldLabel);
+    }
+
+    Tag otherTag = this.tags.putIfAbsent(tag.getLabel(), tag);
+    if (otherTag != null && otherTag != tag) {
+      if (this.positions.get(otherTag) < position) {
+        this.forget(tag);
+      } else {
+        this.tags.put(tag.getLabel(), tag);
+        this.forget(otherTag);
+      }
+    }
+    this.modCount++;
+  }
+}
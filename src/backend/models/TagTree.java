@@ -0,0 +1,304 @@
+package backend.models;
+
+import backend.files.FileNameTokenizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * The tags of a PictureManager arranged as a tree, where the label of a tag is its path from the
+ * root, with the levels separated by SEPARATOR, such as "place-canada-toronto". A file name cannot
+ * hold a '/', so the levels of a tag are separated by '-' instead.
+ *
+ * The tree is encoded as intervals: the tags are kept sorted so that the tags under a path come
+ * right after the path itself, and each node of the tree is the interval of the tags under it. The
+ * tags under a path are found with a binary search, and the children of a node are only worked out
+ * when they are asked for. The tree does not change once it is built, a PictureManager builds a new
+ * one when its tags change.
+ */
+public class TagTree {
+
+  /**
+   * The character separating the levels of the label of a tag.
+   */
+  public static final char SEPARATOR = FileNameTokenizer.TAG_LEVEL_SEPARATOR;
+
+  /**
+   * The suffix of a label in a TagQuery that matches every tag under the label, such as
+   * "@place-canada-*".
+   */
+  public static final String SUBTREE_SUFFIX = SEPARATOR + "*";
+
+  /**
+   * Orders labels so the labels under a path come right after the path, by sorting the separator
+   * before any other character.
+   */
+  private static final Comparator<String> LABEL_ORDER = (label1, label2) -> {
+    int length = Math.min(label1.length(), label2.length());
+    for (int i = 0; i < length; i++) {
+      char c1 = label1.charAt(i);
+      char c2 = label2.charAt(i);
+      if (c1 != c2) {
+        if (c1 == SEPARATOR) {
+          return -1;
+        } else if (c2 == SEPARATOR) {
+          return 1;
+        }
+        return c1 - c2;
+      }
+    }
+    return label1.length() - label2.length();
+  };
+
+  /**
+   * The tags, sorted by label in LABEL_ORDER.
+   */
+  private final Tag[] tags;
+
+  /**
+   * The labels of the tags, in the same order.
+   */
+  private final String[] labels;
+
+  /**
+   * The node above every tag.
+   */
+  private final Node root;
+
+  /**
+   * Builds the tree of some tags.
+   *
+   * @param tags The tags
+   */
+  public TagTree(Collection<Tag> tags) {
+    this.tags = tags.toArray(new Tag[0]);
+    Arrays.sort(this.tags, (tag1, tag2) -> LABEL_ORDER.compare(tag1.getLabel(), tag2.getLabel()));
+    this.labels = new String[this.tags.length];
+    for (int i = 0; i < this.tags.length; i++) {
+      this.labels[i] = this.tags[i].getLabel();
+    }
+    this.root = new Node("", 0, this.tags.length);
+  }
+
+  /**
+   * Returns the node above every tag, whose path is "".
+   *
+   * @return The root of this tree.
+   */
+  public Node getRoot() {
+    return this.root;
+  }
+
+  /**
+   * Returns the node of a path. The path does not need to be the label of a tag, such as "place"
+   * when there are only tags under it.
+   *
+   * @param path A path, such as "place-canada"
+   * @return The node of the path, or null if there is no tag with the path or under it.
+   */
+  public Node find(String path) {
+    if (path.isEmpty()) {
+      return this.root;
+    }
+
+    String subtreeStart = path + SEPARATOR;
+    int from = this.search(0, this.labels.length,
+        label -> LABEL_ORDER.compare(label, path) >= 0);
+    int to = this.search(from, this.labels.length,
+        label -> !label.equals(path) && !label.startsWith(subtreeStart));
+    return from == to ? null : new Node(path, from, to);
+  }
+
+  /**
+   * Returns the tags with a path or under it.
+   *
+   * @param path A path, such as "place-canada"
+   * @return The tags under the path, including the tag with the path, if any.
+   */
+  public List<Tag> getTagsUnder(String path) {
+    Node node = this.find(path);
+    return node == null ? Collections.emptyList() : node.getTags();
+  }
+
+  /**
+   * Returns the number of tags in this tree.
+   *
+   * @return The number of tags in this tree.
+   */
+  public int size() {
+    return this.tags.length;
+  }
+
+  /**
+   * Finds the first position in a range of the sorted labels where a condition holds, given that
+   * once it holds it holds for every position after it.
+   *
+   * @param from The first position of the range
+   * @param to The position after the last position of the range
+   * @param condition The condition on a label
+   * @return The first position where the condition holds, or to if there is none.
+   */
+  private int search(int from, int to, Predicate<String> condition) {
+    while (from < to) {
+      int middle = (from + to) >>> 1;
+      if (condition.test(this.labels[middle])) {
+        to = middle;
+      } else {
+        from = middle + 1;
+      }
+    }
+    return from;
+  }
+
+  /**
+   * A path in the tree, which is the interval of the sorted tags with that path or under it.
+   */
+  public class Node {
+
+    /**
+     * The path of this node.
+     */
+    private final String path;
+
+    /**
+     * The position of the first tag under this node.
+     */
+    private final int from;
+
+    /**
+     * The position after the last tag under this node.
+     */
+    private final int to;
+
+    /**
+     * The children of this node, or null if they have not been worked out yet.
+     */
+    private List<Node> children;
+
+    /**
+     * Creates the node of a path.
+     *
+     * @param path The path
+     * @param from The position of the first tag under the path
+     * @param to The position after the last tag under the path
+     */
+    Node(String path, int from, int to) {
+      this.path = path;
+      this.from = from;
+      this.to = to;
+    }
+
+    /**
+     * Returns the path of this node, such as "place-canada".
+     *
+     * @return The path of this node.
+     */
+    public String getPath() {
+      return this.path;
+    }
+
+    /**
+     * Returns the last level of the path of this node, such as "canada".
+     *
+     * @return The last level of the path of this node.
+     */
+    public String getName() {
+      return this.path.substring(this.path.lastIndexOf(SEPARATOR) + 1);
+    }
+
+    /**
+     * Returns the tag whose label is the path of this node.
+     *
+     * @return The tag, or null if the path only has tags under it.
+     */
+    public Tag getTag() {
+      return this.from < this.to && labels[this.from].equals(this.path) ? tags[this.from] : null;
+    }
+
+    /**
+     * Returns the position of the first tag under this node, in the order of getRoot().getTags().
+     *
+     * @return The position of the first tag under this node.
+     */
+    int getStart() {
+      return this.from;
+    }
+
+    /**
+     * Returns the position after the last tag under this node, in the order of
+     * getRoot().getTags().
+     *
+     * @return The position after the last tag under this node.
+     */
+    int getEnd() {
+      return this.to;
+    }
+
+    /**
+     * Returns the tags with the path of this node or under it.
+     *
+     * @return The tags under this node, sorted by label.
+     */
+    public List<Tag> getTags() {
+      return Collections.unmodifiableList(Arrays.asList(tags).subList(this.from, this.to));
+    }
+
+    /**
+     * Returns the number of tags with the path of this node or under it.
+     *
+     * @return The number of tags under this node.
+     */
+    public int getTagCount() {
+      return this.to - this.from;
+    }
+
+    /**
+     * Returns the nodes one level below this node, working them out the first time.
+     *
+     * @return The children of this node, sorted by path.
+     */
+    public synchronized List<Node> getChildren() {
+      if (this.children == null) {
+        List<Node> children = new ArrayList<>();
+        int start = this.getTag() == null ? this.from : this.from + 1;
+        int prefixLength = this.path.isEmpty() ? 0 : this.path.length() + 1;
+        while (start < this.to) {
+          // The child is the next level of the first label left
+          String label = labels[start];
+          int end = label.indexOf(SEPARATOR, prefixLength);
+          String childPath = end == -1 ? label : label.substring(0, end);
+          String subtreeStart = childPath + SEPARATOR;
+          int childTo = search(start, this.to,
+              other -> !other.equals(childPath) && !other.startsWith(subtreeStart));
+          children.add(new Node(childPath, start, childTo));
+          start = childTo;
+        }
+        this.children = Collections.unmodifiableList(children);
+      }
+      return this.children;
+    }
+
+    /**
+     * Determines whether this node has no children.
+     *
+     * @return True if this node has no children; else false.
+     */
+    public boolean isLeaf() {
+      return this.getTag() == null ? this.to - this.from == 0 : this.to - this.from == 1;
+    }
+
+    /**
+     * Returns the last level of the path of this node, as shown in a tree view.
+     *
+     * @return The name of this node.
+     */
+    @Override
+    public String toString() {
+      return this.getName();
+    }
+  }
+}
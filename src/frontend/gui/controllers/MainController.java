@@ -1,12 +1,18 @@
 package frontend.gui.controllers;
 
 
+import backend.commands.AddTagsToPicturesCommand;
+import backend.models.BulkEditResult;
 import backend.models.Picture;
 import backend.models.PictureManager;
+import backend.models.Tag;
+import backend.models.TagQuery;
 import frontend.gui.customcontrols.ListViewCallback;
 import frontend.gui.customcontrols.ListViewChangeListener;
 import frontend.gui.customcontrols.TextDialog;
 import frontend.gui.services.BackendService;
+import frontend.gui.services.LoadDirectoryTask;
+import frontend.gui.windows.SelectionWindow;
 import frontend.gui.windows.SlideShow;
 import frontend.gui.windows.TagManagement;
 import java.awt.Desktop;
@@ -14,11 +20,17 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.ResourceBundle;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.scene.control.Button;
 import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionMode;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
@@ -68,12 +80,30 @@ public class MainController implements Initializable {
   @FXML
   private PictureViewController pictureView;
 
+  /**
+   * The label showing the progress of opening a directory
+   */
+  @FXML
+  private Label loadStatus;
+
+  /**
+   * The button for cancelling the opening of a directory
+   */
+  @FXML
+  private Button cancelLoadButton;
+
+  /**
+   * The task opening a directory, or null if no directory has been opened yet
+   */
+  private LoadDirectoryTask loadTask;
+
   /**
    * Setup the main view. Initialize the backend service, set the list view and set the controller
    */
   @Override
   public void initialize(URL location, ResourceBundle resources) {
     this.backendService = new BackendService();
+    this.backendService.setPicturesChangedListener(() -> Platform.runLater(this::refreshPictures));
     setListView();
     this.pictureView.setBackendService(this.backendService);
     this.pictureView.setMainController(this);
@@ -103,6 +133,7 @@ public class MainController implements Initializable {
   private void setListView() {
     this.pictureListView.setCellFactory(
         new ListViewCallback<>(this.listCellContextMenu, this.getPictureViewController()));
+    this.pictureListView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
 
     // set a listener to listen for changes in selection
     this.pictureListView.getSelectionModel().selectedItemProperty()
@@ -140,12 +171,46 @@ public class MainController implements Initializable {
     if (file != null) {
       String directory = file.getAbsolutePath();
 
-      this.backendService.resetBackendService(directory, recursive);
+      if (this.loadTask != null) {
+        this.loadTask.supersede(); // stop opening the previous directory
+      }
+      this.pictureListView.getItems().clear();
+      this.pictureView.setVisible(false);
+
+      // load the pictures in the background, they are added to the list as they are found
+      this.loadTask = new LoadDirectoryTask(this.backendService, directory, recursive,
+          this.pictureListView.getItems());
+      this.loadStatus.textProperty().bind(this.loadTask.messageProperty());
+      this.cancelLoadButton.visibleProperty().bind(this.loadTask.runningProperty());
+
+      Thread loadThread = new Thread(this.loadTask);
+      loadThread.setDaemon(true);
+      loadThread.start();
+    }
+  }
 
-      pictureListView.getItems().setAll(this.backendService.getPictureManager().getPictures());
+  /**
+   * Stop opening a directory. The pictures loaded so far are kept.
+   */
+  @FXML
+  public void cancelLoading() {
+    if (this.loadTask != null) {
+      this.loadTask.cancel();
     }
   }
 
+  /**
+   * Show the pictures of the picture manager again, after they were changed by other programs
+   */
+  private void refreshPictures() {
+    if (this.loadTask != null && this.loadTask.isRunning()) {
+      return; // the list is replaced once loading is done
+    }
+
+    this.pictureListView.getItems().setAll(this.backendService.getPictureManager().getPictures());
+    this.pictureView.refresh();
+  }
+
   /**
    * Open directory non-recursively
    */
@@ -260,10 +325,57 @@ public class MainController implements Initializable {
   }
 
   /**
-   * Search function for search bar on top of list view
+   * This is the handler for the add tags option in the context menu. It adds tags to all of the
+   * selected pictures at once.
+   */
+  @FXML
+  public void addTagsToSelected() {
+    List<Picture> selectedPictures =
+        new ArrayList<>(this.pictureListView.getSelectionModel().getSelectedItems());
+    if (selectedPictures.isEmpty()) {
+      return;
+    }
+
+    PictureManager pictureManager = this.backendService.getPictureManager();
+    SelectionWindow<Tag> tagSelection = new SelectionWindow<>(this.stage, "Add Tags",
+        "Add Tags", pictureManager.getAvailableTags(), true);
+    List<Tag> tags = tagSelection.show();
+
+    if (tags != null && !tags.isEmpty()) {
+      AddTagsToPicturesCommand addTags =
+          new AddTagsToPicturesCommand(pictureManager, selectedPictures, tags);
+      this.backendService.getCommandManager().addCommand(addTags);
+      addTags.execute();
+
+      BulkEditResult result = addTags.getResult();
+      if (!result.getFailed().isEmpty()) {
+        StringBuilder failures = new StringBuilder("These pictures could not be renamed:\n");
+        for (Picture picture : result.getFailed()) {
+          failures.append(picture.getAbsolutePath()).append("\n");
+        }
+        TextDialog dialog = new TextDialog("Add Tags", failures.toString());
+        dialog.show();
+      }
+      this.pictureView.refresh();
+    }
+  }
+
+  /**
+   * Search function for search bar on top of list view. Text with a tag in it, such as "@cat AND
+   * NOT @dog", is searched as a tag query.
    */
   @FXML
   public void search(KeyEvent keyEvent) {
+    String typed = keyEvent.getCharacter();
+    String query = this.searchBar.getText();
+    if (typed.length() == 1 && !Character.isISOControl(typed.charAt(0))) {
+      query += typed;
+    }
+    if (query.contains("@")) {
+      this.searchByTags(query);
+      return;
+    }
+
     String filter = keyEvent.getCharacter().toLowerCase();
     String curText = this.searchBar.getText() + filter;
     if (filter.length() == 1 && Character.isLetterOrDigit(filter.charAt(0))) {
@@ -281,6 +393,29 @@ public class MainController implements Initializable {
     }
   }
 
+  /**
+   * Shows the pictures matching a tag query. While the query is still being typed and is not valid
+   * yet, the list is left as it is.
+   *
+   * @param query The tag query
+   */
+  private void searchByTags(String query) {
+    TagQuery tagQuery;
+    try {
+      tagQuery = TagQuery.parse(query);
+    } catch (IllegalArgumentException e) {
+      return;
+    }
+
+    ArrayList<Picture> filteredPictures = new ArrayList<>();
+    Iterator<Picture> matches =
+        this.getBackendService().getPictureManager().getPicturesMatching(tagQuery);
+    while (matches.hasNext()) {
+      filteredPictures.add(matches.next());
+    }
+    this.pictureListView.getItems().setAll(filteredPictures);
+  }
+
   /**
    * Start the slide show
    */
@@ -0,0 +1,48 @@
+package frontend.gui.customcontrols;
+
+import backend.models.TagTree;
+import javafx.collections.ObservableList;
+import javafx.scene.control.TreeItem;
+
+/**
+ * A tree item for a node of a tag tree. Its children are only created the first time it is
+ * expanded, so a tree of thousands of tags opens right away.
+ */
+public class TagTreeItem extends TreeItem<TagTree.Node> {
+
+  /**
+   * True if the children of this item have been created
+   */
+  private boolean childrenLoaded = false;
+
+  /**
+   * Constructs a tree item for a node of a tag tree
+   *
+   * @param node the node
+   */
+  public TagTreeItem(TagTree.Node node) {
+    super(node);
+  }
+
+  /**
+   * Returns the children of this item, creating them the first time
+   */
+  @Override
+  public ObservableList<TreeItem<TagTree.Node>> getChildren() {
+    if (!this.childrenLoaded) {
+      this.childrenLoaded = true;
+      for (TagTree.Node child : this.getValue().getChildren()) {
+        super.getChildren().add(new TagTreeItem(child));
+      }
+    }
+    return super.getChildren();
+  }
+
+  /**
+   * Determines whether this item has no children, without creating them
+   */
+  @Override
+  public boolean isLeaf() {
+    return this.getValue().isLeaf();
+  }
+}
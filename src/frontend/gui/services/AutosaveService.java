@@ -0,0 +1,358 @@
+package frontend.gui.services;
+
+import backend.models.AppSettings;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves the app settings in the background a moment after the pictures or the tags change, so
+ * nothing is written on the javafx thread and little is lost if the program stops unexpectedly.
+ *
+ * A burst of changes, such as a bulk edit, is saved once: the save waits until there has been no
+ * change for a short delay, but never longer than a maximum delay after the first change that was
+ * not saved. Each save is captured with the picture manager locked, so no bulk edit is saved half
+ * done, and is written to the file after the manager is unlocked, see AppSettings.prepareSave().
+ * It keeps metrics on the saves, such as how long they took and how many bytes they wrote.
+ *
+ * A save that fails is tried again, waiting twice as long after each failure in a row, up to the
+ * maximum delay, so a save that can never be written is not tried over and over.
+ */
+public class AutosaveService {
+
+  /**
+   * Captures the app settings to save, or returns null if saves are blocked, see
+   * BackendService.prepareSave()
+   */
+  private final Callable<AppSettings.PendingSave> prepareSave;
+
+  /**
+   * How long to wait after the last change before saving, in milliseconds
+   */
+  private final long delayMillis;
+
+  /**
+   * The longest to wait after the first change that was not saved, in milliseconds
+   */
+  private final long maxDelayMillis;
+
+  /**
+   * The thread the saves are made on
+   */
+  private final ScheduledThreadPoolExecutor executor;
+
+  /**
+   * The save waiting for the changes to stop, or null if there is none
+   */
+  private ScheduledFuture<?> scheduledSave;
+
+  /**
+   * When the first change that was not saved was made, by System.nanoTime()
+   */
+  private long firstChangeNanos;
+
+  /**
+   * When the last change was made, by System.nanoTime()
+   */
+  private long lastChangeNanos;
+
+  /**
+   * The number of saves that failed since the last one that did not
+   */
+  private int failuresInARow;
+
+  /**
+   * When the next save may be tried after a save that failed, by System.nanoTime(), or null if the
+   * last save did not fail
+   */
+  private Long retryNanos;
+
+  /**
+   * The number of saves that wrote something
+   */
+  private volatile int saveCount;
+
+  /**
+   * The number of saves that could not be written
+   */
+  private volatile int failedCount;
+
+  /**
+   * The number of bytes written by all the saves
+   */
+  private volatile long bytesWritten;
+
+  /**
+   * How long the last save took, from capturing it to writing it, in milliseconds
+   */
+  private volatile long lastSaveMillis;
+
+  /**
+   * How long the picture manager was locked to capture the last save, in milliseconds
+   */
+  private volatile long lastCaptureMillis;
+
+  /**
+   * How long the slowest save took, in milliseconds
+   */
+  private volatile long maxSaveMillis;
+
+  /**
+   * How long all the saves took, in milliseconds
+   */
+  private volatile long totalSaveMillis;
+
+  /**
+   * Creates an autosave service for the app settings of a backend service.
+   *
+   * @param backendService the backend service whose app settings are saved
+   * @param delayMillis how long to wait after the last change before saving, in milliseconds
+   * @param maxDelayMillis the longest to wait after the first change that was not saved, in
+   * milliseconds
+   */
+  public AutosaveService(BackendService backendService, long delayMillis, long maxDelayMillis) {
+    this(backendService::prepareSave, delayMillis, maxDelayMillis);
+  }
+
+  /**
+   * Creates an autosave service for the app settings captured by a function, such as
+   * AppSettings.prepareSave().
+   *
+   * @param prepareSave captures the app settings to save, with the lock that prepareSave() takes,
+   * or returns null if they must not be saved
+   * @param delayMillis how long to wait after the last change before saving, in milliseconds
+   * @param maxDelayMillis the longest to wait after the first change that was not saved, in
+   * milliseconds
+   */
+  public AutosaveService(Callable<AppSettings.PendingSave> prepareSave, long delayMillis,
+      long maxDelayMillis) {
+    this.prepareSave = prepareSave;
+    this.delayMillis = delayMillis;
+    this.maxDelayMillis = maxDelayMillis;
+
+    this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "Autosave");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+  }
+
+  /**
+   * Marks the app settings as changed, so they are saved once the changes stop. This is called for
+   * every change, so it only schedules a save when none is scheduled yet.
+   */
+  public synchronized void changed() {
+    if (this.executor.isShutdown()) {
+      return;
+    }
+
+    this.lastChangeNanos = System.nanoTime();
+    if (this.scheduledSave == null) {
+      this.firstChangeNanos = this.lastChangeNanos;
+      this.scheduledSave =
+          this.executor.schedule(this::saveWhenQuiet, this.delayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Saves the app settings in the background as soon as possible, without waiting for the changes
+   * to stop.
+   *
+   * @return the save, which is done once the app settings are written, or right away if this
+   * service is closed
+   */
+  public synchronized Future<?> saveNow() {
+    if (this.executor.isShutdown()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    if (this.scheduledSave != null) {
+      this.scheduledSave.cancel(false);
+      this.scheduledSave = null;
+    }
+    return this.executor.submit(this::save);
+  }
+
+  /**
+   * Saves the app settings one last time and waits until they are written. Changes made after
+   * this are not saved.
+   */
+  public void close() {
+    Future<?> save;
+    synchronized (this) {
+      if (this.executor.isShutdown()) {
+        return;
+      }
+      save = this.saveNow();
+      this.executor.shutdown();
+    }
+
+    try {
+      save.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // save() counts the saves that fail, so there is nothing left to do
+    }
+  }
+
+  /**
+   * Saves the app settings if there has been no change for the delay, or the first change that was
+   * not saved was made the maximum delay ago. Otherwise, waits until then. Does nothing once the
+   * service is closed, since close() saves the app settings itself.
+   */
+  private void saveWhenQuiet() {
+    synchronized (this) {
+      if (this.executor.isShutdown()) {
+        this.scheduledSave = null;
+        return;
+      }
+
+      long now = System.nanoTime();
+      long due = Math.min(this.lastChangeNanos + TimeUnit.MILLISECONDS.toNanos(this.delayMillis),
+          this.firstChangeNanos + TimeUnit.MILLISECONDS.toNanos(this.maxDelayMillis));
+      if (this.retryNanos != null && due - this.retryNanos < 0) {
+        due = this.retryNanos;
+      }
+      if (due - now > 0) {
+        this.scheduledSave = this.executor.schedule(this::saveWhenQuiet, due - now,
+            TimeUnit.NANOSECONDS);
+        return;
+      }
+      // the changes made from now on go to the next save
+      this.scheduledSave = null;
+    }
+    this.save();
+  }
+
+  /**
+   * Captures the app settings and writes them, on the autosave thread. A save that cannot be
+   * written is tried again later, along with the changes made in the meantime, see retry(). Nothing
+   * is tried again when saves are blocked, since they stay blocked until the program restarts.
+   */
+  private void save() {
+    long start = System.nanoTime();
+    try {
+      AppSettings.PendingSave save = this.prepareSave.call();
+      if (save == null) {
+        return; // saves are blocked
+      }
+      long captured = System.nanoTime();
+      long size = save.write();
+      this.succeeded();
+      if (size == 0) {
+        return; // nothing changed
+      }
+
+      long saveMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      this.lastCaptureMillis = TimeUnit.NANOSECONDS.toMillis(captured - start);
+      this.lastSaveMillis = saveMillis;
+      this.maxSaveMillis = Math.max(this.maxSaveMillis, saveMillis);
+      this.totalSaveMillis += saveMillis;
+      this.bytesWritten += size;
+      this.saveCount++;
+    } catch (Exception e) {
+      this.failedCount++;
+      this.retry();
+    }
+  }
+
+  /**
+   * Stops waiting before the saves, since the last one did not fail.
+   */
+  private synchronized void succeeded() {
+    this.failuresInARow = 0;
+    this.retryNanos = null;
+  }
+
+  /**
+   * Schedules the save that failed to be tried again, after the delay doubled for each failure in a
+   * row, but never more than the maximum delay. The saves for the changes made meanwhile wait as
+   * well.
+   */
+  private synchronized void retry() {
+    if (this.executor.isShutdown()) {
+      return;
+    }
+
+    this.failuresInARow++;
+    long retryMillis =
+        Math.min(this.delayMillis << Math.min(this.failuresInARow, 30), this.maxDelayMillis);
+    long now = System.nanoTime();
+    this.retryNanos = now + TimeUnit.MILLISECONDS.toNanos(retryMillis);
+    if (this.scheduledSave == null) {
+      this.firstChangeNanos = now;
+      this.lastChangeNanos = now;
+      this.scheduledSave =
+          this.executor.schedule(this::saveWhenQuiet, retryMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Returns the number of saves that wrote something.
+   *
+   * @return The number of saves that wrote something.
+   */
+  public int getSaveCount() {
+    return this.saveCount;
+  }
+
+  /**
+   * Returns the number of saves that could not be written.
+   *
+   * @return The number of saves that could not be written.
+   */
+  public int getFailedCount() {
+    return this.failedCount;
+  }
+
+  /**
+   * Returns the number of bytes written by all the saves.
+   *
+   * @return The number of bytes written by all the saves.
+   */
+  public long getBytesWritten() {
+    return this.bytesWritten;
+  }
+
+  /**
+   * Returns how long the last save took, from capturing it to writing it.
+   *
+   * @return How long the last save took, in milliseconds.
+   */
+  public long getLastSaveMillis() {
+    return this.lastSaveMillis;
+  }
+
+  /**
+   * Returns how long the picture manager was locked to capture the last save.
+   *
+   * @return How long the last save took to capture, in milliseconds.
+   */
+  public long getLastCaptureMillis() {
+    return this.lastCaptureMillis;
+  }
+
+  /**
+   * Returns how long the slowest save took.
+   *
+   * @return How long the slowest save took, in milliseconds.
+   */
+  public long getMaxSaveMillis() {
+    return this.maxSaveMillis;
+  }
+
+  /**
+   * Returns how long the saves took on average.
+   *
+   * @return How long the saves took on average, in milliseconds, or 0 if there was none.
+   */
+  public long getAverageSaveMillis() {
+    int saveCount = this.saveCount;
+    return saveCount == 0 ? 0 : this.totalSaveMillis / saveCount;
+  }
+}
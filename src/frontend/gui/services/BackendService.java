@@ -2,17 +2,28 @@ package frontend.gui.services;
 
 import backend.commands.CommandManager;
 import backend.commands.RenamePictureCommand;
+import backend.files.DirectoryChangeListener;
+import backend.files.DirectoryWatcher;
+import backend.files.FileManager;
+import backend.files.ScanSnapshot;
+import backend.models.AliasNormalizer;
 import backend.models.AppSettings;
 import backend.models.Picture;
+import backend.models.PictureLoadListener;
 import backend.models.PictureManager;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Collection;
 
 /**
  * This class is used by the main controller to make calls to the backend (model)
+ *
+ * It watches the directory that is open, so pictures created, deleted or renamed by other programs
+ * are picked up without opening the directory again. Changes are saved in the background by an
+ * AutosaveService.
  */
-public class BackendService {
+public class BackendService implements DirectoryChangeListener {
 
   /**
    * The CommandManager used by our program
@@ -29,28 +40,92 @@ public class BackendService {
    */
   private AppSettings appSettings;
 
+  /**
+   * Watches the directory of the picture manager for changes made by other programs
+   */
+  private DirectoryWatcher watcher;
+
+  /**
+   * Renames the files of the pictures with a tag whose label is an alias, or null if it is not
+   * running
+   */
+  private AliasNormalizer aliasNormalizer;
+
+  /**
+   * Saves the app settings in the background once they change
+   */
+  private AutosaveService autosave;
+
+  /**
+   * True if the app settings file could not be read nor set aside, so it must not be saved over
+   */
+  private boolean isSaveBlocked;
+
+  /**
+   * Called when the pictures of the picture manager changed because of other programs
+   */
+  private Runnable picturesChangedListener;
+
   /**
    * The file name of the help file to be displayed
    */
   private static final String HELP_LOG = "extraHelp";
 
+  /**
+   * The file name of the snapshot of the directories scanned before
+   */
+  private static final String SCAN_SNAPSHOT = "ScanSnapshot";
+
+  /**
+   * The largest number of pictures renamed at once when the aliases of tags are normalized
+   */
+  private static final int NORMALIZE_BATCH_SIZE = 50;
+
+  /**
+   * How long to wait between two batches of pictures when the aliases of tags are normalized
+   */
+  private static final long NORMALIZE_PAUSE_MILLIS = 500;
+
+  /**
+   * How long to wait after the last change before saving the app settings
+   */
+  private static final long AUTOSAVE_DELAY_MILLIS = 2000;
+
+  /**
+   * The longest to wait after the first change that was not saved before saving the app settings
+   */
+  private static final long AUTOSAVE_MAX_DELAY_MILLIS = 30000;
+
   /**
    * Constructs a new BackendService. When the app settings was not found /corrupted / locked by
    * another application, it will create a new app settings file.
    */
   public BackendService() {
+    // directories that have not changed since the last run are not listed again
+    FileManager.setScanSnapshot(ScanSnapshot.loadFromFile(SCAN_SNAPSHOT));
 
     try {
       this.commandManager = new CommandManager();
       this.pictureManager = new PictureManager();
-      this.appSettings = AppSettings.loadFromFile();
+      // the pictures are only loaded once a directory is opened
+      this.appSettings = AppSettings.openFromFile();
 
       // try to use previously existing app settings
       this.appSettings.addPicToManager(pictureManager);
     } catch (IOException | ClassNotFoundException e) {
       // if it fails and we don't have app settings, make new app settings
       this.appSettings = new AppSettings();
+      try {
+        // a file that exists but cannot be read is kept, instead of being saved over
+        AppSettings.setAside();
+      } catch (IOException e1) {
+        this.isSaveBlocked = true;
+      }
     }
+
+    this.autosave = new AutosaveService(this, AUTOSAVE_DELAY_MILLIS, AUTOSAVE_MAX_DELAY_MILLIS);
+    this.appSettings.setChangeListener(this.autosave::changed);
+    this.pictureManager.setTagsChangedListener(this.autosave::changed);
   }
 
   /**
@@ -60,16 +135,162 @@ public class BackendService {
    * @param directory The directory to get pictures from
    * @param isRecursive True if you want to collect pictures recursively, otherwise false
    */
-  public void resetBackendService(String directory, boolean isRecursive) {
-    this.save();
+  public synchronized void resetBackendService(String directory, boolean isRecursive) {
+    this.keepChanges();
     try {
-      this.pictureManager = new PictureManager(directory, isRecursive);
-      this.appSettings.addPicToManager(pictureManager);
+      PictureManager manager = new PictureManager(directory, isRecursive);
+      this.appSettings.loadDirectory(directory, isRecursive);
+      this.appSettings.addPicToManager(manager);
+      this.trackChanges(manager);
+      this.replacePictureManager(manager);
     } catch (IOException e) {
       // This should never occur
     }
   }
 
+  /**
+   * Resets the backend service by supplying the PictureManager with a new set of pictures in a
+   * specific location in the OS, handing the pictures to the listener while they are loaded. This
+   * may take a while, so it should not be called from the javafx thread.
+   *
+   * @param directory The directory to get pictures from
+   * @param isRecursive True if you want to collect pictures recursively, otherwise false
+   * @param listener The listener receiving the pictures as they are loaded. If the loading is
+   * cancelled, the pictures loaded so far become the new picture manager. Either way, the listener
+   * is then given the pictures of the picture manager in use, before another directory can be
+   * opened.
+   * @throws IOException Thrown when the directory does not exist or cannot be read, in which case
+   * the current picture manager is kept
+   */
+  public synchronized void resetBackendService(String directory, boolean isRecursive,
+      PictureLoadListener listener) throws IOException {
+    this.keepChanges();
+    try {
+      PictureManager manager = new PictureManager(directory, isRecursive, listener);
+      this.appSettings.loadDirectory(directory, isRecursive);
+      this.appSettings.addPicToManager(manager);
+      this.trackChanges(manager);
+      this.replacePictureManager(manager);
+    } finally {
+      listener.loadFinished(this.pictureManager.getPictures());
+    }
+  }
+
+  /**
+   * Makes a new picture manager the current one and closes the previous one, which would otherwise
+   * keep listening to the pictures they share and rename their files too. The directory of the new
+   * one is watched from then on.
+   *
+   * @param manager the new picture manager
+   */
+  private void replacePictureManager(PictureManager manager) {
+    PictureManager oldManager = this.pictureManager;
+    this.pictureManager = manager;
+    this.watchDirectory();
+    oldManager.close();
+  }
+
+  /**
+   * Hands the pictures of the current picture manager to the app settings before it is replaced,
+   * so they are saved by the next autosave, and saves the snapshot of the scanned directories.
+   */
+  private void keepChanges() {
+    this.appSettings.addPicFromManager(this.pictureManager);
+    this.saveScanSnapshot();
+  }
+
+  /**
+   * Hands the pictures of a new picture manager to the app settings, which saves the pictures that
+   * were not saved before and listens to all of them, and autosaves when its tags change.
+   *
+   * @param manager the new picture manager
+   */
+  private void trackChanges(PictureManager manager) {
+    this.appSettings.addPicFromManager(manager);
+    manager.setTagsChangedListener(this.autosave::changed);
+  }
+
+  /**
+   * Starts renaming the files of the pictures with a tag whose label is an alias in the background,
+   * a few pictures at a time, so the tags in their names are the tags the aliases stand for. Does
+   * nothing if it is already running.
+   */
+  public synchronized void normalizeTagAliases() {
+    if (this.aliasNormalizer == null || !this.aliasNormalizer.isRunning()) {
+      this.aliasNormalizer = new AliasNormalizer(this.pictureManager, NORMALIZE_BATCH_SIZE,
+          NORMALIZE_PAUSE_MILLIS);
+    }
+  }
+
+  /**
+   * Starts watching the directory of the current picture manager, and stops watching the previous
+   * one. The aliases of the previous one are no longer normalized.
+   */
+  private void watchDirectory() {
+    if (this.aliasNormalizer != null) {
+      this.aliasNormalizer.close();
+      this.aliasNormalizer = null;
+    }
+    if (this.watcher != null) {
+      this.watcher.close();
+    }
+
+    try {
+      this.watcher = new DirectoryWatcher(this.pictureManager.getCurrDir(),
+          this.pictureManager.isRecursive(), this);
+    } catch (IOException e) {
+      // the directory can still be used, it just won't pick up outside changes
+      this.watcher = null;
+    }
+  }
+
+  /**
+   * Sets the listener called when the pictures of the picture manager changed because of other
+   * programs. It is called from a background thread.
+   *
+   * @param listener the listener
+   */
+  public void setPicturesChangedListener(Runnable listener) {
+    this.picturesChangedListener = listener;
+  }
+
+  /**
+   * Applies a batch of changes made by other programs to the picture manager
+   *
+   * @param created the absolute paths of the images that were created
+   * @param deleted the absolute paths of the images and directories that were deleted
+   */
+  @Override
+  public void filesChanged(Collection<String> created, Collection<String> deleted) {
+    if (this.pictureManager.applyFileChanges(created, deleted)) {
+      this.autosave.changed(); // the pictures created are handed to the app settings when saved
+      this.notifyPicturesChanged();
+    }
+  }
+
+  /**
+   * Reads the directory again when the changes made by other programs were lost
+   */
+  @Override
+  public void changesLost() {
+    try {
+      if (this.pictureManager.resync()) {
+        this.notifyPicturesChanged();
+      }
+    } catch (IOException e) {
+      // the directory is gone, there is nothing left to show
+    }
+  }
+
+  /**
+   * Calls the pictures changed listener, if there is one
+   */
+  private void notifyPicturesChanged() {
+    if (this.picturesChangedListener != null) {
+      this.picturesChangedListener.run();
+    }
+  }
+
   /**
    * Returns the current command manager.
    *
@@ -98,15 +319,60 @@ public class BackendService {
   }
 
   /**
-   * Saves the app settings object called Config. It will also update the app settings by appending
-   * it with the list of pictures from the PictureManager
+   * Returns the service saving the app settings in the background, which has metrics on the saves.
+   *
+   * @return The autosave service.
+   */
+  public AutosaveService getAutosaveService() {
+    return this.autosave;
+  }
+
+  /**
+   * Saves the app settings object called Config in the background right away, without waiting for
+   * the changes to stop. See AutosaveService.
    */
   public void save() {
+    this.autosave.saveNow();
+  }
+
+  /**
+   * Saves the app settings object called Config and the snapshot of the scanned directories before
+   * the program exits, and waits until they are written.
+   */
+  public void close() {
+    this.autosave.close();
+    this.saveScanSnapshot();
+  }
+
+  /**
+   * Captures the app settings to be saved, after updating them with the pictures from the
+   * PictureManager. The picture manager is locked meanwhile, so no bulk edit is captured half
+   * done, and so are the app settings, so this only takes as long as encoding what changed. It is
+   * called by the autosave service, which then writes the save.
+   *
+   * @return The save, to be written on the same thread, or null if the app settings file could
+   * not be read when the program started, so it must not be saved over
+   * @throws IOException When the pictures that are not loaded yet cannot be read
+   */
+  AppSettings.PendingSave prepareSave() throws IOException {
+    if (this.isSaveBlocked) {
+      return null;
+    }
+    PictureManager manager = this.pictureManager;
+    synchronized (manager) {
+      this.appSettings.addPicFromManager(manager);
+      return this.appSettings.prepareSave();
+    }
+  }
+
+  /**
+   * Saves the snapshot of the scanned directories
+   */
+  private void saveScanSnapshot() {
     try {
-      this.appSettings.addPicFromManager(this.pictureManager);
-      this.appSettings.save();
+      FileManager.getScanSnapshot().save(SCAN_SNAPSHOT);
     } catch (IOException e) {
-      // This should never happen, but if it does just don't save
+      // This should never happen, but if it does the directories are just scanned again
     }
   }
 
@@ -0,0 +1,142 @@
+package frontend.gui.services;
+
+import backend.models.Picture;
+import backend.models.PictureLoadListener;
+import backend.models.PictureManager;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+
+/**
+ * A background task that opens a directory, adding the pictures to a list as they are loaded so
+ * the javafx thread never waits for the whole directory.
+ */
+public class LoadDirectoryTask extends Task<PictureManager> implements PictureLoadListener {
+
+  /**
+   * The backend service whose picture manager is replaced
+   */
+  private BackendService backendService;
+
+  /**
+   * The directory to open
+   */
+  private String directory;
+
+  /**
+   * True if the directory is opened recursively
+   */
+  private boolean recursive;
+
+  /**
+   * The list the loaded pictures are added to
+   */
+  private ObservableList<Picture> pictures;
+
+  /**
+   * True once another directory is being opened into the list, so this task leaves it alone
+   */
+  private volatile boolean isSuperseded;
+
+  /**
+   * Constructs a task that opens a directory
+   *
+   * @param backendService the backend service whose picture manager is replaced
+   * @param directory the directory to open
+   * @param recursive true to open the directory recursively
+   * @param pictures the list the loaded pictures are added to
+   */
+  public LoadDirectoryTask(BackendService backendService, String directory, boolean recursive,
+      ObservableList<Picture> pictures) {
+    this.backendService = backendService;
+    this.directory = directory;
+    this.recursive = recursive;
+    this.pictures = pictures;
+  }
+
+  /**
+   * Opens the directory and returns the new picture manager
+   *
+   * @throws IOException Thrown when the directory does not exist or cannot be read
+   */
+  @Override
+  protected PictureManager call() throws IOException {
+    this.updateMessage("Loading...");
+    this.backendService.resetBackendService(this.directory, this.recursive, this);
+    return this.backendService.getPictureManager();
+  }
+
+  /**
+   * Adds a batch of loaded pictures to the list on the javafx thread
+   *
+   * @param batch the pictures that were just loaded
+   * @param loadedCount the number of pictures loaded so far
+   */
+  @Override
+  public void picturesLoaded(List<Picture> batch, int loadedCount) {
+    Platform.runLater(() -> {
+      if (!this.isCancelled()) {
+        this.pictures.addAll(batch);
+      }
+    });
+    this.updateMessage("Loading... " + loadedCount + " pictures");
+  }
+
+  /**
+   * Replaces the loaded pictures with the pictures of the picture manager in use once the loading
+   * is over, also when it was cancelled or failed. The picture manager may have replaced the
+   * loaded pictures with the pictures restored from the app settings, and only its own pictures
+   * are renamed and saved when they are edited.
+   *
+   * @param loaded the pictures of the picture manager in use
+   */
+  @Override
+  public void loadFinished(List<Picture> loaded) {
+    Platform.runLater(() -> {
+      if (!this.isSuperseded) {
+        this.pictures.setAll(loaded);
+      }
+    });
+  }
+
+  /**
+   * Stops this task because another directory is opened into the list, so the pictures of this
+   * task are not shown anymore, even if it is still finishing.
+   */
+  public void supersede() {
+    this.isSuperseded = true;
+    this.cancel();
+  }
+
+  /**
+   * Shows the number of pictures loaded
+   */
+  @Override
+  protected void succeeded() {
+    this.updateMessage(this.getValue().getPictures().size() + " pictures");
+  }
+
+  /**
+   * Shows why the directory could not be opened. The pictures of the picture manager that is kept
+   * are shown instead, see loadFinished().
+   */
+  @Override
+  protected void failed() {
+    Throwable error = this.getException();
+    String reason = error instanceof NoSuchFileException ? "directory not found"
+        : error.getMessage() != null ? error.getMessage() : error.toString();
+    this.updateMessage("Could not open " + this.directory + ": " + reason);
+  }
+
+  /**
+   * Shows that the loading was cancelled. The pictures loaded so far are shown once the picture
+   * manager keeping them is in use, see loadFinished().
+   */
+  @Override
+  protected void cancelled() {
+    this.updateMessage("Loading cancelled");
+  }
+}
@@ -0,0 +1,76 @@
+package frontend.gui.services;
+
+import backend.commands.RenameTagCommand;
+import backend.models.BulkEditListener;
+import backend.models.BulkEditResult;
+import javafx.concurrent.Task;
+
+/**
+ * A background task that executes a command renaming a tag, so the javafx thread does not wait
+ * while the files of all the pictures with the tag are renamed. The progress and message of the
+ * task follow the number of files renamed.
+ */
+public class RenameTagTask extends Task<BulkEditResult> implements BulkEditListener {
+
+  /**
+   * The command that renames the tag
+   */
+  private RenameTagCommand command;
+
+  /**
+   * Constructs a task that executes a command renaming a tag
+   *
+   * @param command the command that renames the tag
+   */
+  public RenameTagTask(RenameTagCommand command) {
+    this.command = command;
+  }
+
+  /**
+   * Executes the command and returns its result
+   */
+  @Override
+  protected BulkEditResult call() {
+    this.updateMessage("Renaming...");
+    this.command.setListener(this);
+    try {
+      this.command.execute();
+    } finally {
+      this.command.setListener(null);
+    }
+    return this.command.getResult();
+  }
+
+  /**
+   * Shows the number of files renamed so far
+   *
+   * @param renamedCount the number of files done so far
+   * @param totalCount the number of files that need to be renamed
+   */
+  @Override
+  public void filesRenamed(int renamedCount, int totalCount) {
+    this.updateProgress(renamedCount, totalCount);
+    this.updateMessage("Renaming... " + renamedCount + " of " + totalCount + " pictures");
+  }
+
+  /**
+   * Shows how many pictures were renamed
+   */
+  @Override
+  protected void succeeded() {
+    BulkEditResult result = this.getValue();
+    if (result.getFailed().isEmpty()) {
+      this.updateMessage("Renamed " + result.getEdited().size() + " pictures");
+    } else {
+      this.updateMessage("Rename failed");
+    }
+  }
+
+  /**
+   * Shows that the rename failed
+   */
+  @Override
+  protected void failed() {
+    this.updateMessage("Rename failed");
+  }
+}
@@ -43,11 +43,12 @@ public class Main extends Application {
   }
 
   /**
-   * Saves the program state
+   * Saves the program state, waiting until it is written since the autosave thread does not
+   * outlive the program
    */
   @Override
   public void stop() {
-    this.mainController.save();
+    this.mainController.getBackendService().close();
   }
 
 
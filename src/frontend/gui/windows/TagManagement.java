@@ -1,10 +1,17 @@
 package frontend.gui.windows;
 
+import backend.commands.MergeTagsCommand;
 import backend.commands.RenameTagCommand;
+import backend.models.BulkEditResult;
+import backend.models.Picture;
 import backend.models.Tag;
+import backend.models.TagTree;
 import frontend.gui.controllers.MainController;
 import frontend.gui.customcontrols.ListViewCallback;
 import frontend.gui.customcontrols.Renamable;
+import frontend.gui.customcontrols.TagTreeItem;
+import frontend.gui.customcontrols.TextDialog;
+import frontend.gui.services.RenameTagTask;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -16,10 +23,14 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.SelectionMode;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextInputDialog;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
 import javafx.scene.input.KeyEvent;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
@@ -45,6 +56,12 @@ public class TagManagement implements ChangeListener<Tag>, Renamable {
   @FXML
   private ListView<Tag> tagListView;
 
+  /**
+   * The tags as a tree, by the levels of their labels
+   */
+  @FXML
+  private TreeView<TagTree.Node> tagTreeView;
+
   /**
    * Search box to search for tags
    */
@@ -57,6 +74,18 @@ public class TagManagement implements ChangeListener<Tag>, Renamable {
   @FXML
   private Button renameTagButton;
 
+  /**
+   * Shows the progress of renaming a tag
+   */
+  @FXML
+  private Label renameStatus;
+
+  /**
+   * The share of the files renamed so far while renaming a tag
+   */
+  @FXML
+  private ProgressBar renameProgress;
+
   /**
    * Constructs the tag manager window
    *
@@ -102,14 +131,42 @@ public class TagManagement implements ChangeListener<Tag>, Renamable {
     this.tagListView.getSelectionModel().selectedItemProperty().addListener(this);
 
     this.tagListView.setCellFactory(new ListViewCallback<>(null, this));
+
+    this.tagTreeView.setShowRoot(false);
+    this.tagTreeView.getSelectionModel().selectedItemProperty()
+        .addListener((observable, oldItem, newItem) -> this.showTagsUnder(newItem));
+    this.updateTagTree();
+  }
+
+  /**
+   * Rebuilds the tree of tags. Only the first level is created until a node is expanded.
+   */
+  private void updateTagTree() {
+    TagTree tree = this.mainController.getBackendService().getPictureManager().getTagTree();
+    this.tagTreeView.setRoot(new TagTreeItem(tree.getRoot()));
+  }
+
+  /**
+   * Shows the tags under a node of the tree in the list of tags
+   *
+   * @param item the selected item of the tree, or null to show all the tags
+   */
+  private void showTagsUnder(TreeItem<TagTree.Node> item) {
+    if (item == null) {
+      this.tagListView.getItems()
+          .setAll(this.mainController.getBackendService().getPictureManager().getAvailableTags());
+    } else {
+      this.tagListView.getItems().setAll(item.getValue().getTags());
+    }
   }
 
   /**
-   * Updates the list of tags
+   * Updates the list and the tree of tags
    */
   private void updateTagList() {
     this.tagListView.getItems()
         .setAll(this.mainController.getBackendService().getPictureManager().getAvailableTags());
+    this.updateTagTree();
   }
 
   /**
@@ -171,6 +228,47 @@ public class TagManagement implements ChangeListener<Tag>, Renamable {
     }
   }
 
+  /**
+   * Merges the selected tags into a tag. The labels of the selected tags become aliases of the
+   * tag, so no file is renamed.
+   */
+  @FXML
+  public void mergeTags() {
+    List<Tag> selectedTags =
+        new ArrayList<>(this.tagListView.getSelectionModel().getSelectedItems());
+    if (selectedTags.isEmpty()) {
+      return;
+    }
+
+    TextInputDialog dialog = new TextInputDialog(selectedTags.get(0).getLabel());
+    dialog.setTitle("Merge Tags");
+    dialog.setHeaderText("Merge the selected tags into:");
+    dialog.setContentText("Name of tag:");
+    Optional<String> result = dialog.showAndWait();
+
+    if (result.isPresent()) {
+      Tag into = new Tag(result.get());
+      if (!into.getLabel().equals("") && !into.getLabel().contains(".")
+          && !into.getLabel().contains("@")) {
+        MergeTagsCommand mergeTags = new MergeTagsCommand(
+            this.mainController.getBackendService().getPictureManager(), selectedTags, into);
+        mainController.getBackendService().getCommandManager().addCommand(mergeTags);
+        mergeTags.execute();
+        updateTagList();
+        this.mainController.getPictureViewController().refresh();
+      }
+    }
+  }
+
+  /**
+   * Starts renaming the files of the pictures with a merged tag in the background, so their names
+   * show the tag they were merged into.
+   */
+  @FXML
+  public void normalizeTags() {
+    this.mainController.getBackendService().normalizeTagAliases();
+  }
+
   /**
    * Renames tags through the listview
    */
@@ -188,12 +286,36 @@ public class TagManagement implements ChangeListener<Tag>, Renamable {
         return;
       }
     }
-    RenameTagCommand renameTag =
-        new RenameTagCommand(this.tagListView.getSelectionModel().getSelectedItem(), newName);
-    mainController.getBackendService().getCommandManager().addCommand(renameTag);
-    renameTag.execute();
-    updateTagList();
-    this.mainController.getPictureViewController().refresh();
+    RenameTagCommand renameTag = new RenameTagCommand(
+        this.mainController.getBackendService().getPictureManager(), tag, newName);
+
+    // Rename the files in the background, the list is disabled until it is done
+    RenameTagTask renameTask = new RenameTagTask(renameTag);
+    this.renameStatus.textProperty().bind(renameTask.messageProperty());
+    this.renameProgress.progressProperty().bind(renameTask.progressProperty());
+    this.renameProgress.visibleProperty().bind(renameTask.runningProperty());
+    this.tagListView.disableProperty().bind(renameTask.runningProperty());
+    this.renameTagButton.disableProperty().bind(renameTask.runningProperty());
+    renameTask.setOnSucceeded(event -> {
+      BulkEditResult result = renameTask.getValue();
+      if (result.getFailed().isEmpty()) {
+        mainController.getBackendService().getCommandManager().addCommand(renameTag);
+      } else {
+        StringBuilder failures = new StringBuilder("The tag was not renamed, since these pictures "
+            + "could not be renamed:\n");
+        for (Picture picture : result.getFailed()) {
+          failures.append(picture.getAbsolutePath()).append("\n");
+        }
+        TextDialog dialog = new TextDialog("Rename Tag", failures.toString());
+        dialog.show();
+      }
+      updateTagList();
+      this.mainController.getPictureViewController().refresh();
+    });
+
+    Thread renameThread = new Thread(renameTask);
+    renameThread.setDaemon(true);
+    renameThread.start();
   }
 
   /**
@@ -0,0 +1,113 @@
+package tests.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import backend.files.DirectoryScanner;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class DirectoryScannerTest {
+
+  /**
+   * Creates a tree of directories with images and other files in it.
+   *
+   * @return the root of the tree
+   */
+  private static Path createTree() throws IOException {
+    Path root = Files.createTempDirectory("DirectoryScannerTest");
+    for (int i = 0; i < 5; i++) {
+      Path directory = Files.createDirectories(root.resolve("d" + i).resolve("sub" + i % 2));
+      for (int j = 0; j < 20; j++) {
+        Files.createFile(directory.resolve("chick" + j + ".jpg"));
+        Files.createFile(directory.getParent().resolve("hen" + j + ".png"));
+      }
+      Files.createFile(directory.resolve("notes.txt"));
+    }
+    Files.createDirectories(root.resolve("empty"));
+    Files.createFile(root.resolve("rooster.jpeg"));
+    return root;
+  }
+
+  /**
+   * Returns the images under a directory found one by one, without a scanner. The tree has no
+   * other files than images and text files.
+   *
+   * @param root the directory
+   * @return the sorted paths of the images
+   */
+  private static List<String> walk(Path root) throws IOException {
+    try (Stream<Path> paths = Files.walk(root)) {
+      return paths.filter(Files::isRegularFile)
+          .filter(path -> !path.toString().endsWith(".txt"))
+          .map(Path::toString).sorted().collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Returns the sorted paths of some files.
+   *
+   * @param files the files
+   * @return the sorted paths
+   */
+  private static List<String> paths(List<File> files) {
+    List<String> paths = new ArrayList<>();
+    for (File file : files) {
+      paths.add(file.getPath());
+    }
+    Collections.sort(paths);
+    return paths;
+  }
+
+  @Test
+  void parallelScanFindsTheSameImagesAsASequentialWalk() throws IOException {
+    Path root = createTree();
+    List<String> expected = walk(root);
+    assertEquals(expected.size(), 201);
+
+    for (int parallelism : new int[] {1, 4}) {
+      DirectoryScanner scanner = new DirectoryScanner(parallelism);
+      assertEquals(paths(scanner.scan(root.toString())), expected);
+      scanner.shutdown();
+    }
+  }
+
+  @Test
+  void scanNonRecursively() throws IOException {
+    Path root = createTree();
+    DirectoryScanner scanner = new DirectoryScanner(4);
+    assertEquals(paths(scanner.scan(root.toString(), false)),
+        Collections.singletonList(root.resolve("rooster.jpeg").toString()));
+    scanner.shutdown();
+  }
+
+  @Test
+  void scanAsyncHandsEveryImageToTheSink() throws IOException, InterruptedException,
+      ExecutionException {
+    Path root = createTree();
+    DirectoryScanner scanner = new DirectoryScanner(4);
+    List<File> found = Collections.synchronizedList(new ArrayList<>());
+    List<File> returned = scanner.scanAsync(root.toString(), true, found::addAll, () -> false)
+        .get();
+    assertEquals(returned.size(), 0);
+    assertEquals(paths(found), walk(root));
+    scanner.shutdown();
+  }
+
+  @Test
+  void scanAMissingDirectory() {
+    DirectoryScanner scanner = new DirectoryScanner(2);
+    assertThrows(IOException.class,
+        () -> scanner.scan(new File("DirectoryScannerTest missing").getAbsolutePath()));
+    scanner.shutdown();
+  }
+}
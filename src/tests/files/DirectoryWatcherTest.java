@@ -0,0 +1,109 @@
+package tests.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import backend.files.DirectoryChangeListener;
+import backend.files.DirectoryWatcher;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class DirectoryWatcherTest {
+
+  /**
+   * A listener that queues up the batches of changes it is told about.
+   */
+  private static class Batches implements DirectoryChangeListener {
+
+    /**
+     * The created and deleted paths of each batch, each sorted
+     */
+    private final BlockingQueue<List<List<String>>> batches = new LinkedBlockingQueue<>();
+
+    @Override
+    public void filesChanged(Collection<String> created, Collection<String> deleted) {
+      List<String> sortedCreated = new ArrayList<>(created);
+      List<String> sortedDeleted = new ArrayList<>(deleted);
+      Collections.sort(sortedCreated);
+      Collections.sort(sortedDeleted);
+      List<List<String>> batch = new ArrayList<>();
+      batch.add(sortedCreated);
+      batch.add(sortedDeleted);
+      this.batches.add(batch);
+    }
+
+    @Override
+    public void changesLost() {
+    }
+
+    /**
+     * Waits for the next batch.
+     *
+     * @param millis how long to wait, in milliseconds
+     * @return the created and deleted paths of the batch, or null if there was none
+     */
+    List<List<String>> next(long millis) throws InterruptedException {
+      return this.batches.poll(millis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Test
+  void burstOfChangesIsReportedOnce() throws IOException, InterruptedException {
+    Path directory = Files.createTempDirectory("DirectoryWatcherTest");
+    Files.createFile(directory.resolve("old.jpg"));
+    Batches batches = new Batches();
+    DirectoryWatcher watcher = new DirectoryWatcher(directory.toString(), false, batches);
+
+    for (int i = 0; i < 10; i++) {
+      Files.createFile(directory.resolve("chick" + i + ".jpg"));
+    }
+    Files.createFile(directory.resolve("notes.txt"));
+    Files.delete(directory.resolve("old.jpg"));
+    // created and deleted again before the batch is reported, so it cancels out
+    Files.delete(directory.resolve("chick9.jpg"));
+
+    List<List<String>> batch = batches.next(10_000);
+    assertNotNull(batch);
+    assertEquals(batch.get(0).size(), 9);
+    assertEquals(batch.get(0).get(0), directory.resolve("chick0.jpg").toString());
+    assertEquals(batch.get(1), Collections.singletonList(directory.resolve("old.jpg").toString()));
+    assertNull(batches.next(1000));
+    watcher.close();
+  }
+
+  @Test
+  void watchesNewSubdirectories() throws IOException, InterruptedException {
+    Path directory = Files.createTempDirectory("DirectoryWatcherTest");
+    Batches batches = new Batches();
+    DirectoryWatcher watcher = new DirectoryWatcher(directory.toString(), true, batches);
+
+    // the image is found whether it is created before or after the new directory is watched
+    Path farm = Files.createDirectory(directory.resolve("farm"));
+    Files.createFile(farm.resolve("chick.jpg"));
+    List<List<String>> batch = batches.next(10_000);
+    assertNotNull(batch);
+    assertEquals(batch.get(0), Collections.singletonList(farm.resolve("chick.jpg").toString()));
+    watcher.close();
+  }
+
+  @Test
+  void closedWatcherReportsNothing() throws IOException, InterruptedException {
+    Path directory = Files.createTempDirectory("DirectoryWatcherTest");
+    Batches batches = new Batches();
+    DirectoryWatcher watcher = new DirectoryWatcher(directory.toString(), false, batches);
+    watcher.close();
+
+    Files.createFile(directory.resolve("chick.jpg"));
+    assertNull(batches.next(1000));
+  }
+}
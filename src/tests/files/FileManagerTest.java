@@ -0,0 +1,120 @@
+package tests.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import backend.files.FileManager;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class FileManagerTest {
+
+  @Test
+  void relocateFilesFollowsChains() throws IOException {
+    Path directory = Files.createTempDirectory("FileManagerTest");
+    Files.write(directory.resolve("a.jpg"), "a".getBytes());
+    Files.write(directory.resolve("b.jpg"), "b".getBytes());
+    Files.write(directory.resolve("c.jpg"), "c".getBytes());
+    Map<String, String> moves = new LinkedHashMap<>();
+    moves.put(directory.resolve("a.jpg").toString(), directory.resolve("b.jpg").toString());
+    moves.put(directory.resolve("b.jpg").toString(), directory.resolve("c.jpg").toString());
+    moves.put(directory.resolve("c.jpg").toString(), directory.resolve("d.jpg").toString());
+
+    Set<String> failed = FileManager.relocateFiles(moves, 8);
+    assertTrue(failed.isEmpty());
+    assertEquals(new String(Files.readAllBytes(directory.resolve("b.jpg"))), "a");
+    assertEquals(new String(Files.readAllBytes(directory.resolve("c.jpg"))), "b");
+    assertEquals(new String(Files.readAllBytes(directory.resolve("d.jpg"))), "c");
+    assertEquals(directory.toFile().list().length, 3);
+  }
+
+  @Test
+  void relocateFilesSwaps() throws IOException {
+    Path directory = Files.createTempDirectory("FileManagerTest");
+    Files.write(directory.resolve("a.jpg"), "a".getBytes());
+    Files.write(directory.resolve("b.jpg"), "b".getBytes());
+    Map<String, String> moves = new LinkedHashMap<>();
+    moves.put(directory.resolve("a.jpg").toString(), directory.resolve("b.jpg").toString());
+    moves.put(directory.resolve("b.jpg").toString(), directory.resolve("a.jpg").toString());
+
+    Set<String> failed = FileManager.relocateFiles(moves, 2);
+    assertTrue(failed.isEmpty());
+    assertEquals(new String(Files.readAllBytes(directory.resolve("a.jpg"))), "b");
+    assertEquals(new String(Files.readAllBytes(directory.resolve("b.jpg"))), "a");
+    assertEquals(directory.toFile().list().length, 2);
+  }
+
+  @Test
+  void relocateFilesKeepsAFileThatCannotMove() throws IOException {
+    Path directory = Files.createTempDirectory("FileManagerTest");
+    Files.write(directory.resolve("a.jpg"), "a".getBytes());
+    Files.write(directory.resolve("b.jpg"), "b".getBytes());
+    Files.write(directory.resolve("taken.jpg"), "taken".getBytes());
+    Map<String, String> moves = new LinkedHashMap<>();
+    moves.put(directory.resolve("a.jpg").toString(), directory.resolve("b.jpg").toString());
+    moves.put(directory.resolve("b.jpg").toString(), directory.resolve("taken.jpg").toString());
+
+    Set<String> failed = FileManager.relocateFiles(moves, 2);
+    assertEquals(failed.size(), 2);
+    assertEquals(new String(Files.readAllBytes(directory.resolve("a.jpg"))), "a");
+    assertEquals(new String(Files.readAllBytes(directory.resolve("b.jpg"))), "b");
+    String[] names = directory.toFile().list();
+    Arrays.sort(names);
+    assertEquals(Arrays.toString(names), "[a.jpg, b.jpg, taken.jpg]");
+  }
+
+  @Test
+  void relocateFilesMovesBackACycleThatCannotMove() throws IOException {
+    Path directory = Files.createTempDirectory("FileManagerTest");
+    Files.write(directory.resolve("a.jpg"), "a".getBytes());
+    Files.write(directory.resolve("b.jpg"), "b".getBytes());
+    Files.createDirectory(directory.resolve("c.jpg")); // which cannot be moved like a file
+    Map<String, String> moves = new LinkedHashMap<>();
+    moves.put(directory.resolve("a.jpg").toString(), directory.resolve("b.jpg").toString());
+    moves.put(directory.resolve("b.jpg").toString(), directory.resolve("c.jpg").toString());
+    moves.put(directory.resolve("c.jpg").toString(), directory.resolve("a.jpg").toString());
+
+    Set<String> failed = FileManager.relocateFiles(moves, 2);
+    assertEquals(failed.size(), 3);
+    assertEquals(new String(Files.readAllBytes(directory.resolve("a.jpg"))), "a");
+    assertEquals(new String(Files.readAllBytes(directory.resolve("b.jpg"))), "b");
+    assertTrue(Files.isDirectory(directory.resolve("c.jpg")));
+    assertEquals(directory.toFile().list().length, 3);
+  }
+
+  @Test
+  void relocateFileMadeAgainCountsAsMoved() throws IOException {
+    Path directory = Files.createTempDirectory("FileManagerTest");
+    Files.write(directory.resolve("a.jpg"), "a".getBytes());
+    String path = directory.resolve("a.jpg").toString();
+    String newPath = directory.resolve("b.jpg").toString();
+
+    assertTrue(FileManager.relocateFile(path, newPath));
+    assertTrue(FileManager.relocateFile(path, newPath));
+  }
+
+  @Test
+  void relocateFileDoesNotCountAFileItDidNotMove() throws IOException {
+    Path directory = Files.createTempDirectory("FileManagerTest");
+    Files.write(directory.resolve("a.jpg"), "a".getBytes());
+    String path = directory.resolve("a.jpg").toString();
+    String newPath = directory.resolve("b.jpg").toString();
+    Files.move(directory.resolve("a.jpg"), directory.resolve("b.jpg"));
+    assertFalse(FileManager.relocateFile(path, newPath));
+
+    // nor a file that replaced the one it moved
+    Files.write(directory.resolve("c.jpg"), "c".getBytes());
+    String otherPath = directory.resolve("c.jpg").toString();
+    String otherNewPath = directory.resolve("d.jpg").toString();
+    assertTrue(FileManager.relocateFile(otherPath, otherNewPath));
+    Files.write(directory.resolve("d.jpg"), "another d".getBytes());
+    assertFalse(FileManager.relocateFile(otherPath, otherNewPath));
+  }
+}
@@ -0,0 +1,108 @@
+package tests.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import backend.files.DirectoryScanner;
+import backend.files.ScanSnapshot;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.Test;
+
+class ScanSnapshotTest {
+
+  /**
+   * Sets the modification time of a directory to a time long enough ago for its listing in a
+   * snapshot to be trusted.
+   *
+   * @param directory the directory
+   * @param millis the modification time, in milliseconds
+   */
+  private static void setModified(Path directory, long millis) throws IOException {
+    Files.setLastModifiedTime(directory, FileTime.fromMillis(millis));
+  }
+
+  @Test
+  void unchangedDirectoriesAreReadFromTheSnapshot() throws IOException {
+    Path root = Files.createTempDirectory("ScanSnapshotTest");
+    Path farm = Files.createDirectory(root.resolve("farm"));
+    Files.createFile(farm.resolve("chick.jpg"));
+    long longAgo = System.currentTimeMillis() - 60_000;
+    setModified(farm, longAgo);
+    setModified(root, longAgo);
+
+    ScanSnapshot snapshot = new ScanSnapshot();
+    DirectoryScanner scanner = new DirectoryScanner(2);
+    scanner.setSnapshot(snapshot);
+    assertEquals(scanner.scan(root.toString()).size(), 1);
+    assertEquals(snapshot.size(), 2);
+
+    // a file added without moving the modification time is not seen, the listing is reused
+    Files.createFile(farm.resolve("hen.jpg"));
+    setModified(farm, longAgo);
+    assertEquals(scanner.scan(root.toString()).size(), 1);
+
+    // once the modification time moves, the directory is listed again
+    setModified(farm, longAgo + 1000);
+    assertEquals(scanner.scan(root.toString()).size(), 2);
+    scanner.shutdown();
+  }
+
+  @Test
+  void recentlyChangedDirectoriesAreListedAgain() throws IOException {
+    Path root = Files.createTempDirectory("ScanSnapshotTest");
+    Files.createFile(root.resolve("chick.jpg"));
+
+    ScanSnapshot snapshot = new ScanSnapshot();
+    DirectoryScanner scanner = new DirectoryScanner(2);
+    scanner.setSnapshot(snapshot);
+    assertEquals(scanner.scan(root.toString()).size(), 1);
+
+    // changed within the precision of the clock, so the listing is not trusted
+    long modified = Files.getLastModifiedTime(root).toMillis();
+    Files.createFile(root.resolve("hen.jpg"));
+    setModified(root, modified);
+    assertEquals(scanner.scan(root.toString()).size(), 2);
+    scanner.shutdown();
+  }
+
+  @Test
+  void deletedDirectoriesAreForgotten() throws IOException {
+    Path root = Files.createTempDirectory("ScanSnapshotTest");
+    Path farm = Files.createDirectories(root.resolve("farm").resolve("barn"));
+    Files.createFile(farm.resolve("chick.jpg"));
+
+    ScanSnapshot snapshot = new ScanSnapshot();
+    DirectoryScanner scanner = new DirectoryScanner(2);
+    scanner.setSnapshot(snapshot);
+    scanner.scan(root.toString());
+    assertEquals(snapshot.size(), 3);
+
+    Files.delete(farm.resolve("chick.jpg"));
+    Files.delete(farm);
+    Files.delete(farm.getParent());
+    setModified(root, System.currentTimeMillis() + 5000);
+    assertEquals(scanner.scan(root.toString()).size(), 0);
+    assertEquals(snapshot.size(), 1);
+    scanner.shutdown();
+  }
+
+  @Test
+  void saveAndLoad() throws IOException {
+    Path root = Files.createTempDirectory("ScanSnapshotTest");
+    Files.createDirectory(root.resolve("farm"));
+    ScanSnapshot snapshot = new ScanSnapshot();
+    DirectoryScanner scanner = new DirectoryScanner(2);
+    scanner.setSnapshot(snapshot);
+    scanner.scan(root.toString());
+    scanner.shutdown();
+
+    File file = File.createTempFile("ScanSnapshotTest", null);
+    file.deleteOnExit();
+    snapshot.save(file.getPath());
+    assertEquals(ScanSnapshot.loadFromFile(file.getPath()).size(), 2);
+    assertEquals(ScanSnapshot.loadFromFile(file.getPath() + " missing").size(), 0);
+  }
+}
@@ -1,42 +1,282 @@
-package tests.models;
-
-import static org.junit.jupiter.api.Assertions.assertEquals;
-
-import backend.models.AppSettings;
-import backend.models.Picture;
-import backend.models.PictureManager;
-import java.io.IOException;
-import java.util.ArrayList;
-import org.junit.jupiter.api.Test;
-
-class ConfigLoadingTest {
-
-  @Test
-  void test() throws IOException, ClassNotFoundException {
-    AppSettings setting = new AppSettings();
-    PictureManager manager = new PictureManager();
-    Picture picture = new Picture(
-        "C:\\Users\\Emilio K\\Desktop\\FileManagerTestCases\\deleteFile\\chick @Chicken.jpg");
-    manager.addPicture(picture);
-    picture.setTaglessName("baby chicken");
-    picture.setTaglessName("shimiISDUMB");
-    ArrayList<String> hisNames = new ArrayList<String>();
-    hisNames.add("chick");
-    hisNames.add("baby chicken");
-    hisNames.add("shimiISDUMB");
-    setting.addPicFromManager(manager);
-    setting.save();
-    AppSettings newSetting = AppSettings.loadFromFile();
-    assertEquals(setting.getHistoricalPicture().size(), 1);
-    assertEquals(newSetting.getHistoricalPicture().get(0).getHistoricalTaglessNames(),
-        (picture.getHistoricalTaglessNames()));
-    assertEquals(picture.getTaglessName(), ("shimiISDUMB"));
-    assertEquals(picture.getFullFileName(), ("shimiISDUMB @Chicken.jpg"));
-    assertEquals(picture.getDirectoryPath(),
-        ("C:\\Users\\Emilio K\\Desktop\\FileManagerTestCases\\deleteFile"));
-    assertEquals(picture.getTags().size(), 1);
-    assertEquals(picture.getHistoricalTaglessNames(), (hisNames));
-
-  }
-
-}
+package tests.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import backend.models.AppSettings;
+import backend.models.Picture;
+import backend.models.PictureManager;
+import backend.models.Tag;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import org.junit.jupiter.api.Test;
+
+class ConfigLoadingTest {
+
+  /**
+   * A Config saved by the app before there were catalogs, with "chick @Chicken.jpg" renamed to
+   * "baby chicken @Chicken @Cute.jpg" and "hen @Chicken @Brown.png" in C:/Pictures/farm.
+   */
+  private static final String BASELINE_CONFIG = ""
+      + "rO0ABXNyABpiYWNrZW5kLm1vZGVscy5BcHBTZXR0aW5nc2+1t+O67XE8AgACTAANYXZhaWxhYmxlVGFnc3QA"
+      + "EExqYXZhL3V0aWwvTGlzdDtMABJoaXN0b3JpY2FsUGljdHVyZXNxAH4AAXhwc3IAE2phdmEudXRpbC5BcnJh"
+      + "eUxpc3R4gdIdmcdhnQMAAUkABHNpemV4cAAAAAN3BAAAAANzcgASYmFja2VuZC5tb2RlbHMuVGFnWKJE/4z9"
+      + "zcwCAAFMAAVsYWJlbHQAEkxqYXZhL2xhbmcvU3RyaW5nO3hwdAAHQ2hpY2tlbnNxAH4ABXQABEN1dGVzcQB+"
+      + "AAV0AAVCcm93bnhzcQB+AAMAAAACdwQAAAACc3IAFmJhY2tlbmQubW9kZWxzLlBpY3R1cmUUE8CyouND9gIA"
+      + "BkwADWRpcmVjdG9yeVBhdGhxAH4ABkwAB2ZpbGVFeHRxAH4ABkwAFmhpc3RvcmljYWxUYWdMZXNzTmFtZXN0"
+      + "ABVMamF2YS91dGlsL0FycmF5TGlzdDtMAA5oaXN0b3JpY2FsVGFnc3EAfgAPTAALdGFnbGVzc05hbWVxAH4A"
+      + "BkwABHRhZ3NxAH4AD3hwdAAQQzovUGljdHVyZXMvZmFybXQABC5qcGdzcQB+AAMAAAACdwQAAAACdAAFY2hp"
+      + "Y2t0AAxiYWJ5IGNoaWNrZW54c3EAfgADAAAAAXcEAAAAAXNxAH4AAwAAAAJ3BAAAAAJzcQB+AAVxAH4ACHNx"
+      + "AH4ABXEAfgAKeHhxAH4AFXNxAH4AAwAAAAJ3BAAAAAJxAH4AB3EAfgAJeHNxAH4ADnQAEEM6L1BpY3R1cmVz"
+      + "L2Zhcm10AAQucG5nc3EAfgADAAAAAXcEAAAAAXQAA2hlbnhzcQB+AAMAAAAAdwQAAAAAeHEAfgAfc3EAfgAD"
+      + "AAAAAncEAAAAAnNxAH4ABXQAB0NoaWNrZW5xAH4AC3h4";
+
+  @Test
+  void test() throws IOException, ClassNotFoundException {
+    AppSettings setting = new AppSettings();
+    PictureManager manager = new PictureManager();
+    Picture picture = new Picture(
+        "C:\\Users\\Emilio K\\Desktop\\FileManagerTestCases\\deleteFile\\chick @Chicken.jpg");
+    manager.addPicture(picture);
+    picture.setTaglessName("baby chicken");
+    picture.setTaglessName("shimiISDUMB");
+    ArrayList<String> hisNames = new ArrayList<String>();
+    hisNames.add("chick");
+    hisNames.add("baby chicken");
+    hisNames.add("shimiISDUMB");
+    setting.addPicFromManager(manager);
+    setting.save();
+    AppSettings newSetting = AppSettings.loadFromFile();
+    assertEquals(setting.getHistoricalPicture().size(), 1);
+    assertEquals(newSetting.getHistoricalPicture().get(0).getHistoricalTaglessNames(),
+        (picture.getHistoricalTaglessNames()));
+    assertEquals(picture.getTaglessName(), ("shimiISDUMB"));
+    assertEquals(picture.getFullFileName(), ("shimiISDUMB @Chicken.jpg"));
+    assertEquals(picture.getDirectoryPath(),
+        ("C:\\Users\\Emilio K\\Desktop\\FileManagerTestCases\\deleteFile"));
+    assertEquals(picture.getTags().size(), 1);
+    assertEquals(picture.getHistoricalTaglessNames(), (hisNames));
+
+  }
+
+  @Test
+  void catalogKeepsHistoryAndAliases() throws IOException, ClassNotFoundException {
+    File file = File.createTempFile("Config", null);
+    file.deleteOnExit();
+    PictureManager manager = new PictureManager();
+    Picture chick = new Picture("C:/Pictures/farm/chick @Chicken.jpg");
+    Picture hen = new Picture("C:/Pictures/farm/hen @Chicken @Brown.png");
+    manager.addPicture(chick);
+    manager.addPicture(hen);
+    chick.setTaglessName("baby chicken");
+    chick.addTag(new Tag("Cute"));
+    manager.addAlias("Chick", new Tag("Chicken"));
+    AppSettings setting = new AppSettings();
+    setting.addPicFromManager(manager);
+    setting.save(file.getPath());
+
+    AppSettings newSetting = AppSettings.loadFromFile(file.getPath());
+    assertEquals(newSetting.getHistoricalPicture(), setting.getHistoricalPicture());
+    assertEquals(newSetting.getAvailableTags(), setting.getAvailableTags());
+    Picture newChick = newSetting.getHistoricalPicture().get(0);
+    assertEquals(newChick.getFullFileName(), "baby chicken @Chicken @Cute.jpg");
+    assertEquals(newChick.getHistoricalTaglessNames(), chick.getHistoricalTaglessNames());
+    assertEquals(newChick.getHistoricalTags(), chick.getHistoricalTags());
+    assertEquals(newSetting.getHistoricalPicture().get(1).getHistoricalTaglessNames(),
+        hen.getHistoricalTaglessNames());
+
+    PictureManager newManager = new PictureManager();
+    newSetting.addPicToManager(newManager);
+    assertEquals(newManager.getAliases(), manager.getAliases());
+  }
+
+  @Test
+  void loadsSerializedConfig() throws IOException, ClassNotFoundException {
+    File file = File.createTempFile("Config", null);
+    file.deleteOnExit();
+    PictureManager manager = new PictureManager();
+    manager.addPicture(new Picture("C:/Pictures/farm/chick @Chicken.jpg"));
+    AppSettings setting = new AppSettings();
+    setting.addPicFromManager(manager);
+    try (ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(file))) {
+      output.writeObject(setting);
+    }
+
+    AppSettings newSetting = AppSettings.loadFromFile(file.getPath());
+    assertEquals(newSetting.getHistoricalPicture(), setting.getHistoricalPicture());
+    assertEquals(newSetting.getAvailableTags(), setting.getAvailableTags());
+  }
+
+  @Test
+  void loadsConfigSavedBeforeCatalogs() throws IOException, ClassNotFoundException {
+    File file = File.createTempFile("Config", null);
+    file.deleteOnExit();
+    Files.write(file.toPath(), Base64.getDecoder().decode(BASELINE_CONFIG));
+
+    AppSettings setting = AppSettings.loadFromFile(file.getPath());
+    assertEquals(setting.getHistoricalPicture().size(), 2);
+    Picture chick = setting.getHistoricalPicture().get(0);
+    assertEquals(chick.getFullFileName(), "baby chicken @Chicken @Cute.jpg");
+    assertEquals(chick.getDirectoryPath(), "C:/Pictures/farm");
+    ArrayList<String> names = new ArrayList<>();
+    names.add("chick");
+    names.add("baby chicken");
+    assertEquals(chick.getHistoricalTaglessNames(), names);
+    assertEquals(chick.getHistoricalTags().toString(), "[[Chicken, Cute]]");
+    assertEquals(setting.getHistoricalPicture().get(1).getHistoricalTaglessNames().get(0), "hen");
+    assertEquals(setting.getAvailableTags().toString(), "[Chicken, Cute, Brown]");
+
+    // It is upgraded to a catalog once saved
+    setting.save(file.getPath());
+    AppSettings newSetting = AppSettings.loadFromFile(file.getPath());
+    assertEquals(newSetting.getHistoricalPicture(), setting.getHistoricalPicture());
+    assertEquals(newSetting.getHistoricalPicture().get(0).getHistoricalTaglessNames(), names);
+  }
+
+  @Test
+  void setsAsideAnUnreadableConfig() throws IOException {
+    File file = File.createTempFile("Config", null);
+    Files.write(file.toPath(), new byte[] {1, 2, 3});
+    File unreadable = new File(file.getPath() + ".unreadable");
+    unreadable.deleteOnExit();
+
+    assertEquals(AppSettings.setAside(file.getPath()), unreadable.getPath());
+    assertEquals(file.exists(), false);
+    assertEquals(Files.readAllBytes(unreadable.toPath()).length, 3);
+    assertEquals(AppSettings.setAside(file.getPath()), null);
+  }
+
+  @Test
+  void journalKeepsChangesUntilCompacted() throws IOException, ClassNotFoundException {
+    File file = File.createTempFile("Config", null);
+    File journal = new File(file.getPath() + ".journal");
+    file.deleteOnExit();
+    journal.deleteOnExit();
+    PictureManager manager = new PictureManager();
+    Picture chick = new Picture("C:/Pictures/farm/chick @Chicken.jpg");
+    manager.addPicture(chick);
+    AppSettings setting = new AppSettings();
+    setting.addPicFromManager(manager);
+    setting.save(file.getPath());
+    long catalogSize = file.length();
+    assertEquals(journal.exists(), false);
+
+    chick.setTaglessName("baby chicken");
+    chick.addTag(new Tag("Cute"));
+    manager.addPicture(new Picture("C:/Pictures/farm/hen @Chicken @Brown.png"));
+    manager.addAlias("Chick", new Tag("Chicken"));
+    setting.addPicFromManager(manager);
+    setting.save(file.getPath());
+    assertEquals(file.length(), catalogSize);
+    assertEquals(journal.exists(), true);
+
+    AppSettings newSetting = AppSettings.loadFromFile(file.getPath());
+    assertEquals(newSetting.getHistoricalPicture(), setting.getHistoricalPicture());
+    assertEquals(newSetting.getAvailableTags(), setting.getAvailableTags());
+    Picture newChick = newSetting.getHistoricalPicture().get(0);
+    assertEquals(newChick.getHistoricalTaglessNames(), chick.getHistoricalTaglessNames());
+    assertEquals(newChick.getHistoricalTags(), chick.getHistoricalTags());
+
+    newSetting.compact();
+    newSetting.waitForCompaction();
+    assertEquals(journal.exists(), false);
+    assertEquals(new File(file.getPath() + ".journal.old").exists(), false);
+    AppSettings compacted = AppSettings.loadFromFile(file.getPath());
+    assertEquals(compacted.getHistoricalPicture(), setting.getHistoricalPicture());
+    PictureManager newManager = new PictureManager();
+    compacted.addPicToManager(newManager);
+    assertEquals(newManager.getAliases(), manager.getAliases());
+  }
+
+  @Test
+  void changesWhileASaveIsWrittenGoToTheNextSave() throws IOException, ClassNotFoundException {
+    File file = File.createTempFile("Config", null);
+    file.deleteOnExit();
+    new File(file.getPath() + ".journal").deleteOnExit();
+    PictureManager manager = new PictureManager();
+    Picture chick = new Picture("C:/Pictures/farm/chick @Chicken.jpg");
+    manager.addPicture(chick);
+    AppSettings setting = new AppSettings();
+    setting.addPicFromManager(manager);
+    setting.save(file.getPath());
+    int[] changes = new int[1];
+    setting.setChangeListener(() -> changes[0]++);
+
+    chick.setTaglessName("baby chicken");
+    AppSettings.PendingSave save = setting.prepareSave(file.getPath());
+    chick.addTag(new Tag("Cute"));
+    assertEquals(save.write(), save.getSize());
+    assertEquals(changes[0], 2);
+    assertEquals(AppSettings.loadFromFile(file.getPath()).getHistoricalPicture().get(0)
+        .getFullFileName(), "baby chicken @Chicken.jpg");
+
+    setting.save(file.getPath());
+    Picture newChick = AppSettings.loadFromFile(file.getPath()).getHistoricalPicture().get(0);
+    assertEquals(newChick.getFullFileName(), "baby chicken @Chicken @Cute.jpg");
+    assertEquals(newChick.getHistoricalTaglessNames(), chick.getHistoricalTaglessNames());
+  }
+
+  @Test
+  void loadsOnlyTheOpenedDirectory()throws IOException, ClassNotFoundException {
+    File file = File.createTempFile("Config", null);
+    file.deleteOnExit();
+    new File(file.getPath() + ".journal").deleteOnExit();
+    String root = new File(file.getParent(), "ConfigLoadingTest").getAbsolutePath();
+    String farm = root + File.separator + "farm";
+    String city = root + File.separator + "city";
+    PictureManager manager = new PictureManager();
+    Picture chick = new Picture(farm + File.separator + "chick @Chicken.jpg");
+    Picture hen = new Picture(farm + File.separator + "hen @Chicken.jpg");
+    Picture pigeon = new Picture(city + File.separator + "pigeon.jpg");
+    manager.addPicture(chick);
+    manager.addPicture(hen);
+    manager.addPicture(pigeon);
+    AppSettings setting = new AppSettings();
+    setting.addPicFromManager(manager);
+    setting.save(file.getPath());
+    hen.setDirectoryPath(city);
+    setting.save(file.getPath());
+
+    AppSettings newSetting = AppSettings.openFromFile(file.getPath());
+    assertEquals(newSetting.getHistoricalPicture().size(), 0);
+    newSetting.loadDirectory(farm, false);
+    assertEquals(newSetting.getHistoricalPicture().size(), 1);
+    assertEquals(newSetting.getHistoricalPicture().get(0), chick);
+    newSetting.loadDirectory(root, true);
+    assertEquals(newSetting.getHistoricalPicture().size(), 3);
+    assertEquals(newSetting.getHistoricalPicture().contains(hen), true);
+    assertEquals(newSetting.getAvailableTags(), setting.getAvailableTags());
+  }
+
+  @Test
+  void readsTheRestOfACatalogAfterItIsCompacted() throws IOException, ClassNotFoundException {
+    File file = File.createTempFile("Config", null);
+    file.deleteOnExit();
+    String root = new File(file.getParent(), "ConfigLoadingTest").getAbsolutePath();
+    String farm = root + File.separator + "farm";
+    String city = root + File.separator + "city";
+    PictureManager manager = new PictureManager();
+    Picture chick = new Picture(farm + File.separator + "chick @Chicken.jpg");
+    Picture pigeon = new Picture(city + File.separator + "pigeon @Grey.jpg");
+    manager.addPicture(chick);
+    manager.addPicture(pigeon);
+    AppSettings setting = new AppSettings();
+    setting.addPicFromManager(manager);
+    setting.save(file.getPath());
+    chick.addTag(new Tag("Cute"));
+    setting.save(file.getPath());
+
+    AppSettings newSetting = AppSettings.openFromFile(file.getPath());
+    newSetting.loadDirectory(farm, false);
+    newSetting.compact();
+    newSetting.waitForCompaction();
+    assertEquals(new File(file.getPath() + ".journal").exists(), false);
+    newSetting.loadDirectory(city, false);
+    assertEquals(newSetting.getHistoricalPicture(), setting.getHistoricalPicture());
+    assertEquals(newSetting.getHistoricalPicture().get(1).getFullFileName(), "pigeon @Grey.jpg");
+  }
+}
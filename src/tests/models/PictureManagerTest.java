@@ -2,10 +2,22 @@ package tests.models;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import backend.models.BulkEditResult;
 import backend.models.Picture;
+import backend.models.PictureLoadListener;
 import backend.models.PictureManager;
+import backend.models.PictureSnapshot;
 import backend.models.Tag;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import org.junit.jupiter.api.Test;
 
@@ -47,6 +59,44 @@ class PictureManagerTest {
     assertEquals(pictureList2.size(), 1);
   }
 
+  @Test
+  void getPicturesWithTagAfterChanges() {
+    Picture picture1 = new Picture("C:\\Grandma\\wasd @Grandma.png");
+    Picture picture2 = new Picture("C:\\Grandma\\chick @Shimi.png");
+    PictureManager manager = new PictureManager();
+    manager.addPicture(picture1);
+    manager.addPicture(picture2);
+
+    picture2.addTag(new Tag("Grandma"));
+    assertEquals(manager.getPicturesWithTag(new Tag("Grandma")).size(), 2);
+
+    picture1.deleteTag(picture1.getTags().get(0));
+    assertEquals(manager.getPicturesWithTag(new Tag("Grandma")).size(), 1);
+
+    picture2.getTags().get(0).setLabel("Bob");
+    assertEquals(manager.getPicturesWithTag(new Tag("Shimi")).size(), 0);
+    assertEquals(manager.getPicturesWithTag(new Tag("Bob")).get(0), picture2);
+
+    manager.untrackPicture(picture2);
+    assertEquals(manager.getPicturesWithTag(new Tag("Bob")).size(), 0);
+  }
+
+  @Test
+  void renamedTagKeepsItsPlace() {
+    PictureManager manager = new PictureManager();
+    manager.addPicture(new Picture("C:/Grandma/chick @Chicken @Cute @Yellow.jpg"));
+    Tag cute = manager.getSharedTag(new Tag("Cute"));
+
+    cute.setLabel("Fluffy");
+    assertEquals(manager.getAvailableTags().toString(), "[Chicken, Fluffy, Yellow]");
+    assertSame(manager.getSharedTag(new Tag("Fluffy")), cute);
+    assertEquals(manager.getAvailableTags().size(), 3);
+
+    cute.setLabel("Cute");
+    manager.getSharedTag(new Tag("Fluffy"));
+    assertEquals(manager.getAvailableTags().toString(), "[Chicken, Cute, Yellow, Fluffy]");
+  }
+
   @Test
   void deleteTag() {
     Picture picture1 = new Picture("C:\\Grandma\\wasd @Grandma.png");
@@ -90,14 +140,49 @@ class PictureManagerTest {
     assertEquals(manager.getPictures().size(), 2);
   }
 
+  @Test
+  void sharesTags() {
+    Picture picture1 = new Picture("C:\\Grandma\\wasd @Grandma @Shimi.png");
+    Picture picture2 = new Picture("C:\\Grandma\\chick @Shimi @Grandma.png");
+    PictureManager manager = new PictureManager();
+    manager.addPicture(picture1);
+    manager.addPicture(picture2);
+
+    assertEquals(manager.getAvailableTags().size(), 2);
+    assertSame(picture1.getTags().get(0), picture2.getTags().get(1));
+    assertSame(picture1.getTags().get(1), picture2.getTags().get(0));
+    assertSame(manager.getSharedTag(new Tag("Grandma")), picture1.getTags().get(0));
+  }
+
   @Test
   void untrackPicture() {
     Picture picture1 = new Picture("C:\\Grandma\\wasd @Grandma.png");
     PictureManager manager = new PictureManager();
     manager.addPicture(picture1);
-    assertEquals(picture1.countObservers(), 1);
+    assertEquals(picture1.countListeners(), 1);
     manager.untrackPicture(picture1);
-    assertEquals(picture1.countObservers(), 0);
+    assertEquals(picture1.countListeners(), 0);
+  }
+
+  @Test
+  void replacePictures() {
+    Picture picture1 = new Picture("C:\\Grandma\\wasd @Grandma.png");
+    Picture picture2 = new Picture("C:\\Grandma\\chick @Shimi.png");
+    Picture loaded1 = new Picture("C:\\Grandma\\wasd @Grandma.png");
+    Picture loaded3 = new Picture("C:\\Grandma\\hen @Grandma.png");
+    PictureManager manager = new PictureManager();
+    manager.addPicture(picture1);
+    manager.addPicture(picture2);
+    List<Picture> loaded = new ArrayList<>();
+    loaded.add(loaded1);
+    loaded.add(loaded3);
+    assertEquals(manager.replacePictures(loaded), 1);
+    assertSame(manager.getPictures().get(0), loaded1);
+    assertEquals(manager.getPictures().size(), 2);
+    assertEquals(picture1.countListeners(), 0);
+    assertEquals(loaded1.countListeners(), 1);
+    assertSame(manager.getPicturesWithTag(new Tag("Grandma")).get(0), loaded1);
+    assertFalse(manager.contains(loaded3));
   }
 
   @Test
@@ -112,5 +197,180 @@ class PictureManagerTest {
     assertFalse(manager.contains(picture3));
   }
 
+  @Test
+  void renamesTheFileOfThePicture() throws IOException {
+    Path directory = Files.createTempDirectory("PictureManagerTest");
+    Files.createFile(directory.resolve("f1.jpg"));
+    Files.createFile(directory.resolve("f10.jpg"));
+    PictureManager manager = new PictureManager(directory.toString(), false);
+
+    for (Picture picture : manager.getPictures()) {
+      if (picture.getTaglessName().equals("f1")) {
+        picture.addTag(new Tag("Grandma"));
+        picture.setTaglessName("chick");
+      }
+    }
+
+    assertTrue(new File(directory.toFile(), "chick @Grandma.jpg").isFile());
+    assertTrue(new File(directory.toFile(), "f10.jpg").isFile());
+    assertEquals(directory.toFile().list().length, 2);
+  }
+
+  @Test
+  void closedManagerNoLongerRenamesFiles() throws IOException {
+    Path directory = Files.createTempDirectory("PictureManagerTest");
+    Files.createFile(directory.resolve("f1.jpg"));
+    PictureManager first = new PictureManager(directory.toString(), false);
+    PictureManager second = new PictureManager(directory.toString(), false);
+    second.replacePictures(first.getPictures());
+    Picture picture = first.getPictures().get(0);
+    first.close();
+    assertEquals(first.getPictures().size(), 0);
+
+    picture.addTag(new Tag("Grandma"));
+    picture.setTaglessName("chick");
+    assertTrue(second.contains(picture));
+    assertTrue(new File(directory.toFile(), "chick @Grandma.jpg").isFile());
+    assertEquals(directory.toFile().list().length, 1);
+  }
+
+  @Test
+  void fileMovedByAnotherManagerCountsAsMoved() throws IOException {
+    Path directory = Files.createTempDirectory("PictureManagerTest");
+    Files.createFile(directory.resolve("f1.jpg"));
+    PictureManager first = new PictureManager(directory.toString(), false);
+    PictureManager second = new PictureManager(directory.toString(), false);
+    second.replacePictures(first.getPictures());
+    Picture picture = first.getPictures().get(0);
+
+    picture.addTag(new Tag("Grandma"));
+    picture.setTaglessName("chick");
+    assertTrue(new File(directory.toFile(), "chick @Grandma.jpg").isFile());
+    assertEquals(directory.toFile().list().length, 1);
+    assertEquals(second.resync(), false);
+    assertTrue(second.contains(picture));
+  }
+
+  @Test
+  void renamesTheFileOncePerEdit() throws IOException {
+    Path directory = Files.createTempDirectory("PictureManagerTest");
+    Files.createFile(directory.resolve("chick.jpg"));
+    PictureManager manager = new PictureManager(directory.toString(), false);
+    Picture picture = manager.getPictures().get(0);
+
+    List<PictureSnapshot> renames = new ArrayList<>();
+    picture.addListener((changedPicture, oldState) -> renames.add(oldState));
+
+    List<Tag> tags = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      tags.add(new Tag("Tag" + i));
+    }
+    picture.addMultipleTags(tags);
+
+    picture.beginEdit();
+    picture.setTaglessName("baby chicken");
+    picture.deleteTag(tags.get(0));
+    picture.deleteTag(tags.get(1));
+    picture.commitEdit();
+
+    assertEquals(renames.size(), 2);
+    assertEquals(renames.get(0).getFullFileName(), "chick.jpg");
+    assertEquals(renames.get(1).getTagLabels().size(), 8);
+    assertTrue(new File(directory.toFile(), picture.getFullFileName()).isFile());
+    assertEquals(directory.toFile().list().length, 1);
+  }
+
+  @Test
+  void renameTagRenamesAllFiles() throws IOException {
+    Path directory = Files.createTempDirectory("PictureManagerTest");
+    Files.createDirectory(directory.resolve("sub"));
+    for (int i = 0; i < 20; i++) {
+      Files.createFile(directory.resolve("pic" + i + " @Grandma.jpg"));
+      Files.createFile(directory.resolve("sub").resolve("pic" + i + " @Grandma @Cat.jpg"));
+    }
+    Files.createFile(directory.resolve("other @Cat.jpg"));
+    PictureManager manager = new PictureManager(directory.toString(), true);
+    Tag grandma = manager.getSharedTag(new Tag("Grandma"));
+
+    List<Integer> progress = Collections.synchronizedList(new ArrayList<>());
+    BulkEditResult result =
+        manager.renameTag(grandma, "Grandpa", (renamed, total) -> progress.add(total));
+
+    assertEquals(result.getEdited().size(), 40);
+    assertTrue(result.getFailed().isEmpty());
+    assertEquals(progress.size(), 40);
+    assertEquals(progress.get(0), Integer.valueOf(40));
+    assertEquals(grandma.getLabel(), "Grandpa");
+    assertTrue(new File(directory.toFile(), "pic0 @Grandpa.jpg").isFile());
+    assertTrue(new File(directory.resolve("sub").toFile(), "pic19 @Grandpa @Cat.jpg").isFile());
+    assertTrue(new File(directory.toFile(), "other @Cat.jpg").isFile());
+    assertEquals(manager.getPicturesWithTag(new Tag("Grandpa")).size(), 40);
+    assertTrue(manager.getPicturesWithTag(new Tag("Grandma")).isEmpty());
+    assertThrows(IllegalArgumentException.class,
+        () -> manager.renameTag(grandma, "Cat", null));
+  }
+
+  @Test
+  void normalizeAliasesRenamesFiles() throws IOException {
+    Path directory = Files.createTempDirectory("PictureManagerTest");
+    for (int i = 0; i < 5; i++) {
+      Files.createFile(directory.resolve("pic" + i + " @kitty.jpg"));
+    }
+    Files.createFile(directory.resolve("both @cat @kitty.jpg"));
+    PictureManager manager = new PictureManager(directory.toString(), false);
+    manager.mergeTags(new Tag("kitty"), new Tag("cat"));
+    assertEquals(manager.getPicturesWithTag(new Tag("cat")).size(), 6);
+    assertTrue(new File(directory.toFile(), "pic0 @kitty.jpg").isFile());
+
+    assertEquals(manager.normalizeAliases(4).getEdited().size(), 4);
+    assertEquals(manager.normalizeAliases(4).getEdited().size(), 2);
+    assertTrue(manager.normalizeAliases(4).getEdited().isEmpty());
+    assertTrue(new File(directory.toFile(), "pic0 @cat.jpg").isFile());
+    assertTrue(new File(directory.toFile(), "both @cat.jpg").isFile());
+    assertEquals(directory.toFile().list().length, 6);
+    assertEquals(manager.getPicturesWithTag(new Tag("kitty")).size(), 6);
+    assertFalse(manager.contains(new Tag("kitty")));
+  }
 
+  @Test
+  void loadsOnlyValidNames() throws IOException {
+    Path directory = Files.createTempDirectory("PictureManagerTest");
+    String[] names = {"chick @Chicken.jpg", "my.chick @Cute.png", "chick @place-farm.jpeg",
+        "@Chicken.jpg", "chick @Chicken.jpg.txt", "chick  two.jpg", "chick @Chicken.Cute.jpg",
+        "chick.JPG"};
+    for (String name : names) {
+      Files.createFile(directory.resolve(name));
+    }
+    PictureManager manager = new PictureManager(directory.toString(), false);
+
+    List<String> loaded = new ArrayList<>();
+    for (Picture picture : manager.getPictures()) {
+      loaded.add(picture.getFullFileName());
+    }
+    Collections.sort(loaded);
+    assertEquals(loaded.toString(),
+        "[chick @Chicken.jpg, chick @place-farm.jpeg, my.chick @Cute.png]");
+  }
+
+  @Test
+  void reportsADirectoryThatCannotBeRead() throws IOException {
+    Path directory = Files.createTempDirectory("PictureManagerTest");
+    Files.createFile(directory.resolve("chick.jpg"));
+    // the directory is deleted before it is listed, the search checks for cancellation first
+    PictureLoadListener listener = new PictureLoadListener() {
+      @Override
+      public void picturesLoaded(List<Picture> pictures, int loadedCount) {
+      }
+
+      @Override
+      public boolean isCancelled() {
+        directory.resolve("chick.jpg").toFile().delete();
+        directory.toFile().delete();
+        return false;
+      }
+    };
+
+    assertThrows(IOException.class,
+        () -> new PictureManager(directory.toString(), false, listener));
+  }
 }
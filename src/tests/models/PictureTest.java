@@ -1,6 +1,9 @@
 package tests.models;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import backend.models.Picture;
 import backend.models.Tag;
@@ -122,4 +125,63 @@ class PictureTest {
     assert (picture.containsTag(picture.getTags().get(4)));
     assert (picture.containsTag(new Tag("Cute")));
   }
+
+  @Test
+  void equalsAndHashCodeAfterChanges() {
+    Picture picture1 = new Picture("C:\\Grandma\\chicks @Cute.jpg");
+    Picture picture2 = new Picture("C:\\Grandma\\chicks.jpg");
+    assertNotEquals(picture1, picture2);
+
+    picture2.addTag(new Tag("Cute"));
+    assertEquals(picture1, picture2);
+    assertEquals(picture1.hashCode(), picture2.hashCode());
+
+    picture1.getTags().get(0).setLabel("Yellow");
+    assertNotEquals(picture1, picture2);
+
+    picture2.getTags().get(0).setLabel("Yellow");
+    assertEquals(picture1, picture2);
+    assertEquals(picture1.hashCode(), picture2.hashCode());
+  }
+
+  @Test
+  void getHistoricalTags() {
+    Picture picture = new Picture("C:\\Grandma\\chicks.jpg");
+    Tag cute = new Tag("Cute");
+    Tag yellow = new Tag("Yellow");
+    picture.addTag(cute);
+    picture.addTag(yellow);
+    picture.deleteTag(cute);
+    picture.addTag(cute);
+    picture.deleteTag(yellow);
+
+    assertEquals(picture.getHistoricalTags().size(), 4);
+    assertEquals(picture.getHistoricalTags().get(1).toString(), "[Cute, Yellow]");
+    assertEquals(picture.getHistoricalTags().get(3).toString(), "[Yellow, Cute]");
+
+    yellow.setLabel("Brown");
+    picture.addTag(yellow);
+    assertEquals(picture.getHistoricalTags().size(), 5);
+    assertEquals(picture.getHistoricalTags().get(4).toString(), "[Cute, Brown]");
+  }
+
+  @Test
+  void parsesNameWithDots() {
+    Picture picture = new Picture("C:/Grandma/my.chick @Chicken @place-farm.jpeg");
+    assertEquals(picture.getTaglessName(), "my.chick");
+    assertEquals(picture.getFileExtension(), ".jpeg");
+    assertEquals(picture.getTags().toString(), "[Chicken, place-farm]");
+    assertEquals(picture.getFullFileName(), "my.chick @Chicken @place-farm.jpeg");
+  }
+
+  @Test
+  void picturesInOneDirectoryShareItsPath() {
+    Picture chick = new Picture(new String("/Grandma/farm") + "/chick @Chicken.jpg");
+    Picture hen = new Picture(new String("/Grandma/farm") + "/hen @Chicken.jpg");
+    Picture pigeon = new Picture(new String("/Grandma/city") + "/pigeon.jpg");
+    assertSame(chick.getDirectoryPath(), hen.getDirectoryPath());
+    assertNotSame(chick.getDirectoryPath(), pigeon.getDirectoryPath());
+    hen.setDirectoryPath(new String("/Grandma/city"));
+    assertSame(hen.getDirectoryPath(), pigeon.getDirectoryPath());
+  }
 }
@@ -0,0 +1,130 @@
+package tests.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import backend.models.Picture;
+import backend.models.PictureManager;
+import backend.models.Tag;
+import backend.models.TagQuery;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TagQueryTest {
+
+  /**
+   * Returns the tagless names of the pictures of a manager matching a query.
+   */
+  private static List<String> match(PictureManager manager, String query) {
+    List<String> names = new ArrayList<>();
+    Iterator<Picture> pictures = manager.getPicturesMatching(TagQuery.parse(query));
+    while (pictures.hasNext()) {
+      names.add(pictures.next().getTaglessName());
+    }
+    return names;
+  }
+
+  private static PictureManager createManager() {
+    PictureManager manager = new PictureManager();
+    manager.addPicture(new Picture("C:/Grandma/a @cat @2019.png"));
+    manager.addPicture(new Picture("C:/Grandma/b @dog @2019 @blurry.png"));
+    manager.addPicture(new Picture("C:/Grandma/c @cat @blurry.png"));
+    manager.addPicture(new Picture("C:/Grandma/d @family @2019.png"));
+    return manager;
+  }
+
+  @Test
+  void matchTag() {
+    PictureManager manager = createManager();
+    assertEquals(match(manager, "@cat").toString(), "[a, c]");
+    assertEquals(match(manager, "@chicken").toString(), "[]");
+  }
+
+  @Test
+  void matchAndOrNot() {
+    PictureManager manager = createManager();
+    assertEquals(match(manager, "@cat OR @dog").toString(), "[a, b, c]");
+    assertEquals(match(manager, "(@cat OR @dog) AND NOT @blurry").toString(), "[a]");
+    assertEquals(match(manager, "@2019 and not @blurry").toString(), "[a, d]");
+    assertEquals(match(manager, "NOT @2019").toString(), "[c]");
+    assertEquals(match(manager, "@cat @blurry OR @family").toString(), "[c, d]");
+  }
+
+  @Test
+  void matchAfterChanges() {
+    PictureManager manager = createManager();
+    Picture picture = manager.getPictures().get(0);
+    picture.deleteTag(picture.getTags().get(0));
+    assertEquals(match(manager, "@cat").toString(), "[c]");
+
+    manager.untrackPicture(manager.getPictures().get(0));
+    assertEquals(match(manager, "NOT @cat").toString(), "[b, d]");
+  }
+
+  @Test
+  void parseInvalidQuery() {
+    assertThrows(IllegalArgumentException.class, () -> TagQuery.parse(""));
+    assertThrows(IllegalArgumentException.class, () -> TagQuery.parse("@cat AND"));
+    assertThrows(IllegalArgumentException.class, () -> TagQuery.parse("(@cat"));
+    assertThrows(IllegalArgumentException.class, () -> TagQuery.parse("cat"));
+  }
+
+  @Test
+  void matchAlias() {
+    PictureManager manager = createManager();
+    manager.addPicture(new Picture("C:/Grandma/e @kitty.png"));
+    manager.addAlias("kitty", new Tag("cat"));
+    assertEquals(match(manager, "@cat").toString(), "[a, c, e]");
+    assertEquals(match(manager, "@kitty AND NOT @blurry").toString(), "[a, e]");
+    assertEquals(manager.getPicturesWithTag(new Tag("kitty")).size(), 3);
+    assertEquals(manager.getAvailableTags().contains(new Tag("kitty")), false);
+
+    manager.removeAlias("kitty");
+    assertEquals(match(manager, "@cat").toString(), "[a, c]");
+    assertEquals(match(manager, "@kitty").toString(), "[e]");
+  }
+
+  @Test
+  void matchSubtree() {
+    PictureManager manager = createManager();
+    manager.addPicture(new Picture("C:/Grandma/e @place-canada-toronto.png"));
+    manager.addPicture(new Picture("C:/Grandma/f @place-canada @cat.png"));
+    manager.addPicture(new Picture("C:/Grandma/g @place-us.png"));
+    assertEquals(match(manager, "@place-canada-*").toString(), "[e, f]");
+    assertEquals(match(manager, "@place-* AND NOT @cat").toString(), "[e, g]");
+    assertEquals(manager.getPicturesUnder("place").size(), 3);
+
+    manager.getPictures().get(6).addTag(new Tag("place-canada-montreal"));
+    assertEquals(match(manager, "@place-canada-*").toString(), "[e, f, g]");
+  }
+
+  @Test
+  void matchLargeSubtree() {
+    PictureManager manager = new PictureManager();
+    int inRegion1 = 0;
+    for (int i = 0; i < 2000; i++) {
+      manager.addPicture(new Picture("C:/Grandma/p" + i + " @place-region" + (i % 10) + "-city"
+          + (i % 500) + (i % 3 == 0 ? " @place-region" + (i % 7) : "")
+          + (i % 2 == 0 ? " @cat" : "") + ".png"));
+      if (i % 10 == 1 || i % 3 == 0 && i % 7 == 1) {
+        inRegion1++;
+      }
+    }
+    manager.addPicture(new Picture("C:/Grandma/q @town.png"));
+    assertEquals(match(manager, "@place-*").size(), 2000);
+    assertEquals(match(manager, "@place-* AND @cat").size(), 1000);
+    assertEquals(match(manager, "@place-region1-*").size(), inRegion1);
+
+    // The index of the subtree follows the changes to the pictures and aliases
+    manager.getPictures().get(0).deleteTag(new Tag("place-region0-city0"));
+    assertEquals(match(manager, "@place-*").size(), 2000);
+    manager.getPictures().get(0).deleteTag(new Tag("place-region0"));
+    assertEquals(match(manager, "@place-*").size(), 1999);
+    manager.addAlias("town", new Tag("place-region3"));
+    assertEquals(match(manager, "@place-*").size(), 2000);
+    manager.untrackPicture(manager.getPictures().get(1));
+    assertEquals(match(manager, "@place-*").size(), 1999);
+  }
+}
@@ -35,4 +35,13 @@ class TagTest {
     assertNotEquals(tag1, (tag4));
   }
 
+  @Test
+  void hashCodeOfEqualTags() {
+    Tag tag1 = new Tag("wasd");
+    Tag tag2 = new Tag("wasd");
+    assertEquals(tag1.hashCode(), tag2.hashCode());
+    tag2.setLabel("chicken");
+    assertEquals(tag2.hashCode(), new Tag("chicken").hashCode());
+  }
+
 }
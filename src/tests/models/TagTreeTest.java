@@ -0,0 +1,50 @@
+package tests.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import backend.models.Tag;
+import backend.models.TagTree;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TagTreeTest {
+
+  private static TagTree createTree() {
+    List<Tag> tags = new ArrayList<>();
+    for (String label : new String[]{"place-canada-toronto", "cat", "place-canada",
+        "place-canadian", "place-canada-montreal-old", "place-us"}) {
+      tags.add(new Tag(label));
+    }
+    return new TagTree(tags);
+  }
+
+  @Test
+  void getTagsUnder() {
+    TagTree tree = createTree();
+    assertEquals(tree.getTagsUnder("place-canada").toString(),
+        "[place-canada, place-canada-montreal-old, place-canada-toronto]");
+    assertEquals(tree.getTagsUnder("place").size(), 5);
+    assertEquals(tree.getTagsUnder("").size(), 6);
+    assertTrue(tree.getTagsUnder("plac").isEmpty());
+    assertNull(tree.find("place-uk"));
+  }
+
+  @Test
+  void getChildren() {
+    TagTree tree = createTree();
+    assertEquals(tree.getRoot().getChildren().toString(), "[cat, place]");
+
+    TagTree.Node place = tree.find("place");
+    assertNull(place.getTag());
+    assertEquals(place.getChildren().toString(), "[canada, canadian, us]");
+
+    TagTree.Node canada = place.getChildren().get(0);
+    assertEquals(canada.getTag().getLabel(), "place-canada");
+    assertEquals(canada.getChildren().toString(), "[montreal, toronto]");
+    assertEquals(canada.getChildren().get(0).getPath(), "place-canada-montreal");
+    assertTrue(canada.getChildren().get(1).isLeaf());
+  }
+}
@@ -0,0 +1,154 @@
+package tests.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import backend.models.AppSettings;
+import backend.models.Picture;
+import backend.models.PictureManager;
+import frontend.gui.services.AutosaveService;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class AutosaveServiceTest {
+
+  /**
+   * Stands in for BackendService.prepareSave(), capturing the app settings of a picture manager and
+   * counting the saves.
+   */
+  private static class Saves implements Callable<AppSettings.PendingSave> {
+
+    /**
+     * The picture manager whose pictures are saved
+     */
+    private final PictureManager manager = new PictureManager();
+
+    /**
+     * The app settings saved
+     */
+    private final AppSettings settings = new AppSettings();
+
+    /**
+     * The file the app settings are saved to
+     */
+    private final File file;
+
+    /**
+     * The number of saves captured
+     */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Creates the app settings, saved to a new temporary file.
+     */
+    Saves() throws IOException {
+      this.file = File.createTempFile("AutosaveServiceTest", null);
+      this.file.deleteOnExit();
+      new File(this.file.getPath() + ".journal").deleteOnExit();
+    }
+
+    /**
+     * Changes the pictures, as the user would.
+     *
+     * @param i a number that makes the change different from the others
+     */
+    synchronized void change(int i) {
+      this.manager.addPicture(new Picture("C:/Pictures/farm/chick" + i + " @Chicken.jpg"));
+    }
+
+    @Override
+    public synchronized AppSettings.PendingSave call() throws IOException {
+      this.count.incrementAndGet();
+      this.settings.addPicFromManager(this.manager);
+      return this.settings.prepareSave(this.file.getPath());
+    }
+  }
+
+  @Test
+  void burstOfChangesIsSavedOnce() throws IOException, InterruptedException {
+    Saves saves = new Saves();
+    AutosaveService autosave = new AutosaveService(saves, 200, 10_000);
+    for (int i = 0; i < 5; i++) {
+      saves.change(i);
+      autosave.changed();
+      Thread.sleep(20);
+    }
+    assertEquals(saves.count.get(), 0);
+
+    Thread.sleep(1000);
+    assertEquals(saves.count.get(), 1);
+    assertEquals(autosave.getSaveCount(), 1);
+    assertEquals(autosave.getBytesWritten(), saves.file.length());
+    autosave.close();
+  }
+
+  @Test
+  void changesThatNeverStopAreSavedAfterTheMaxDelay() throws IOException, InterruptedException {
+    Saves saves = new Saves();
+    AutosaveService autosave = new AutosaveService(saves, 200, 300);
+    long end = System.currentTimeMillis() + 1500;
+    for (int i = 0; System.currentTimeMillis() < end; i++) {
+      saves.change(i);
+      autosave.changed();
+      Thread.sleep(50);
+    }
+    assertTrue(saves.count.get() >= 2);
+    assertEquals(autosave.getFailedCount(), 0);
+    autosave.close();
+  }
+
+  @Test
+  void saveThatKeepsFailingIsTriedLessAndLessOften() throws InterruptedException {
+    AtomicInteger count = new AtomicInteger();
+    AutosaveService autosave = new AutosaveService(() -> {
+      count.incrementAndGet();
+      throw new IOException("The disk is full");
+    }, 20, 320);
+    autosave.changed();
+
+    // without waiting longer after each failure, it would be tried about 60 times
+    Thread.sleep(1200);
+    assertTrue(count.get() >= 3);
+    assertTrue(count.get() <= 8);
+    assertEquals(autosave.getFailedCount(), count.get());
+    autosave.close();
+  }
+
+  @Test
+  void blockedSavesAreNotTriedAgain() throws InterruptedException {
+    AtomicInteger count = new AtomicInteger();
+    AutosaveService autosave = new AutosaveService(() -> {
+      count.incrementAndGet();
+      return null;
+    }, 20, 320);
+    autosave.changed();
+
+    Thread.sleep(500);
+    assertEquals(count.get(), 1);
+    assertEquals(autosave.getFailedCount(), 0);
+    autosave.close();
+  }
+
+  @Test
+  void closeSavesTheLastChanges() throws IOException, ClassNotFoundException {
+    Saves saves = new Saves();
+    AutosaveService autosave = new AutosaveService(saves, 10_000, 60_000);
+    saves.change(0);
+    autosave.changed();
+
+    autosave.close();
+    assertEquals(saves.count.get(), 1);
+    assertEquals(autosave.getSaveCount(), 1);
+    assertEquals(AppSettings.loadFromFile(saves.file.getPath()).getHistoricalPicture().size(), 1);
+
+    // changes after closing are not saved, and saving does nothing
+    saves.change(1);
+    autosave.changed();
+    autosave.saveNow();
+    autosave.close();
+    assertEquals(saves.count.get(), 1);
+  }
+}
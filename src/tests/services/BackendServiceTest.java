@@ -0,0 +1,62 @@
+package tests.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import backend.models.Picture;
+import backend.models.PictureLoadListener;
+import backend.models.Tag;
+import frontend.gui.services.BackendService;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class BackendServiceTest {
+
+  @Test
+  void picturesShownAfterACancelledLoadAreTracked() throws IOException {
+    Path directory = Files.createTempDirectory("BackendServiceTest");
+    for (int i = 0; i < 6; i++) {
+      Path subdirectory = Files.createDirectory(directory.resolve("farm" + i));
+      for (int j = 0; j < 100; j++) {
+        Files.createFile(subdirectory.resolve("chick" + j + ".jpg"));
+      }
+    }
+    BackendService service = new BackendService();
+    // the pictures are then kept by the app settings, which replace the pictures loaded next time
+    service.resetBackendService(directory.toString(), true);
+
+    List<Picture> loaded = new ArrayList<>();
+    List<Picture> shown = new ArrayList<>();
+    service.resetBackendService(directory.toString(), true, new PictureLoadListener() {
+      @Override
+      public void picturesLoaded(List<Picture> pictures, int loadedCount) {
+        loaded.addAll(pictures);
+      }
+
+      @Override
+      public boolean isCancelled() {
+        return !loaded.isEmpty(); // cancelled after the first batch
+      }
+
+      @Override
+      public void loadFinished(List<Picture> pictures) {
+        shown.addAll(pictures);
+      }
+    });
+    assertTrue(shown.size() > 0 && shown.size() < 600);
+    assertEquals(shown, service.getPictureManager().getPictures());
+
+    Picture picture = shown.get(0);
+    File file = new File(picture.getAbsolutePath());
+    picture.addTag(new Tag("Cute"));
+    assertFalse(file.exists());
+    assertTrue(new File(picture.getAbsolutePath()).isFile());
+    assertTrue(service.getPictureManager().getPicturesWithTag(new Tag("Cute")).contains(picture));
+  }
+}